@@ -0,0 +1,398 @@
+package interpreter;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import token.TokenType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs a program by walking its FlatAst directly: values are boxed Integer, Character and Boolean
+ * objects or int[], char[] and boolean[] arrays, variables live in one HashMap per call and every
+ * node is dispatched on its kind each time it runs. It is the simple reference the bytecode
+ * VirtualMachine is checked and measured against, both print the same output for a program.
+ */
+public class AstInterpreter {
+
+    private static final Object NORMAL = new Object();
+    private static final Object VOID = new Object();
+
+    private final FlatAst ast;
+    private final Declarations declarations;
+    private final ProgramIO io;
+    private final Map<String, Object> globals = new HashMap<>();
+    private int depth;
+
+    public AstInterpreter(FlatAst ast, ProgramIO io) {
+        this.ast = ast;
+        this.declarations = Declarations.of(ast);
+        this.io = io;
+    }
+
+    /** Initializes the globals in program order and calls the main function. */
+    public void run() {
+        for (Map.Entry<String, ValueType> global : declarations.globals.entrySet()) {
+            globals.put(global.getKey(), defaultValue(global.getValue()));
+        }
+        Declarations.Function main = declarations.main;
+        try {
+            for (int definition : declarations.globalDefinitions) {
+                execute(null, null, definition);
+            }
+            call(main, new Object[0], main.node);
+        } catch (StackOverflowError e) {
+            throw ProgramException.at(ast, main.node, "Stack overflow after " + depth + " nested calls");
+        }
+    }
+
+    private Object call(Declarations.Function function, Object[] arguments, int node) {
+        Map<String, Object> locals = new HashMap<>();
+        for (Map.Entry<String, ValueType> local : function.locals.entrySet()) {
+            locals.put(local.getKey(), defaultValue(local.getValue()));
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            String parameter = function.parameters.get(i);
+            locals.put(parameter, coerce(arguments[i], function.locals.get(parameter), node));
+        }
+        depth++;
+        Object result = execute(function, locals, function.body);
+        depth--;
+        if (function.returnType == ValueType.VOID) {
+            return VOID;
+        }
+        return result == NORMAL ? defaultValue(function.returnType) : coerce(result, function.returnType, node);
+    }
+
+    /** Runs a statement, returns NORMAL or the value of the return statement it ran into. */
+    private Object execute(Declarations.Function function, Map<String, Object> locals, int node) {
+        switch (ast.kind(node)) {
+            case BLOCK:
+                for (int statement = ast.firstChild(node); statement != FlatAst.NONE; statement = ast.nextSibling(statement)) {
+                    Object result = execute(function, locals, statement);
+                    if (result != NORMAL) {
+                        return result;
+                    }
+                }
+                return NORMAL;
+            case VARIABLE_DEFINITION:
+                return execute(function, locals, ast.nextSibling(ast.firstChild(node)));
+            case ASSIGNMENT: {
+                int variable = ast.firstChild(node);
+                int value = ast.nextSibling(variable);
+                if (ast.firstChild(variable) == FlatAst.NONE) {
+                    assign(function, locals, variable, evaluate(function, locals, value));
+                } else {
+                    // the array and the index before the value, in the order of the bytecode
+                    Object array = load(function, locals, variable);
+                    int at = index(function, locals, variable);
+                    storeElement(variable, array, at, evaluate(function, locals, value));
+                }
+                return NORMAL;
+            }
+            case IF_STATEMENT: {
+                int condition = ast.firstChild(node);
+                int then = ast.nextSibling(condition);
+                if (isTrue(evaluate(function, locals, condition), condition)) {
+                    return execute(function, locals, then);
+                }
+                int otherwise = ast.nextSibling(then);
+                return otherwise != FlatAst.NONE ? execute(function, locals, otherwise) : NORMAL;
+            }
+            case WHILE_STATEMENT: {
+                int condition = ast.firstChild(node);
+                while (isTrue(evaluate(function, locals, condition), condition)) {
+                    Object result = execute(function, locals, ast.nextSibling(condition));
+                    if (result != NORMAL) {
+                        return result;
+                    }
+                }
+                return NORMAL;
+            }
+            case RETURN_STATEMENT: {
+                int value = ast.firstChild(node);
+                if (function.returnType == ValueType.VOID) {
+                    if (value != FlatAst.NONE) {
+                        throw ProgramException.at(ast, node, "Function " + function.name + " returns void");
+                    }
+                    return VOID;
+                }
+                if (value == FlatAst.NONE) {
+                    throw ProgramException.at(ast, node, "Missing return value in " + function.name);
+                }
+                return evaluate(function, locals, value);
+            }
+            case PRINT_STATEMENT:
+                for (int argument = ast.firstChild(ast.firstChild(node)); argument != FlatAst.NONE; argument = ast.nextSibling(argument)) {
+                    Object value = evaluate(function, locals, argument);
+                    if (value == VOID) {
+                        throw ProgramException.at(ast, argument, "Void function used as a value");
+                    }
+                    io.print(show(value));
+                }
+                io.println();
+                return NORMAL;
+            case READ_STATEMENT:
+                for (int variable = ast.firstChild(node); variable != FlatAst.NONE; variable = ast.nextSibling(variable)) {
+                    ValueType type = typeOf(function, variable);
+                    if (ast.firstChild(variable) != FlatAst.NONE) {
+                        type = type.element();
+                    } else if (type.isArray()) {
+                        throw ProgramException.at(ast, variable, "Cannot read into array " + ast.text(variable));
+                    }
+                    int line = ast.tokens().line(ast.token(node));
+                    int position = ast.tokens().position(ast.token(node));
+                    if (ast.firstChild(variable) == FlatAst.NONE) {
+                        assign(function, locals, variable, box(io.read(type, line, position), type));
+                    } else {
+                        Object array = load(function, locals, variable);
+                        int at = index(function, locals, variable);
+                        storeElement(variable, array, at, box(io.read(type, line, position), type));
+                    }
+                }
+                return NORMAL;
+            case FUNCTION_CALL:
+                evaluate(function, locals, node);
+                return NORMAL;
+            default:
+                throw ProgramException.at(ast, node, "Unexpected " + ast.kind(node) + " statement");
+        }
+    }
+
+    private Object evaluate(Declarations.Function function, Map<String, Object> locals, int node) {
+        NodeKind kind = ast.kind(node);
+        int first = ast.firstChild(node);
+        switch (kind) {
+            case INTEGER:
+                return Integer.parseInt(ast.text(node));
+            case BOOLEAN:
+                return ast.tokens().type(ast.token(node)) == TokenType.TRUE;
+            case CHARACTER_LITERAL:
+                return ast.text(node).charAt(0);
+            case STRING_LITERAL:
+                return ast.text(node).toCharArray();
+            case ARRAY_INIT: {
+                int length = asInt(evaluate(function, locals, first), first);
+                if (length < 0) {
+                    throw ProgramException.at(ast, node, "Negative array length " + length);
+                }
+                switch (ValueType.of(ast.tokens().type(ast.token(node)))) {
+                    case CHAR       : return new char[length];
+                    case BOOLEAN    : return new boolean[length];
+                    default         : return new int[length];
+                }
+            }
+            case VARIABLE: {
+                Object value = load(function, locals, node);
+                if (first == FlatAst.NONE) {
+                    return value;
+                }
+                Object array = checkArray(value, node);
+                int index = checkIndex(array, asInt(evaluate(function, locals, first), first), node);
+                if (array instanceof char[]) {
+                    return ((char[]) array)[index];
+                } else if (array instanceof boolean[]) {
+                    return ((boolean[]) array)[index];
+                }
+                return ((int[]) array)[index];
+            }
+            case ARRAY_LENGTH: {
+                if (ast.firstChild(first) != FlatAst.NONE) {
+                    throw ProgramException.at(ast, node, "length() of an array element");
+                }
+                Object array = checkArray(load(function, locals, first), first);
+                if (array instanceof char[]) {
+                    return ((char[]) array).length;
+                } else if (array instanceof boolean[]) {
+                    return ((boolean[]) array).length;
+                }
+                return ((int[]) array).length;
+            }
+            case FUNCTION_CALL: {
+                Declarations.Function callee = declarations.functions.get(ast.text(node));
+                if (callee == null) {
+                    throw ProgramException.at(ast, node, "Undefined function " + ast.text(node));
+                }
+                int count = first == FlatAst.NONE ? 0 : ast.childCount(first);
+                if (count != callee.parameters.size()) {
+                    throw ProgramException.at(ast, node, "Function " + callee.name + " takes "
+                            + callee.parameters.size() + " arguments, got " + count);
+                }
+                Object[] arguments = new Object[count];
+                for (int i = 0, argument = count == 0 ? FlatAst.NONE : ast.firstChild(first); i < count; i++, argument = ast.nextSibling(argument)) {
+                    arguments[i] = evaluate(function, locals, argument);
+                }
+                return call(callee, arguments, node);
+            }
+            case NOT:
+                return !isTrue(evaluate(function, locals, first), first);
+            case MINUS:
+                return -asInt(evaluate(function, locals, first), first);
+            case AND:
+                return isTrue(evaluate(function, locals, first), first)
+                        && isTrue(evaluate(function, locals, ast.nextSibling(first)), ast.nextSibling(first));
+            case OR:
+                return isTrue(evaluate(function, locals, first), first)
+                        || isTrue(evaluate(function, locals, ast.nextSibling(first)), ast.nextSibling(first));
+            default:
+                return binary(kind, node, evaluate(function, locals, first), evaluate(function, locals, ast.nextSibling(first)));
+        }
+    }
+
+    private Object binary(NodeKind kind, int node, Object left, Object right) {
+        if (isArray(left) || isArray(right)) {
+            if (isArray(left) && isArray(right) && (kind == NodeKind.EQUALS || kind == NodeKind.NOT_EQUAL)) {
+                return (left == right) == (kind == NodeKind.EQUALS);
+            }
+            throw ProgramException.at(ast, node, kind + " applied to an array");
+        }
+        int a = asInt(left, node);
+        int b = asInt(right, node);
+        switch (kind) {
+            case ADDITION:          return a + b;
+            case SUBTRACTION:       return a - b;
+            case MULTIPLICATION:    return a * b;
+            case DIVISION:          return a / nonZero(b, node);
+            case MOD:               return a % nonZero(b, node);
+            case EQUALS:            return a == b;
+            case NOT_EQUAL:         return a != b;
+            case GREATER:           return a > b;
+            case GREATER_OR_EQUAL:  return a >= b;
+            case LESS:              return a < b;
+            case LESS_OR_EQUAL:     return a <= b;
+            default: throw ProgramException.at(ast, node, "Unexpected " + kind + " expression");
+        }
+    }
+
+    private int nonZero(int divisor, int node) {
+        if (divisor == 0) {
+            throw ProgramException.at(ast, node, "Division by zero");
+        }
+        return divisor;
+    }
+
+    /** Stores value into a variable without an index. */
+    private void assign(Declarations.Function function, Map<String, Object> locals, int variable, Object value) {
+        String name = ast.text(variable);
+        value = coerce(value, typeOf(function, variable), variable);
+        if (locals != null && locals.containsKey(name)) {
+            locals.put(name, value);
+        } else {
+            globals.put(name, value);
+        }
+    }
+
+    /** Value of the index of an indexed variable. */
+    private int index(Declarations.Function function, Map<String, Object> locals, int variable) {
+        int index = ast.firstChild(variable);
+        return asInt(evaluate(function, locals, index), index);
+    }
+
+    /** Stores value at index at of the loaded array, checked only now as IASTORE does. */
+    private void storeElement(int variable, Object array, int at, Object value) {
+        checkIndex(checkArray(array, variable), at, variable);
+        if (isArray(value)) {
+            throw ProgramException.at(ast, variable, "Cannot store an array in an element of " + ast.text(variable));
+        }
+        if (array instanceof char[]) {
+            ((char[]) array)[at] = (char) asInt(value, variable);
+        } else if (array instanceof boolean[]) {
+            ((boolean[]) array)[at] = asInt(value, variable) != 0;
+        } else {
+            ((int[]) array)[at] = asInt(value, variable);
+        }
+    }
+
+    private Object load(Declarations.Function function, Map<String, Object> locals, int variable) {
+        typeOf(function, variable);
+        String name = ast.text(variable);
+        if (locals != null && locals.containsKey(name)) {
+            return locals.get(name);
+        }
+        return globals.get(name);
+    }
+
+    private ValueType typeOf(Declarations.Function function, int variable) {
+        ValueType type = Declarations.lookup(function, declarations.globals, ast.text(variable));
+        if (type == null) {
+            throw ProgramException.at(ast, variable, "Undefined variable " + ast.text(variable));
+        }
+        return type;
+    }
+
+    /** Converts a value stored into a variable, parameter or return value of the given type. */
+    private Object coerce(Object value, ValueType type, int node) {
+        if (type.isArray()) {
+            if (value != null && !isArray(value)) {
+                throw ProgramException.at(ast, node, "Expected " + type + ", got a scalar");
+            }
+            return value;
+        }
+        if (isArray(value)) {
+            throw ProgramException.at(ast, node, "Expected " + type + ", got an array");
+        }
+        return box(asInt(value, node), type);
+    }
+
+    private static Object box(int value, ValueType type) {
+        switch (type) {
+            case CHAR       : return (char) value;
+            case BOOLEAN    : return value != 0;
+            default         : return value;
+        }
+    }
+
+    private static Object defaultValue(ValueType type) {
+        return type.isArray() ? null : box(0, type);
+    }
+
+    private int asInt(Object value, int node) {
+        if (value instanceof Integer) {
+            return (Integer) value;
+        } else if (value instanceof Character) {
+            return (Character) value;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        throw ProgramException.at(ast, node, value == VOID ? "Void function used as a value" : "Expected a scalar, got an array");
+    }
+
+    private boolean isTrue(Object value, int node) {
+        return asInt(value, node) != 0;
+    }
+
+    private static boolean isArray(Object value) {
+        return value instanceof int[] || value instanceof char[] || value instanceof boolean[];
+    }
+
+    private Object checkArray(Object value, int node) {
+        if (value == null) {
+            throw ProgramException.at(ast, node, "Array is not initialized");
+        }
+        if (!isArray(value)) {
+            throw ProgramException.at(ast, node, ast.text(node) + " is not an array");
+        }
+        return value;
+    }
+
+    private int checkIndex(Object array, int index, int node) {
+        int length = array instanceof char[] ? ((char[]) array).length
+                : array instanceof boolean[] ? ((boolean[]) array).length : ((int[]) array).length;
+        if (index < 0 || index >= length) {
+            throw ProgramException.at(ast, node, "Index " + index + " out of bounds for length " + length);
+        }
+        return index;
+    }
+
+    private static String show(Object value) {
+        if (value instanceof char[]) {
+            return new String((char[]) value);
+        } else if (value instanceof int[]) {
+            return ProgramIO.format((int[]) value, ValueType.INT_ARRAY);
+        } else if (value instanceof boolean[]) {
+            return Arrays.toString((boolean[]) value);
+        }
+        return String.valueOf(value);
+    }
+}
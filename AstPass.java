@@ -0,0 +1,17 @@
+package optimizer;
+
+import ast.FlatAst;
+
+/** One transformation of a FlatAst, run in order with others by a {@link PassPipeline}. */
+public interface AstPass {
+
+    /** Name the pass is reported under in the {@link PassStatistics}. */
+    String name();
+
+    /**
+     * Returns the transformed program as a new FlatAst whose subtrees are contiguous like those the
+     * parsers build. Tokens the pass makes up, such as folded literals, are appended to ast.tokens(),
+     * so the buffer must not be shared with code that replays it; PassPipeline gives every run a copy.
+     */
+    FlatAst apply(FlatAst ast);
+}
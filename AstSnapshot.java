@@ -0,0 +1,346 @@
+package ast;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.ProgramBodyNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import lexer.TokenBuffer;
+import token.TokenImpl;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a parsed program that is read back through a memory mapping. load() only
+ * reads the fixed-size header, every top-level definition is decoded the first time it is asked
+ * for, so consumers that touch a few functions of a large module pay for those alone.
+ * <p>
+ * The snapshot is written from the FlatAst of a program, which FlatAstConverter turns into the
+ * tree ParserImpl.entryRule() builds, and decodes into that same tree. Its layout is a header, an
+ * offset table of the token texts and one of the definitions, the UTF-8 texts, then a section per
+ * definition: its tokens, with lines as deltas, and its nodes in FlatAst order, children first,
+ * each with its kind, its child count and its token, so a section rebuilds its subtree with one
+ * stack pass.
+ */
+public final class AstSnapshot {
+
+    private static final int MAGIC = 0x41535453;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final ByteBuffer data;
+    private final int stringCount;
+    private final int definitionCount;
+    private final int stringOffsets;
+    private final int definitionOffsets;
+    private final String[] strings;
+    private final GlobalDefinitionNode[] definitions;
+    private int decoded;
+
+    private AstSnapshot(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC || data.getInt(4) != VERSION
+                || data.getInt(8) != KINDS.length || data.getInt(12) != TYPES.length) {
+            throw new IOException("Not an AST snapshot of this version");
+        }
+        stringCount = data.getInt(16);
+        definitionCount = data.getInt(20);
+        stringOffsets = HEADER_BYTES;
+        definitionOffsets = stringOffsets + 4 * (stringCount + 1);
+        if (definitionOffsets + 4 * (definitionCount + 1) > data.limit()
+                || data.getInt(definitionOffsets + 4 * definitionCount) != data.limit()) {
+            throw new IOException("Truncated AST snapshot");
+        }
+        strings = new String[stringCount];
+        definitions = new GlobalDefinitionNode[definitionCount];
+    }
+
+    /** Maps file, nothing past the header and offset tables is read until a definition is asked for. */
+    public static AstSnapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AstSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Snapshot over bytes produced by toBytes(), decoded as lazily as a loaded one. */
+    public static AstSnapshot of(byte[] bytes) throws IOException {
+        return new AstSnapshot(ByteBuffer.wrap(bytes));
+    }
+
+    /** The program, its definitions list decodes each definition on the first get(). */
+    public ProgramBodyNode program() {
+        return new ProgramBodyNode(null, new AbstractList<GlobalDefinitionNode>() {
+            @Override
+            public GlobalDefinitionNode get(int index) {
+                return definition(index);
+            }
+
+            @Override
+            public int size() {
+                return definitionCount;
+            }
+        });
+    }
+
+    public int definitionCount() {
+        return definitionCount;
+    }
+
+    /** Number of definitions decoded so far. */
+    public synchronized int decodedCount() {
+        return decoded;
+    }
+
+    public synchronized GlobalDefinitionNode definition(int index) {
+        if (index < 0 || index >= definitionCount) {
+            throw new IndexOutOfBoundsException("Definition " + index + " of " + definitionCount);
+        }
+        GlobalDefinitionNode definition = definitions[index];
+        if (definition == null) {
+            definition = definitions[index] = decode(index);
+            decoded++;
+        }
+        return definition;
+    }
+
+    private GlobalDefinitionNode decode(int index) {
+        Reader in = new Reader(data, data.getInt(definitionOffsets + 4 * index));
+        int nodeCount = in.varint();
+        Token<TokenType>[] tokens = newTokenArray(in.varint());
+        int line = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            int typeAndFlag = in.varint();
+            TokenType type = TYPES[typeAndFlag >>> 1];
+            String text = (typeAndFlag & 1) != 0 ? string(in.varint()) : null;
+            int delta = in.varint();
+            line += delta >>> 1 ^ -(delta & 1);
+            int position = in.varint();
+            tokens[i] = text != null ? new TokenImpl(type, text, position, line) : new TokenImpl(type, position, line);
+        }
+
+        FlatAst ast = new FlatAst(null, nodeCount);
+        int[] stack = new int[Math.max(16, nodeCount)];
+        int depth = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            NodeKind kind = KINDS[in.u8()];
+            int children = in.varint();
+            int token = in.varint() - 1;
+            int first = FlatAst.NONE;
+            depth -= children;
+            for (int child = depth + children - 1; child >= depth; child--) {
+                first = ast.link(stack[child], first);
+            }
+            stack[depth++] = ast.add(kind, token, first);
+        }
+        return (GlobalDefinitionNode) FlatAstConverter.toAst(ast, stack[0], token -> tokens[token]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Token<TokenType>[] newTokenArray(int length) {
+        return (Token<TokenType>[]) new Token[length];
+    }
+
+    private String string(int index) {
+        String text = strings[index];
+        if (text == null) {
+            int start = data.getInt(stringOffsets + 4 * index);
+            byte[] bytes = new byte[data.getInt(stringOffsets + 4 * (index + 1)) - start];
+            ByteBuffer slice = data.duplicate();
+            slice.position(start);
+            slice.get(bytes);
+            text = strings[index] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return text;
+    }
+
+    /** Writes the program whose root is ast.root() to file, replacing it atomically. */
+    public static void write(FlatAst ast, Path file) throws IOException {
+        byte[] bytes = toBytes(ast);
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The snapshot of the program whose root is ast.root(). ERROR definitions are left out. Every
+     * definition must span its contiguous index range, so a RecoveringParser tree has to be
+     * compacted with FlatAst.copy() first.
+     */
+    public static byte[] toBytes(FlatAst ast) {
+        int root = ast.root();
+        if (root == FlatAst.NONE || ast.kind(root) != NodeKind.PROGRAM_BODY) {
+            throw new IllegalArgumentException("Not a program: " + (root == FlatAst.NONE ? "empty tree" : ast.kind(root)));
+        }
+        TokenBuffer tokens = ast.tokens();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        List<String> texts = new ArrayList<>();
+        List<Output> sections = new ArrayList<>();
+        for (int definition = ast.firstChild(root); definition != FlatAst.NONE; definition = ast.nextSibling(definition)) {
+            if (ast.kind(definition) == NodeKind.ERROR) {
+                continue;
+            }
+            int start = ast.subtreeStart(definition);
+            Map<Integer, Integer> local = new HashMap<>();
+            int line = 0;
+            Output tokenSection = new Output(64);
+            Output nodeSection = new Output((definition - start + 1) * 3);
+            for (int node = start; node <= definition; node++) {
+                int token = ast.token(node);
+                int localToken = 0;
+                if (token != FlatAst.NONE) {
+                    Integer known = local.get(token);
+                    if (known == null) {
+                        known = local.size();
+                        local.put(token, known);
+                        boolean hasText = tokens.hasText(token);
+                        tokenSection.varint(tokens.type(token).ordinal() << 1 | (hasText ? 1 : 0));
+                        if (hasText) {
+                            String text = tokens.getText(token);
+                            Integer stringIndex = stringIndexes.get(text);
+                            if (stringIndex == null) {
+                                stringIndex = texts.size();
+                                stringIndexes.put(text, stringIndex);
+                                texts.add(text);
+                            }
+                            tokenSection.varint(stringIndex);
+                        }
+                        int delta = tokens.line(token) - line;
+                        tokenSection.varint(delta << 1 ^ delta >> 31);
+                        line = tokens.line(token);
+                        tokenSection.varint(tokens.position(token));
+                    }
+                    localToken = known + 1;
+                }
+                nodeSection.u8(ast.kind(node).ordinal());
+                nodeSection.varint(ast.childCount(node));
+                nodeSection.varint(localToken);
+            }
+            Output section = new Output(tokenSection.size + nodeSection.size + 10);
+            section.varint(definition - start + 1);
+            section.varint(local.size());
+            section.bytes(tokenSection.data, tokenSection.size);
+            section.bytes(nodeSection.data, nodeSection.size);
+            sections.add(section);
+        }
+
+        List<byte[]> encoded = new ArrayList<>(texts.size());
+        int textBytes = 0;
+        for (String text : texts) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            textBytes += bytes.length;
+        }
+        int offset = HEADER_BYTES + 4 * (texts.size() + 1) + 4 * (sections.size() + 1);
+        Output out = new Output(offset + textBytes);
+        out.int32(MAGIC);
+        out.int32(VERSION);
+        out.int32(KINDS.length);
+        out.int32(TYPES.length);
+        out.int32(texts.size());
+        out.int32(sections.size());
+        for (byte[] bytes : encoded) {
+            out.int32(offset);
+            offset += bytes.length;
+        }
+        out.int32(offset);
+        for (Output section : sections) {
+            out.int32(offset);
+            offset += section.size;
+        }
+        out.int32(offset);
+        for (byte[] bytes : encoded) {
+            out.bytes(bytes, bytes.length);
+        }
+        for (Output section : sections) {
+            out.bytes(section.data, section.size);
+        }
+        return Arrays.copyOf(out.data, out.size);
+    }
+
+    private static final class Output {
+        byte[] data;
+        int size;
+
+        Output(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        void u8(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void int32(int value) {
+            ensure(4);
+            data[size++] = (byte) (value >>> 24);
+            data[size++] = (byte) (value >>> 16);
+            data[size++] = (byte) (value >>> 8);
+            data[size++] = (byte) value;
+        }
+
+        void bytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+            }
+        }
+    }
+
+    /** Reads from an absolute offset of the mapping, without touching its shared position. */
+    private static final class Reader {
+        private final ByteBuffer data;
+        private int offset;
+
+        Reader(ByteBuffer data, int offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+
+        int u8() {
+            return data.get(offset++) & 0xFF;
+        }
+
+        int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data.get(offset++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import ast.AstSnapshot;
+import ast.FlatAst;
+import lexer.LexerImpl;
+import lexer.PackedLexer;
+import parser.FlatAstParser;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares a full reparse of a generated program with thousands of functions against loading its
+ * AstSnapshot: the load alone, the load plus one function, and the load plus every definition.
+ * The snapshot is first checked to decode into the tree ParserImpl builds.
+ */
+public class AstSnapshotBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        Path source = Files.createTempFile("snapshot-bench", ".txt");
+        Path snapshot = Files.createTempFile("snapshot-bench", ".ast");
+        try {
+            Files.write(source, new ProgramGenerator(42).manyFunctions(functions).getBytes(StandardCharsets.UTF_8));
+            String path = source.toString();
+            FlatAst flat = new FlatAstParser(new PackedLexer(CharArraySource.fromFile(path)).tokenize()).parse();
+            AstSnapshot.write(flat, snapshot);
+            String expected = new ParserImpl(new LexerImpl(CharArraySource.fromFile(path))).entryRule().toString();
+            if (!expected.equals(AstSnapshot.load(snapshot).program().toString())) {
+                throw new IllegalStateException("Snapshot decodes to a different tree");
+            }
+            int definitions = AstSnapshot.load(snapshot).definitionCount();
+            System.out.printf("%d definitions, source %d bytes, snapshot %d bytes%n",
+                    definitions, Files.size(source), Files.size(snapshot));
+
+            long reparse = best(() -> new ParserImpl(new LexerImpl(CharArraySource.fromFile(path))).entryRule());
+            long load = best(() -> AstSnapshot.load(snapshot).program());
+            long touchOne = best(() -> AstSnapshot.load(snapshot).definition(definitions / 2));
+            long loadAll = best(() -> {
+                AstSnapshot loaded = AstSnapshot.load(snapshot);
+                for (int i = 0; i < definitions; i++) {
+                    loaded.definition(i);
+                }
+            });
+            System.out.printf("full reparse          %8.2f ms%n", reparse / 1e6);
+            System.out.printf("snapshot load         %8.2f ms%n", load / 1e6);
+            System.out.printf("load + one function   %8.2f ms%n", touchOne / 1e6);
+            System.out.printf("load + all decoded    %8.2f ms%n", loadAll / 1e6);
+        } finally {
+            Files.delete(source);
+            Files.delete(snapshot);
+        }
+    }
+
+    interface Run {
+        void run() throws IOException;
+    }
+
+    private static long best(Run run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            try {
+                run.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,307 @@
+package driver;
+
+import ast.FlatAstConverter;
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import lexer.Lexers;
+import lexer.MeteredLexer;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import metrics.CompileMetrics;
+import metrics.JfrMetricsListener;
+import metrics.MetricsListener;
+import parser.MeteredParser;
+import parser.ParserImpl;
+import parser.RecoveringParser;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lexes and parses many files on a work-stealing ForkJoinPool and keeps the AST or the
+ * diagnostic of every file. With --recover every file is parsed by RecoveringParser, which keeps
+ * its partial AST and all of its diagnostics instead of stopping at the first. --metrics prints
+ * the merged CompileMetrics of all files, --jfr emits them as flight recorder events; recovered
+ * files have phase times and token counts but no rule times or nesting depth.
+ *
+ * Usage: BatchCompiler [--threads N] [--recover] [--metrics] [--jfr] file-or-directory...
+ */
+public class BatchCompiler {
+
+    public static class FileResult {
+        public final Path path;
+        public final long bytes;
+        public final AST ast;
+        public final RuntimeException diagnostic;
+        public final List<RuntimeException> diagnostics;
+
+        FileResult(Path path, long bytes, AST ast, List<RuntimeException> diagnostics) {
+            this.path = path;
+            this.bytes = bytes;
+            this.ast = ast;
+            this.diagnostics = diagnostics;
+            diagnostic = diagnostics.isEmpty() ? null : diagnostics.get(0);
+        }
+
+        public boolean failed() {
+            return diagnostic != null;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final boolean recover;
+    private final MetricsListener listener;
+
+    public BatchCompiler(int parallelism) {
+        this(parallelism, false, null);
+    }
+
+    /** Compiler that recovers from errors if recover is set and reports metrics to listener unless it is null. */
+    public BatchCompiler(int parallelism, boolean recover, MetricsListener listener) {
+        pool = new ForkJoinPool(parallelism);
+        this.recover = recover;
+        this.listener = listener;
+    }
+
+    public List<FileResult> compile(List<Path> files) {
+        FileResult[] results = new FileResult[files.size()];
+        pool.invoke(new CompileTask(this, files, results, 0, files.size()));
+        return Arrays.asList(results);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public static FileResult compileFile(Path path) {
+        long bytes = 0;
+        try {
+            bytes = Files.size(path);
+            CharArraySource source = CharArraySource.fromFile(path.toString());
+            Lexer<TokenType> lexer = Lexers.create(Lexers.defaultBackend(), source, new SymbolTable());
+            return new FileResult(path, bytes, new ParserImpl(lexer).entryRule(), Collections.emptyList());
+        } catch (LexicalException | SyntaxException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(e));
+        } catch (IOException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(new UncheckedIOException(e)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return crashed(path, bytes, e);
+        }
+    }
+
+    /** Compiles path with MeteredLexer and MeteredParser and hands the metrics to listener. */
+    public static FileResult compileFile(Path path, MetricsListener listener) {
+        CompileMetrics metrics = new CompileMetrics();
+        long bytes = 0;
+        try {
+            long start = System.nanoTime();
+            bytes = Files.size(path);
+            CharArraySource source = CharArraySource.fromFile(path.toString());
+            metrics.phase(CompileMetrics.Phase.READ, System.nanoTime() - start);
+            MeteredLexer lexer = new MeteredLexer(Lexers.create(Lexers.defaultBackend(), source, new SymbolTable()), metrics);
+            try {
+                return new FileResult(path, bytes, new MeteredParser(lexer, metrics).entryRule(), Collections.emptyList());
+            } finally {
+                metrics.lexed(bytes, lexer.line());
+                listener.compiled(path.toString(), metrics);
+            }
+        } catch (LexicalException | SyntaxException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(e));
+        } catch (IOException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(new UncheckedIOException(e)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return crashed(path, bytes, e);
+        }
+    }
+
+    /** Parses path with error recovery, the result has the partial AST and every diagnostic. */
+    public static FileResult recoverFile(Path path) {
+        long bytes = 0;
+        try {
+            bytes = Files.size(path);
+            RecoveringParser parser = RecoveringParser.of(CharArraySource.fromFile(path.toString()));
+            AST ast = FlatAstConverter.toAst(parser.parse());
+            return new FileResult(path, bytes, ast, parser.diagnostics());
+        } catch (IOException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(new UncheckedIOException(e)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return crashed(path, bytes, e);
+        }
+    }
+
+    /** A file that breaks the lexer or the parser fails on its own instead of the whole batch. */
+    private static FileResult crashed(Path path, long bytes, Throwable e) {
+        return new FileResult(path, bytes, null, Collections.singletonList(new IllegalStateException("Cannot parse: " + e, e)));
+    }
+
+    /**
+     * Recovers path like recoverFile(Path) and hands the read, lex and parse times, the tokens and
+     * the lines to listener. RecoveringParser is not instrumented, so there are no rule times.
+     */
+    public static FileResult recoverFile(Path path, MetricsListener listener) {
+        CompileMetrics metrics = new CompileMetrics();
+        long bytes = 0;
+        try {
+            long start = System.nanoTime();
+            bytes = Files.size(path);
+            CharArraySource source = CharArraySource.fromFile(path.toString());
+            long read = System.nanoTime();
+            metrics.phase(CompileMetrics.Phase.READ, read - start);
+            List<RuntimeException> diagnostics = new ArrayList<>();
+            TokenBuffer tokens = new PackedLexer(source).withSymbols(new SymbolTable()).withRecovery(diagnostics).tokenize();
+            long lexed = System.nanoTime();
+            metrics.phase(CompileMetrics.Phase.LEX, lexed - read);
+            for (int i = 0; i < tokens.size(); i++) {
+                metrics.token(tokens.type(i));
+            }
+            // the line of the last token as with MeteredLexer, the lexer also counts a trailing newline
+            metrics.lexed(bytes, tokens.size() == 0 ? 0 : tokens.line(tokens.size() - 1));
+            try {
+                RecoveringParser parser = new RecoveringParser(tokens, diagnostics);
+                AST ast = FlatAstConverter.toAst(parser.parse());
+                return new FileResult(path, bytes, ast, parser.diagnostics());
+            } finally {
+                metrics.phase(CompileMetrics.Phase.PARSE, System.nanoTime() - lexed);
+                listener.compiled(path.toString(), metrics);
+            }
+        } catch (IOException e) {
+            return new FileResult(path, bytes, null, Collections.singletonList(new UncheckedIOException(e)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return crashed(path, bytes, e);
+        }
+    }
+
+    private FileResult compileOne(Path path) {
+        if (recover) {
+            return listener != null ? recoverFile(path, listener) : recoverFile(path);
+        }
+        return listener != null ? compileFile(path, listener) : compileFile(path);
+    }
+
+    private static class CompileTask extends RecursiveAction {
+        private final BatchCompiler compiler;
+        private final List<Path> files;
+        private final FileResult[] results;
+        private final int from;
+        private final int to;
+
+        CompileTask(BatchCompiler compiler, List<Path> files, FileResult[] results, int from, int to) {
+            this.compiler = compiler;
+            this.files = files;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    results[from] = compiler.compileOne(files.get(from));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CompileTask(compiler, files, results, from, middle),
+                    new CompileTask(compiler, files, results, middle, to));
+        }
+    }
+
+    static List<Path> collect(List<String> arguments) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String argument : arguments) {
+            Path path = Paths.get(argument);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> stream = Files.walk(path)) {
+                    files.addAll(stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean recover = false;
+        boolean metrics = false;
+        boolean jfr = false;
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        while (!arguments.isEmpty() && arguments.get(0).startsWith("--")) {
+            String option = arguments.remove(0);
+            switch (option) {
+                case "--threads":   threads = Integer.parseInt(arguments.remove(0)); break;
+                case "--recover":   recover = true; break;
+                case "--metrics":   metrics = true; break;
+                case "--jfr":       jfr = true; break;
+                default:            throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (arguments.isEmpty()) {
+            arguments = Arrays.asList("resources");
+        }
+        List<Path> files = collect(arguments);
+        if (files.isEmpty()) {
+            System.out.println("No input files.");
+            return;
+        }
+
+        CompileMetrics total = new CompileMetrics();
+        MetricsListener events = jfr ? new JfrMetricsListener() : null;
+        MetricsListener listener = null;
+        if (metrics && jfr) {
+            listener = (source, fileMetrics) -> {
+                total.add(fileMetrics);
+                events.compiled(source, fileMetrics);
+            };
+        } else if (metrics) {
+            listener = (source, fileMetrics) -> total.add(fileMetrics);
+        } else if (jfr) {
+            listener = events;
+        }
+
+        BatchCompiler compiler = new BatchCompiler(threads, recover, listener);
+        long start = System.nanoTime();
+        List<FileResult> results = compiler.compile(files);
+        long elapsed = System.nanoTime() - start;
+        compiler.shutdown();
+
+        long bytes = 0;
+        int failed = 0;
+        for (FileResult result : results) {
+            bytes += result.bytes;
+            if (result.failed()) {
+                failed++;
+                for (RuntimeException diagnostic : result.diagnostics) {
+                    System.out.println(result.path + ": " + diagnostic.getMessage());
+                }
+            }
+        }
+        if (metrics) {
+            System.out.print(total.summary());
+        }
+        double seconds = elapsed / 1e9;
+        System.out.printf("%d files, %d failed, %d threads, %.2f ms, %.1f files/s, %.2f MB/s%n",
+                results.size(), failed, threads, elapsed / 1e6, results.size() / seconds, bytes / seconds / (1 << 20));
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import lexer.LexerImpl;
+import parser.ParserImpl;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throughput of LexerImpl.nextToken() and latency of ParserImpl.entryRule() on every shape of
+ * ProgramGenerator, with the bytes allocated per operation. Runs are timed the JMH way: warmup
+ * iterations, then measured iterations of a fixed duration each, reporting the mean and the spread.
+ * Results can be written as CSV and compared against an earlier CSV, the run fails with exit code 1
+ * when a score got worse by more than the tolerance.
+ *
+ * This is the quick check that needs no build. The figures of record come from the JMH benchmarks
+ * of the jmh module (NextTokenBenchmark, EntryRuleBenchmark), which fork, sink their results
+ * into a Blackhole and take the allocation rate from the gc profiler.
+ *
+ * Usage: BenchmarkSuite [--shape NAME] [--size N] [--seed S] [--warmup N] [--iterations N]
+ *                       [--time MS] [--out FILE] [--baseline FILE] [--tolerance FRACTION]
+ */
+public class BenchmarkSuite {
+
+    private static final List<String> OPTIONS = Arrays.asList("--shape", "--size", "--seed", "--warmup",
+            "--iterations", "--time", "--out", "--baseline", "--tolerance");
+
+    interface Operation {
+        /** Runs once and returns the number of items processed, tokens or parses. */
+        long run();
+    }
+
+    static class Result {
+        final String benchmark;
+        final String shape;
+        final int size;
+        final double score;
+        final double error;
+        final String unit;
+        final boolean higherIsBetter;
+        final double bytesPerItem;
+
+        Result(String benchmark, String shape, int size, double score, double error, String unit,
+               boolean higherIsBetter, double bytesPerItem) {
+            this.benchmark = benchmark;
+            this.shape = shape;
+            this.size = size;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+            this.bytesPerItem = bytesPerItem;
+        }
+
+        String key() {
+            return benchmark + "," + shape + "," + size;
+        }
+
+        String csv() {
+            return String.format(Locale.ROOT, "%s,%.4f,%.4f,%s,%b,%.1f", key(), score, error, unit, higherIsBetter, bytesPerItem);
+        }
+    }
+
+    private static long sink;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationNanos;
+
+    BenchmarkSuite(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!OPTIONS.contains(args[i])) {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            options.put(args[i], args[i + 1]);
+        }
+        long seed = Long.parseLong(options.getOrDefault("--seed", "42"));
+        BenchmarkSuite suite = new BenchmarkSuite(Integer.parseInt(options.getOrDefault("--warmup", "3")),
+                Integer.parseInt(options.getOrDefault("--iterations", "5")),
+                Long.parseLong(options.getOrDefault("--time", "1000")));
+
+        List<Result> results = new ArrayList<>();
+        for (ProgramGenerator.Shape shape : ProgramGenerator.Shape.values()) {
+            if (options.containsKey("--shape") && !shape.name().equalsIgnoreCase(options.get("--shape"))) {
+                continue;
+            }
+            int size = options.containsKey("--size") ? Integer.parseInt(options.get("--size")) : shape.defaultSize;
+            String program = new ProgramGenerator(seed).generate(shape, size);
+            char[] chars = program.toCharArray();
+
+            results.add(report(suite.throughput("lexer.nextToken", shape.name(), size,
+                    () -> count(new LexerImpl(new CharArraySource(chars, chars.length))))));
+            results.add(report(suite.latency("parser.entryRule", shape.name(), size,
+                    () -> parse(new LexerImpl(new CharArraySource(chars, chars.length))))));
+        }
+
+        if (options.containsKey("--out")) {
+            List<String> lines = new ArrayList<>();
+            for (Result result : results) {
+                lines.add(result.csv());
+            }
+            Files.write(Paths.get(options.get("--out")), lines, StandardCharsets.UTF_8);
+        }
+        if (options.containsKey("--baseline")) {
+            double tolerance = Double.parseDouble(options.getOrDefault("--tolerance", "0.10"));
+            if (regressions(results, Files.readAllLines(Paths.get(options.get("--baseline"))), tolerance) > 0) {
+                System.exit(1);
+            }
+        }
+    }
+
+    static long count(Lexer<TokenType> lexer) {
+        long tokens = 0;
+        while (lexer.nextToken() != null) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    static long parse(Lexer<TokenType> lexer) {
+        sink += System.identityHashCode(new ParserImpl(lexer).entryRule());
+        return 1;
+    }
+
+    /** Tokens per second, reported in millions. */
+    Result throughput(String benchmark, String shape, int size, Operation operation) {
+        double[] scores = new double[measuredIterations];
+        double bytes = measure(operation, scores);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = scores[i] / 1e6;
+        }
+        return result(benchmark, shape, size, scores, "M tokens/s", true, bytes);
+    }
+
+    /** Microseconds per operation. */
+    Result latency(String benchmark, String shape, int size, Operation operation) {
+        double[] scores = new double[measuredIterations];
+        double bytes = measure(operation, scores);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = 1e6 / scores[i];
+        }
+        return result(benchmark, shape, size, scores, "us/op", false, bytes);
+    }
+
+    /**
+     * Runs the warmup iterations, then fills scores with the items per second of each measured
+     * iteration and returns the bytes allocated per item, or NaN if the JVM cannot tell.
+     */
+    private double measure(Operation operation, double[] scores) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        long allocatedBefore = allocatedBytes();
+        long items = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            long[] iteration = iteration(operation);
+            items += iteration[0];
+            scores[i] = iteration[0] * 1e9 / iteration[1];
+        }
+        long allocatedAfter = allocatedBytes();
+        return allocatedBefore < 0 ? Double.NaN : (double) (allocatedAfter - allocatedBefore) / items;
+    }
+
+    /** Runs operation until the iteration time is used up, returns items and elapsed nanos. */
+    private long[] iteration(Operation operation) {
+        long items = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            items += operation.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return new long[] { items, elapsed };
+    }
+
+    /** Allocation counter of the current thread, the same figure JMH's gc profiler normalizes. */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static Result result(String benchmark, String shape, int size, double[] scores, String unit,
+                                 boolean higherIsBetter, double bytesPerItem) {
+        double sum = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (double score : scores) {
+            sum += score;
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        double mean = sum / scores.length;
+        return new Result(benchmark, shape, size, mean, Math.max(max - mean, mean - min), unit, higherIsBetter, bytesPerItem);
+    }
+
+    private static Result report(Result result) {
+        System.out.printf(Locale.ROOT, "%-18s %-17s %6d %12.3f +- %8.3f %-10s %10.1f B/item%n", result.benchmark,
+                result.shape, result.size, result.score, result.error, result.unit, result.bytesPerItem);
+        return result;
+    }
+
+    /** Prints every result that is worse than its baseline line by more than tolerance and counts them. */
+    static int regressions(List<Result> results, List<String> baseline, double tolerance) {
+        Map<String, Double> scores = new HashMap<>();
+        for (String line : baseline) {
+            String[] fields = line.split(",");
+            if (fields.length >= 4) {
+                scores.put(fields[0] + "," + fields[1] + "," + fields[2], Double.parseDouble(fields[3]));
+            }
+        }
+        int regressions = 0;
+        for (Result result : results) {
+            Double before = scores.get(result.key());
+            if (before == null) {
+                continue;
+            }
+            double change = result.higherIsBetter ? (before - result.score) / before : (result.score - before) / before;
+            if (change > tolerance) {
+                regressions++;
+                System.out.printf(Locale.ROOT, "REGRESSION %s: %.3f -> %.3f %s (%.1f%% worse)%n",
+                        result.key(), before, result.score, result.unit, change * 100);
+            }
+        }
+        return regressions;
+    }
+}
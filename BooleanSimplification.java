@@ -0,0 +1,101 @@
+package optimizer;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import token.TokenType;
+
+/**
+ * Simplifies &, | and ! around literals the way they short-circuit: false & x and true | x become
+ * the literal, true & x and x | false become x when x is a boolean. x & false keeps x unless it is
+ * pure, since x is still evaluated. !literal is folded, !!x becomes x for a boolean x and !(a < b)
+ * becomes a >= b.
+ */
+public final class BooleanSimplification extends RewritePass {
+
+    @Override
+    public String name() {
+        return "boolean simplification";
+    }
+
+    @Override
+    int rewrite(int node) {
+        switch (in.kind(node)) {
+            case NOT:
+                return not(node);
+            case AND:
+            case OR:
+                return andOr(node);
+            default:
+                return copy(node);
+        }
+    }
+
+    private int not(int node) {
+        int operand = map[in.firstChild(node)];
+        Boolean value = truth(out, operand);
+        if (value != null) {
+            return bool(!value, node);
+        }
+        NodeKind kind = out.kind(operand);
+        if (kind == NodeKind.NOT && isBoolean(out, out.firstChild(operand))) {
+            return out.firstChild(operand);
+        }
+        if (kind.isRelationalOperator()) {
+            int left = out.firstChild(operand);
+            int right = out.nextSibling(left);
+            return node(inverse(kind), token(inverseToken(kind), null, node), left, right);
+        }
+        return copy(node);
+    }
+
+    private int andOr(int node) {
+        boolean and = in.kind(node) == NodeKind.AND;
+        int first = in.firstChild(node);
+        int left = map[first];
+        int right = map[in.nextSibling(first)];
+        Boolean l = truth(out, left);
+        Boolean r = truth(out, right);
+        if (l != null) {
+            // false & x and true | x never evaluate x
+            if (l != and) {
+                return bool(l, node);
+            }
+            if (r != null) {
+                return bool(r, node);
+            }
+            if (isBoolean(out, right)) {
+                return right;
+            }
+        } else if (r != null) {
+            if (r == and && isBoolean(out, left)) {
+                return left;
+            }
+            if (r != and && isPure(first)) {
+                return bool(r, node);
+            }
+        }
+        return copy(node);
+    }
+
+    private static NodeKind inverse(NodeKind kind) {
+        switch (kind) {
+            case EQUALS:            return NodeKind.NOT_EQUAL;
+            case NOT_EQUAL:         return NodeKind.EQUALS;
+            case GREATER:           return NodeKind.LESS_OR_EQUAL;
+            case GREATER_OR_EQUAL:  return NodeKind.LESS;
+            case LESS:              return NodeKind.GREATER_OR_EQUAL;
+            default:                return NodeKind.GREATER;
+        }
+    }
+
+    private static TokenType inverseToken(NodeKind kind) {
+        switch (kind) {
+            case EQUALS:            return TokenType.NOTEQUALS;
+            case NOT_EQUAL:         return TokenType.EQUALS;
+            case GREATER:           return TokenType.LESS_EQ;
+            case GREATER_OR_EQUAL:  return TokenType.LESS;
+            case LESS:              return TokenType.GREATER_EQ;
+            default:                return TokenType.GREATER;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.TokenType;
+
+/**
+ * Lexer wrapper that keeps the tokens of another lexer in a bounded ring buffer, so a parser can
+ * look ahead with {@link #peek(int)} without relexing. The buffer is either filled on demand in the
+ * caller's thread, or in batches by a producer thread that lexes while the parser parses. In both
+ * modes tokens and lexical errors reach the consumer in the order of the wrapped lexer.
+ */
+public class BufferedTokenStream extends Lexer<TokenType> implements AutoCloseable {
+
+    private static final int SPINS = 200;
+
+    private final Lexer<TokenType> tokens;
+    private final Token<TokenType>[] ring;
+    private final int mask;
+    private final Thread producer;
+    private final Object lock = new Object();
+
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile boolean consumerWaiting;
+    private volatile boolean producerWaiting;
+    private RuntimeException failure;
+
+    /** Ring buffer of at least capacity tokens filled on demand by the calling thread. */
+    public BufferedTokenStream(Lexer<TokenType> tokens, int capacity) {
+        this(tokens, capacity, 0);
+    }
+
+    /**
+     * Ring buffer of at least capacity tokens. With a positive batchSize a producer thread lexes
+     * batchSize tokens at a time ahead of the consumer, otherwise the buffer is filled on demand.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferedTokenStream(Lexer<TokenType> tokens, int capacity, int batchSize) {
+        super(null);
+        this.tokens = tokens;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = (Token<TokenType>[]) new Token[size];
+        mask = size - 1;
+        if (batchSize > 0) {
+            producer = new Thread(() -> produce(Math.min(batchSize, size)), "token-producer");
+            producer.setDaemon(true);
+            producer.start();
+        } else {
+            producer = null;
+        }
+    }
+
+    @Override
+    public Token<TokenType> nextToken() {
+        Token<TokenType> token = peek(0);
+        if (token != null) {
+            ring[(int) head & mask] = null;
+            head = head + 1;
+            if (producerWaiting) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Token k positions ahead of the next one nextToken() returns, or null past the end of input.
+     * k must be smaller than the capacity of the buffer.
+     */
+    public Token<TokenType> peek(int k) {
+        if (k < 0 || k > mask) {
+            throw new IllegalArgumentException("Lookahead " + k + " outside of buffer of " + ring.length);
+        }
+        long index = head + k;
+        if (index >= tail) {
+            if (producer == null) {
+                fill(index);
+            } else {
+                await(index);
+            }
+            if (index >= tail) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+        }
+        return ring[(int) index & mask];
+    }
+
+    /** Stops the producer thread, tokens that were not consumed yet are dropped. */
+    @Override
+    public void close() {
+        closed = true;
+        if (producer != null) {
+            producer.interrupt();
+        }
+    }
+
+    private void fill(long index) {
+        while (tail <= index && !done) {
+            Token<TokenType> token = tokens.nextToken();
+            if (token == null) {
+                done = true;
+            } else {
+                ring[(int) tail & mask] = token;
+                tail = tail + 1;
+            }
+        }
+    }
+
+    private void await(long index) {
+        for (int spin = 0; spin < SPINS; spin++) {
+            if (tail > index || done) {
+                return;
+            }
+            Thread.yield();
+        }
+        consumerWaiting = true;
+        try {
+            synchronized (lock) {
+                while (tail <= index && !done) {
+                    lock.wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tokens", e);
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    private void produce(int batchSize) {
+        @SuppressWarnings("unchecked")
+        Token<TokenType>[] batch = (Token<TokenType>[]) new Token[batchSize];
+        try {
+            boolean end = false;
+            while (!end && !closed) {
+                int count = 0;
+                try {
+                    while (count < batchSize) {
+                        Token<TokenType> token = tokens.nextToken();
+                        if (token == null) {
+                            end = true;
+                            break;
+                        }
+                        batch[count++] = token;
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                    end = true;
+                }
+                publish(batch, count);
+            }
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } finally {
+            done = true;
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void publish(Token<TokenType>[] batch, int count) throws InterruptedException {
+        int published = 0;
+        while (published < count) {
+            int free = ring.length - (int) (tail - head);
+            if (free == 0) {
+                for (int spin = 0; spin < SPINS && ring.length == tail - head; spin++) {
+                    Thread.yield();
+                }
+                if (ring.length != tail - head) {
+                    continue;
+                }
+                producerWaiting = true;
+                try {
+                    synchronized (lock) {
+                        while (ring.length == tail - head && !closed) {
+                            lock.wait();
+                        }
+                    }
+                } finally {
+                    producerWaiting = false;
+                }
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            int n = Math.min(free, count - published);
+            long start = tail;
+            for (int i = 0; i < n; i++) {
+                ring[(int) (start + i) & mask] = batch[published + i];
+                batch[published + i] = null;
+            }
+            tail = start + n;
+            published += n;
+            if (consumerWaiting) {
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.source.Source;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * PackedLexer over the UTF-8 bytes of a source instead of a decoded char[]. Every lexeme of the
+ * language outside of literals is ASCII, so the bytes are scanned as they are and only the
+ * contents of string and char literals, and stray non ASCII chars, are decoded when their text
+ * is asked for. With {@link #map(FileChannel)} the bytes are read straight from the page cache.
+ *
+ * The resulting {@link TokenBuffer} holds byte offsets, but lines and positions count chars like
+ * the other lexers do. "\r\n" and "\r" end a line the way CharArraySource normalizes them, and an
+ * input that does not end with a line terminator is lexed as if it did.
+ */
+public class ByteBufferLexer {
+
+    private final ByteBuffer bytes;
+    private final int length;
+    private SymbolTable symbols;
+    private List<? super LexicalException> errors;
+    private int offset;
+    private int line = 1;
+    /** Offset at which the current line would start if every char before was a single byte. */
+    private int lineStart;
+    /** Whether the high half of the four byte sequence at offset was already consumed. */
+    private boolean lowHalf;
+
+    /** Lexes bytes[position, limit), the buffer itself is not moved. */
+    public ByteBufferLexer(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.length = bytes.limit();
+        this.offset = bytes.position();
+        this.lineStart = offset;
+    }
+
+    /** Lexer over a read only mapping of the whole file of channel. */
+    public static ByteBufferLexer map(FileChannel channel) throws IOException {
+        return new ByteBufferLexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    public static ByteBufferLexer fromFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return map(channel);
+        }
+    }
+
+    /** Interns identifiers in symbols, the resulting TokenBuffer stores their ids. */
+    public ByteBufferLexer withSymbols(SymbolTable symbols) {
+        this.symbols = symbols;
+        return this;
+    }
+
+    /** Records lexical errors in errors and keeps lexing, the same way LexerImpl.withRecovery() does. */
+    public ByteBufferLexer withRecovery(List<? super LexicalException> errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    public TokenBuffer newBuffer() {
+        return new TokenBuffer(bytes, symbols, Math.max(16, (length - offset) / 8));
+    }
+
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens = newBuffer();
+        while (next(tokens)) {
+            // keep going until EOF
+        }
+        return tokens;
+    }
+
+    /** Appends the next token to out, returns false at EOF. */
+    public boolean next(TokenBuffer out) {
+        if (lowHalf) {
+            out.add(TokenType.OTHER, true, offset, 4, line, offset - lineStart + 1, 2);
+            skipChar();
+            return true;
+        }
+        while (offset < length) {
+            int start = offset;
+            switch (bytes.get(offset)) {
+                case ' ' : case '\t' : case '\n' : case '\r' : skipBlanks(); continue;
+
+                case '-' : return twoCharOp(out, '>', TokenType.MINUS, TokenType.ARROW);
+                case '=' : return twoCharOp(out, '=', TokenType.BECOMES, TokenType.EQUALS);
+                case '>' : return twoCharOp(out, '=', TokenType.GREATER, TokenType.GREATER_EQ);
+                case '<' : return twoCharOp(out, '=', TokenType.LESS, TokenType.LESS_EQ);
+                case '!' : return twoCharOp(out, '=', TokenType.NOT, TokenType.NOTEQUALS);
+                case '&' : return twoCharOp(out, '&', TokenType.AND, TokenType.OTHER);
+                case '|' : return twoCharOp(out, '|', TokenType.OR, TokenType.OTHER);
+                case '/' :
+                    if (at(offset + 1) == '/') {
+                        skipComment();
+                        continue;
+                    }
+                    return single(out, TokenType.DIV);
+                case '\'': return charLiteral(out);
+                case '"' : return stringLiteral(out);
+
+                case '+' : return single(out, TokenType.PLUS);
+                case '[' : return single(out, TokenType.LSQUARE);
+                case ']' : return single(out, TokenType.RSQUARE);
+                case '{' : return single(out, TokenType.LBRACKET);
+                case '}' : return single(out, TokenType.RBRACKET);
+                case '(' : return single(out, TokenType.LPAREN);
+                case ')' : return single(out, TokenType.RPAREN);
+                case ';' : return single(out, TokenType.SEMICOLON);
+                case '*' : return single(out, TokenType.MUL);
+                case '%' : return single(out, TokenType.MOD);
+                case ',' : return single(out, TokenType.COMMA);
+                case '@' : return single(out, TokenType.AT);
+
+                default  :
+                    int b = bytes.get(offset);
+                    if (isLetter(b)) { return identifier(out); }
+                    if (isDigit(b)) { return number(out); }
+                    return other(out, start);
+            }
+        }
+        return false;
+    }
+
+    /** Byte at i, the '\n' that ends the input past the limit. */
+    private int at(int i) {
+        return i < length ? bytes.get(i) : '\n';
+    }
+
+    private void skipBlanks() {
+        while (offset < length) {
+            int b = bytes.get(offset);
+            if (b == ' ' || b == '\t') {
+                offset++;
+            } else if (b == '\n' || b == '\r') {
+                newLine();
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Moves past the line terminator at offset. */
+    private void newLine() {
+        boolean crlf = bytes.get(offset) == '\r' && offset + 1 < length && bytes.get(offset + 1) == '\n';
+        offset = lineStart = offset + (crlf ? 2 : 1);
+        line++;
+    }
+
+    private void skipComment() {
+        offset += 2;
+        while (offset < length && bytes.get(offset) != '\n' && bytes.get(offset) != '\r') {
+            offset++;
+        }
+        if (offset < length) {
+            newLine();
+        }
+    }
+
+    private boolean single(TokenBuffer out, TokenType type) {
+        out.add(type, false, offset, 1, line, offset - lineStart + 1, 0);
+        offset++;
+        return true;
+    }
+
+    private boolean twoCharOp(TokenBuffer out, char followingChar, TokenType first, TokenType second) {
+        if (at(offset + 1) == followingChar) {
+            out.add(second, false, offset, 2, line, offset - lineStart + 1, 0);
+            offset += 2;
+            return true;
+        }
+        return single(out, first);
+    }
+
+    private boolean identifier(TokenBuffer out) {
+        int start = offset;
+        int end = start + 1;
+        while (end < length && (isLetter(bytes.get(end)) || isDigit(bytes.get(end)))) {
+            end++;
+        }
+        offset = end;
+        TokenType keyword = KeywordTable.lookup(bytes, start, end - start);
+        if (keyword != null) {
+            out.add(keyword, false, start, end - start, line, start - lineStart + 1, 0);
+        } else {
+            int symbol = symbols != null ? symbols.intern(bytes, start, end - start) : 0;
+            out.add(TokenType.IDENTIFIER, true, start, end - start, line, start - lineStart + 1, symbol);
+        }
+        return true;
+    }
+
+    private boolean number(TokenBuffer out) {
+        int start = offset;
+        int end = start;
+        long value = 0;
+        while (end < length && isDigit(bytes.get(end))) {
+            if (value <= Integer.MAX_VALUE) {
+                value = value * 10 + (bytes.get(end) - '0');
+            }
+            end++;
+        }
+        int position = start - lineStart + 1;
+        if (value > Integer.MAX_VALUE) {
+            char[] digits = new char[end - start];
+            for (int i = 0; i < digits.length; i++) {
+                digits[i] = (char) bytes.get(start + i);
+            }
+            String digit = new String(digits);
+            try {
+                Integer.parseInt(digit);
+            } catch (NumberFormatException e) {
+                lexicalError(new LexicalException("Not a valid integer " + digit + ".", line, position, e));
+            }
+        }
+        offset = end;
+        out.add(TokenType.NUMBER, true, start, end - start, line, position, (int) value);
+        return true;
+    }
+
+    /** A char the language has no use for, the high half of a surrogate pair on its own. */
+    private boolean other(TokenBuffer out, int start) {
+        int width = width(start);
+        out.add(TokenType.OTHER, true, start, width, line, start - lineStart + 1, width == 4 ? 1 : 0);
+        skipChar();
+        return true;
+    }
+
+    private boolean charLiteral(TokenBuffer out) {
+        int start = offset;
+        int tokenLine = line;
+        int position = start - lineStart + 1;
+        char ch = advance();
+        if (ch == '\'') {
+            advance();
+            out.add(TokenType.OTHER, false, start, offset - start, tokenLine, position, 0);
+            return true;
+        }
+        if (ch == '\\') {
+            escape('\'', tokenLine, position);
+        }
+        boolean closed = advance() == '\'';
+        advance();
+        out.add(closed ? TokenType.CHAR_LITERAL : TokenType.OTHER, closed, start, offset - start, tokenLine, position, 0);
+        return true;
+    }
+
+    private boolean stringLiteral(TokenBuffer out) {
+        int start = offset;
+        int tokenLine = line;
+        int position = start - lineStart + 1;
+        char ch;
+        while ((ch = advance()) != Source.EOF && ch != '"') {
+            if (ch == '\\') {
+                escape('\\', tokenLine, position);
+            }
+        }
+        if (ch == Source.EOF) {
+            lexicalError(new LexicalException("String quote not closed!", tokenLine, position));
+            return false;
+        }
+        advance();
+        out.add(TokenType.STRING_LITERAL, true, start, offset - start, tokenLine, position, 0);
+        return true;
+    }
+
+    /** Checks the char after a backslash, reporting lastChar like LexerImpl does. */
+    private void escape(char lastChar, int tokenLine, int position) {
+        char ch = advance();
+        if (TokenBuffer.escapedChar(ch) == 0) {
+            lexicalError(new LexicalException("Incorrect char escape: " + lastChar, tokenLine, position));
+        }
+    }
+
+    private void lexicalError(LexicalException e) {
+        if (errors == null) {
+            throw e;
+        }
+        errors.add(e);
+    }
+
+    /**
+     * Source.next() semantics over chars of one to four bytes: moves one char, reports a line
+     * terminator as a blank and EOF past the end. A non ASCII char is reported as its lead byte,
+     * which only has to differ from the chars the literals look for.
+     */
+    private char advance() {
+        if (offset < length) {
+            skipChar();
+        }
+        if (offset >= length) {
+            return Source.EOF;
+        }
+        if (lowHalf) {
+            return (char) 0x80;
+        }
+        int b = bytes.get(offset);
+        return b == '\n' || b == '\r' ? ' ' : (char) (b & 0xFF);
+    }
+
+    /**
+     * Moves past the char at offset and keeps lineStart counting chars. A four byte sequence is a
+     * surrogate pair of two chars to the char lexers, which may end a token between the two, so
+     * it takes two moves: the first only into its low half.
+     */
+    private void skipChar() {
+        if (lowHalf) {
+            lowHalf = false;
+            offset += 4;
+            lineStart += 3;
+            return;
+        }
+        int b = bytes.get(offset);
+        if (b == '\n' || b == '\r') {
+            newLine();
+            return;
+        }
+        int width = width(offset);
+        if (width == 4) {
+            lowHalf = true;
+            lineStart--;
+            return;
+        }
+        lineStart += width - 1;
+        offset += width;
+    }
+
+    /** Bytes of the UTF-8 sequence that starts at i, 1 for ASCII and malformed bytes. */
+    private int width(int i) {
+        int b = bytes.get(i) & 0xFF;
+        int width = b >= 0xF0 && b < 0xF8 ? 4 : b >= 0xE0 && b < 0xF0 ? 3 : b >= 0xC0 && b < 0xE0 ? 2 : 1;
+        return Math.min(width, length - i);
+    }
+
+    private static boolean isLetter(int b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z';
+    }
+
+    private static boolean isDigit(int b) {
+        return b >= '0' && b <= '9';
+    }
+}
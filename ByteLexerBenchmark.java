@@ -0,0 +1,63 @@
+package benchmark;
+
+import lexer.ByteBufferLexer;
+import lexer.PackedLexer;
+import lexer.TokenBuffer;
+import source.CharArraySource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compares PackedLexer over a decoded char[] with ByteBufferLexer over the mapped file and over the
+ * bytes read onto the heap, after checking that both produce the same tokens. Decoding writes a
+ * char[] twice the size of an ASCII file that the lexer then reads again, the mapped path reads
+ * the file once.
+ */
+public class ByteLexerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String sample = args.length > 0 ? args[0] : "resources/Fib.txt";
+        int targetBytes = args.length > 1 ? Integer.parseInt(args[1]) : 16 << 20;
+        Path input = LexerThroughputBenchmark.replicate(Paths.get(sample), targetBytes);
+        try {
+            String path = input.toString();
+            long bytes = Files.size(input);
+            TokenBuffer expected = new PackedLexer(CharArraySource.fromFile(path)).tokenize();
+            TokenBuffer actual = ByteBufferLexer.fromFile(path).tokenize();
+            int mismatch = firstMismatch(expected, actual);
+            if (mismatch >= 0) {
+                System.out.println("MISMATCH at token " + mismatch);
+                System.exit(1);
+            }
+            System.out.printf("%d tokens, char[] of %.1f MB for %.1f MB of input%n",
+                    expected.size(), 2.0 * bytes / (1 << 20), (double) bytes / (1 << 20));
+
+            LexerThroughputBenchmark.report("decode+Packed", bytes, LexerThroughputBenchmark.measure(
+                    () -> new PackedLexer(CharArraySource.fromFile(path)).tokenize().size()));
+            LexerThroughputBenchmark.report("mapped bytes", bytes, LexerThroughputBenchmark.measure(
+                    () -> ByteBufferLexer.fromFile(path).tokenize().size()));
+            LexerThroughputBenchmark.report("heap bytes", bytes, LexerThroughputBenchmark.measure(
+                    () -> new ByteBufferLexer(ByteBuffer.wrap(Files.readAllBytes(input))).tokenize().size()));
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    /** Index of the first token that differs in type, text, line or position, -1 if none. */
+    private static int firstMismatch(TokenBuffer expected, TokenBuffer actual) {
+        for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+            if (i >= expected.size() || i >= actual.size()
+                    || expected.type(i) != actual.type(i)
+                    || expected.line(i) != actual.line(i)
+                    || expected.position(i) != actual.position(i)
+                    || expected.hasText(i) && !expected.getText(i).equals(actual.getText(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
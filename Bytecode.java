@@ -0,0 +1,191 @@
+package interpreter;
+
+/**
+ * Compiled program for the {@link VirtualMachine}: one int[] of code per function, opcodes followed
+ * by their inline operands. The machine has two operand stacks, one of int values for int, char and
+ * boolean and one of int[] references for arrays, and every frame keeps its locals at the bottom
+ * of its part of each stack, parameters first. Globals are two more slot arrays of the same kinds.
+ */
+public final class Bytecode {
+
+    // constants, loads and stores; s is a local slot, g a global slot
+    static final int ICONST = 0;        // v        -> v
+    static final int ACONST_NULL = 1;   //          -> null
+    static final int SCONST = 2;        // k        -> fresh copy of string constant k
+    static final int ILOAD = 3;         // s
+    static final int ISTORE = 4;        // s
+    static final int ALOAD = 5;         // s
+    static final int ASTORE = 6;        // s
+    static final int GILOAD = 7;        // g
+    static final int GISTORE = 8;       // g
+    static final int GALOAD = 9;        // g
+    static final int GASTORE = 10;      // g
+    // arrays, the reference is on the reference stack and the index on the int stack
+    static final int IALOAD = 11;
+    static final int IASTORE = 12;
+    static final int NEWARRAY = 13;
+    static final int ARRAYLENGTH = 14;
+    // arithmetic and conversions
+    static final int IADD = 15;
+    static final int ISUB = 16;
+    static final int IMUL = 17;
+    static final int IDIV = 18;
+    static final int IMOD = 19;
+    static final int INEG = 20;
+    static final int NOT = 21;
+    static final int I2C = 22;
+    static final int I2B = 23;
+    // comparisons push 1 or 0
+    static final int IEQ = 24;
+    static final int INE = 25;
+    static final int IGT = 26;
+    static final int IGE = 27;
+    static final int ILT = 28;
+    static final int ILE = 29;
+    static final int AEQ = 30;
+    static final int ANE = 31;
+    // control flow, t is an absolute code index and f a function index
+    static final int JUMP = 32;         // t
+    static final int IFFALSE = 33;      // t
+    static final int IFTRUE = 34;       // t
+    static final int CALL = 35;         // f
+    static final int IRETURN = 36;
+    static final int ARETURN = 37;
+    static final int RETURN = 38;
+    static final int POP = 39;
+    static final int APOP = 40;
+    // print and read statements, k is a ValueType ordinal
+    static final int PRINT = 41;        // k
+    static final int PRINTLN = 42;
+    static final int READ = 43;         // k
+
+    private static final String[] NAMES = {
+        "iconst", "aconst_null", "sconst", "iload", "istore", "aload", "astore", "giload", "gistore",
+        "gaload", "gastore", "iaload", "iastore", "newarray", "arraylength", "iadd", "isub", "imul",
+        "idiv", "imod", "ineg", "not", "i2c", "i2b", "ieq", "ine", "igt", "ige", "ilt", "ile", "aeq",
+        "ane", "jump", "iffalse", "iftrue", "call", "ireturn", "areturn", "return", "pop", "apop",
+        "print", "println", "read"
+    };
+
+    /** Number of inline operands of an opcode. */
+    static int operands(int opcode) {
+        switch (opcode) {
+            case ICONST:
+            case SCONST:
+            case ILOAD:
+            case ISTORE:
+            case ALOAD:
+            case ASTORE:
+            case GILOAD:
+            case GISTORE:
+            case GALOAD:
+            case GASTORE:
+            case JUMP:
+            case IFFALSE:
+            case IFTRUE:
+            case CALL:
+            case PRINT:
+            case READ:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    public static final class Function {
+        final String name;
+        final ValueType returnType;
+        /** Parameter types in declaration order, ints and arrays interleaved as in the source. */
+        final ValueType[] parameters;
+        final int[] code;
+        /** Line and position of the node each opcode was compiled from, for error messages. */
+        final int[] lines;
+        final int[] positions;
+        final int intParameters;
+        final int refParameters;
+        final int intLocals;
+        final int refLocals;
+        final int maxIntStack;
+        final int maxRefStack;
+
+        Function(String name, ValueType returnType, ValueType[] parameters, int[] code, int[] lines, int[] positions,
+                 int intParameters, int refParameters, int intLocals, int refLocals, int maxIntStack, int maxRefStack) {
+            this.name = name;
+            this.returnType = returnType;
+            this.parameters = parameters;
+            this.code = code;
+            this.lines = lines;
+            this.positions = positions;
+            this.intParameters = intParameters;
+            this.refParameters = refParameters;
+            this.intLocals = intLocals;
+            this.refLocals = refLocals;
+            this.maxIntStack = maxIntStack;
+            this.maxRefStack = maxRefStack;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int codeLength() {
+            return code.length;
+        }
+    }
+
+    final Function[] functions;
+    /** Index of the function that initializes the globals and calls the main function. */
+    final int entry;
+    final int intGlobals;
+    final int refGlobals;
+    final int[][] strings;
+
+    Bytecode(Function[] functions, int entry, int intGlobals, int refGlobals, int[][] strings) {
+        this.functions = functions;
+        this.entry = entry;
+        this.intGlobals = intGlobals;
+        this.refGlobals = refGlobals;
+        this.strings = strings;
+    }
+
+    public int functionCount() {
+        return functions.length;
+    }
+
+    public Function function(int index) {
+        return functions[index];
+    }
+
+    /** One line per instruction, grouped by function. */
+    public String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        for (int f = 0; f < functions.length; f++) {
+            Function function = functions[f];
+            sb.append(f).append(": ").append(function.name).append(" -> ").append(function.returnType)
+                    .append(String.format(" (int %d/%d, ref %d/%d, stack %d/%d)%n", function.intParameters,
+                            function.intLocals, function.refParameters, function.refLocals,
+                            function.maxIntStack, function.maxRefStack));
+            int[] code = function.code;
+            for (int pc = 0; pc < code.length; pc += 1 + operands(code[pc])) {
+                sb.append(String.format("  %5d  %-12s", pc, NAMES[code[pc]]));
+                if (operands(code[pc]) > 0) {
+                    int operand = code[pc + 1];
+                    switch (code[pc]) {
+                        case CALL:
+                            sb.append(functions[operand].name);
+                            break;
+                        case PRINT:
+                        case READ:
+                            sb.append(ValueType.of(operand));
+                            break;
+                        default:
+                            sb.append(operand);
+                            break;
+                    }
+                }
+                sb.append(System.lineSeparator());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,573 @@
+package interpreter;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers a FlatAst to {@link Bytecode} in one pass per function. Names are resolved and types
+ * checked here, so the VirtualMachine only checks what depends on values: division by zero, array
+ * bounds and uninitialized arrays. Scalars stored into char or boolean slots are converted the way
+ * AstInterpreter converts them, && and || short-circuit like it.
+ */
+public final class BytecodeCompiler {
+
+    private final FlatAst ast;
+    private final Declarations declarations;
+    private final Map<String, Integer> intGlobals = new HashMap<>();
+    private final Map<String, Integer> refGlobals = new HashMap<>();
+    private final List<int[]> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+
+    private Declarations.Function function;
+    private final Map<String, Integer> intSlots = new HashMap<>();
+    private final Map<String, Integer> refSlots = new HashMap<>();
+    private int[] code = new int[256];
+    private int[] lines = new int[256];
+    private int[] positions = new int[256];
+    private int size;
+    private int line;
+    private int position;
+    private int intDepth;
+    private int refDepth;
+    private int maxIntDepth;
+    private int maxRefDepth;
+
+    private BytecodeCompiler(FlatAst ast) {
+        this.ast = ast;
+        this.declarations = Declarations.of(ast);
+        for (Map.Entry<String, ValueType> global : declarations.globals.entrySet()) {
+            Map<String, Integer> slots = global.getValue().isArray() ? refGlobals : intGlobals;
+            slots.put(global.getKey(), slots.size());
+        }
+    }
+
+    public static Bytecode compile(FlatAst ast) {
+        return new BytecodeCompiler(ast).compile();
+    }
+
+    private Bytecode compile() {
+        List<Bytecode.Function> functions = new ArrayList<>();
+        for (Declarations.Function declared : declarations.functions.values()) {
+            functions.add(function(declared));
+        }
+        functions.add(entry());
+        return new Bytecode(functions.toArray(new Bytecode.Function[0]), functions.size() - 1,
+                intGlobals.size(), refGlobals.size(), strings.toArray(new int[0][]));
+    }
+
+    private Bytecode.Function function(Declarations.Function declared) {
+        start(declared);
+        int intParameters = 0;
+        int refParameters = 0;
+        for (Map.Entry<String, ValueType> local : declared.locals.entrySet()) {
+            boolean parameter = intSlots.size() + refSlots.size() < declared.parameters.size();
+            if (local.getValue().isArray()) {
+                refSlots.put(local.getKey(), refSlots.size());
+                refParameters += parameter ? 1 : 0;
+            } else {
+                intSlots.put(local.getKey(), intSlots.size());
+                intParameters += parameter ? 1 : 0;
+            }
+        }
+        mark(declared.node);
+        statement(declared.body);
+        // falling off the end returns the default value
+        if (declared.returnType == ValueType.VOID) {
+            emit(Bytecode.RETURN);
+        } else if (declared.returnType.isArray()) {
+            emit(Bytecode.ACONST_NULL);
+            refDepth++;
+            track();
+            emit(Bytecode.ARETURN);
+        } else {
+            push(Bytecode.ICONST, 0);
+            emit(Bytecode.IRETURN);
+        }
+        ValueType[] parameters = new ValueType[declared.parameters.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = declared.locals.get(declared.parameters.get(i));
+        }
+        return finish(declared.name, declared.returnType, parameters, intParameters, refParameters);
+    }
+
+    /** The function the machine starts with: global initializers in order, then main. */
+    private Bytecode.Function entry() {
+        start(null);
+        for (int definition : declarations.globalDefinitions) {
+            statement(definition);
+        }
+        mark(declarations.main.node);
+        emit(Bytecode.CALL, declarations.main.index);
+        emit(Bytecode.RETURN);
+        return finish("<program>", ValueType.VOID, new ValueType[0], 0, 0);
+    }
+
+    private void start(Declarations.Function declared) {
+        function = declared;
+        intSlots.clear();
+        refSlots.clear();
+        size = 0;
+        intDepth = refDepth = maxIntDepth = maxRefDepth = 0;
+    }
+
+    private Bytecode.Function finish(String name, ValueType returnType, ValueType[] parameters,
+                                     int intParameters, int refParameters) {
+        return new Bytecode.Function(name, returnType, parameters, Arrays.copyOf(code, size), Arrays.copyOf(lines, size),
+                Arrays.copyOf(positions, size), intParameters, refParameters, intSlots.size(), refSlots.size(),
+                maxIntDepth, maxRefDepth);
+    }
+
+    private void statement(int node) {
+        mark(node);
+        switch (ast.kind(node)) {
+            case BLOCK:
+                for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    statement(child);
+                }
+                break;
+            case VARIABLE_DEFINITION:
+                statement(ast.nextSibling(ast.firstChild(node)));
+                break;
+            case ASSIGNMENT: {
+                int variable = ast.firstChild(node);
+                int value = ast.nextSibling(variable);
+                if (ast.firstChild(variable) == FlatAst.NONE) {
+                    ValueType type = typeOf(variable);
+                    convert(expression(value), type, value);
+                    store(variable, type);
+                } else {
+                    ValueType element = arrayElement(variable);
+                    convert(scalar(expression(value), value), element, value);
+                    mark(variable);
+                    emit(Bytecode.IASTORE);
+                    intDepth -= 2;
+                    refDepth--;
+                }
+                break;
+            }
+            case IF_STATEMENT: {
+                int condition = ast.firstChild(node);
+                int then = ast.nextSibling(condition);
+                int otherwise = ast.nextSibling(then);
+                scalar(expression(condition), condition);
+                int toElse = jump(Bytecode.IFFALSE);
+                statement(then);
+                if (otherwise == FlatAst.NONE) {
+                    patch(toElse);
+                } else {
+                    int toEnd = jump(Bytecode.JUMP);
+                    patch(toElse);
+                    statement(otherwise);
+                    patch(toEnd);
+                }
+                break;
+            }
+            case WHILE_STATEMENT: {
+                int condition = ast.firstChild(node);
+                int loop = size;
+                scalar(expression(condition), condition);
+                int toEnd = jump(Bytecode.IFFALSE);
+                statement(ast.nextSibling(condition));
+                emit(Bytecode.JUMP, loop);
+                patch(toEnd);
+                break;
+            }
+            case RETURN_STATEMENT:
+                returnStatement(node);
+                break;
+            case PRINT_STATEMENT:
+                for (int argument = ast.firstChild(ast.firstChild(node)); argument != FlatAst.NONE; argument = ast.nextSibling(argument)) {
+                    ValueType type = expression(argument);
+                    if (type == ValueType.VOID) {
+                        throw ProgramException.at(ast, argument, "Void function used as a value");
+                    }
+                    emit(Bytecode.PRINT, type.ordinal());
+                    if (type.isArray()) {
+                        refDepth--;
+                    } else {
+                        intDepth--;
+                    }
+                }
+                emit(Bytecode.PRINTLN);
+                break;
+            case READ_STATEMENT:
+                for (int variable = ast.firstChild(node); variable != FlatAst.NONE; variable = ast.nextSibling(variable)) {
+                    if (ast.firstChild(variable) == FlatAst.NONE) {
+                        ValueType type = typeOf(variable);
+                        if (type.isArray()) {
+                            throw ProgramException.at(ast, variable, "Cannot read into array " + ast.text(variable));
+                        }
+                        mark(node);
+                        emit(Bytecode.READ, type.ordinal());
+                        intDepth++;
+                        track();
+                        store(variable, type);
+                    } else {
+                        ValueType element = arrayElement(variable);
+                        mark(node);
+                        emit(Bytecode.READ, element.ordinal());
+                        intDepth++;
+                        track();
+                        mark(variable);
+                        emit(Bytecode.IASTORE);
+                        intDepth--;
+                        intDepth--;
+                        refDepth--;
+                    }
+                }
+                break;
+            case FUNCTION_CALL:
+                pop(call(node));
+                break;
+            default:
+                throw ProgramException.at(ast, node, "Unexpected " + ast.kind(node) + " statement");
+        }
+    }
+
+    private void returnStatement(int node) {
+        int value = ast.firstChild(node);
+        if (function.returnType == ValueType.VOID) {
+            if (value != FlatAst.NONE) {
+                throw ProgramException.at(ast, node, "Function " + function.name + " returns void");
+            }
+            emit(Bytecode.RETURN);
+            return;
+        }
+        if (value == FlatAst.NONE) {
+            throw ProgramException.at(ast, node, "Missing return value in " + function.name);
+        }
+        convert(expression(value), function.returnType, value);
+        mark(node);
+        if (function.returnType.isArray()) {
+            emit(Bytecode.ARETURN);
+            refDepth--;
+        } else {
+            emit(Bytecode.IRETURN);
+            intDepth--;
+        }
+    }
+
+    /** Compiles an expression or other assignable and returns its static type. */
+    private ValueType expression(int node) {
+        ValueType type = compileExpression(node);
+        track();
+        return type;
+    }
+
+    private ValueType compileExpression(int node) {
+        mark(node);
+        NodeKind kind = ast.kind(node);
+        int first = ast.firstChild(node);
+        switch (kind) {
+            case INTEGER:
+                push(Bytecode.ICONST, Integer.parseInt(ast.text(node)));
+                return ValueType.INT;
+            case BOOLEAN:
+                push(Bytecode.ICONST, ast.tokens().type(ast.token(node)) == TokenType.TRUE ? 1 : 0);
+                return ValueType.BOOLEAN;
+            case CHARACTER_LITERAL:
+                push(Bytecode.ICONST, ast.text(node).charAt(0));
+                return ValueType.CHAR;
+            case STRING_LITERAL:
+                emit(Bytecode.SCONST, string(ast.text(node)));
+                refDepth++;
+                return ValueType.CHAR_ARRAY;
+            case ARRAY_INIT: {
+                scalar(expression(first), first);
+                mark(node);
+                emit(Bytecode.NEWARRAY);
+                intDepth--;
+                refDepth++;
+                return ValueType.of(ast.tokens().type(ast.token(node))).array();
+            }
+            case VARIABLE:
+                if (first == FlatAst.NONE) {
+                    return load(node);
+                } else {
+                    ValueType element = arrayElement(node);
+                    mark(node);
+                    emit(Bytecode.IALOAD);
+                    refDepth--;
+                    return element;
+                }
+            case ARRAY_LENGTH: {
+                if (ast.firstChild(first) != FlatAst.NONE || !load(first).isArray()) {
+                    throw ProgramException.at(ast, node, "length() of something that is not an array");
+                }
+                mark(first);
+                emit(Bytecode.ARRAYLENGTH);
+                refDepth--;
+                intDepth++;
+                return ValueType.INT;
+            }
+            case FUNCTION_CALL:
+                return call(node);
+            case NOT:
+                scalar(expression(first), first);
+                emit(Bytecode.NOT);
+                return ValueType.BOOLEAN;
+            case MINUS:
+                scalar(expression(first), first);
+                emit(Bytecode.INEG);
+                return ValueType.INT;
+            case AND:
+            case OR: {
+                // a && b: a; iffalse F; b; iffalse F; 1; jump E; F: 0; E:
+                int branch = kind == NodeKind.AND ? Bytecode.IFFALSE : Bytecode.IFTRUE;
+                scalar(expression(first), first);
+                int shortCircuit = jump(branch);
+                int second = ast.nextSibling(first);
+                scalar(expression(second), second);
+                int shortCircuitToo = jump(branch);
+                push(Bytecode.ICONST, kind == NodeKind.AND ? 1 : 0);
+                int toEnd = jump(Bytecode.JUMP);
+                patch(shortCircuit);
+                patch(shortCircuitToo);
+                intDepth--;
+                push(Bytecode.ICONST, kind == NodeKind.AND ? 0 : 1);
+                patch(toEnd);
+                return ValueType.BOOLEAN;
+            }
+            default:
+                return binary(kind, node, first, ast.nextSibling(first));
+        }
+    }
+
+    private ValueType binary(NodeKind kind, int node, int left, int right) {
+        ValueType leftType = expression(left);
+        ValueType rightType = expression(right);
+        mark(node);
+        if (leftType.isArray() || rightType.isArray()) {
+            if (leftType.isArray() && rightType.isArray() && (kind == NodeKind.EQUALS || kind == NodeKind.NOT_EQUAL)) {
+                emit(kind == NodeKind.EQUALS ? Bytecode.AEQ : Bytecode.ANE);
+                refDepth -= 2;
+                intDepth++;
+                return ValueType.BOOLEAN;
+            }
+            throw ProgramException.at(ast, node, kind + " applied to an array");
+        }
+        scalar(leftType, left);
+        scalar(rightType, right);
+        intDepth--;
+        switch (kind) {
+            case ADDITION:          emit(Bytecode.IADD); return ValueType.INT;
+            case SUBTRACTION:       emit(Bytecode.ISUB); return ValueType.INT;
+            case MULTIPLICATION:    emit(Bytecode.IMUL); return ValueType.INT;
+            case DIVISION:          emit(Bytecode.IDIV); return ValueType.INT;
+            case MOD:               emit(Bytecode.IMOD); return ValueType.INT;
+            case EQUALS:            emit(Bytecode.IEQ); return ValueType.BOOLEAN;
+            case NOT_EQUAL:         emit(Bytecode.INE); return ValueType.BOOLEAN;
+            case GREATER:           emit(Bytecode.IGT); return ValueType.BOOLEAN;
+            case GREATER_OR_EQUAL:  emit(Bytecode.IGE); return ValueType.BOOLEAN;
+            case LESS:              emit(Bytecode.ILT); return ValueType.BOOLEAN;
+            case LESS_OR_EQUAL:     emit(Bytecode.ILE); return ValueType.BOOLEAN;
+            default: throw ProgramException.at(ast, node, "Unexpected " + kind + " expression");
+        }
+    }
+
+    private ValueType call(int node) {
+        Declarations.Function callee = declarations.functions.get(ast.text(node));
+        if (callee == null) {
+            throw ProgramException.at(ast, node, "Undefined function " + ast.text(node));
+        }
+        int arguments = ast.firstChild(node);
+        int count = arguments == FlatAst.NONE ? 0 : ast.childCount(arguments);
+        if (count != callee.parameters.size()) {
+            throw ProgramException.at(ast, node, "Function " + callee.name + " takes "
+                    + callee.parameters.size() + " arguments, got " + count);
+        }
+        int argument = arguments == FlatAst.NONE ? FlatAst.NONE : ast.firstChild(arguments);
+        int intArguments = 0;
+        int refArguments = 0;
+        for (String parameter : callee.parameters) {
+            ValueType type = callee.locals.get(parameter);
+            convert(expression(argument), type, argument);
+            if (type.isArray()) {
+                refArguments++;
+            } else {
+                intArguments++;
+            }
+            argument = ast.nextSibling(argument);
+        }
+        mark(node);
+        emit(Bytecode.CALL, callee.index);
+        // the arguments stay on the stack until the CALL takes them as parameters
+        intDepth -= intArguments;
+        refDepth -= refArguments;
+        if (callee.returnType.isArray()) {
+            refDepth++;
+        } else if (callee.returnType != ValueType.VOID) {
+            intDepth++;
+        }
+        track();
+        return callee.returnType;
+    }
+
+    /** Leaves the value of type from on the stack as a value of type to, or fails at node. */
+    private void convert(ValueType from, ValueType to, int node) {
+        if (to.isArray()) {
+            if (from != to) {
+                throw ProgramException.at(ast, node, "Expected " + to + ", got " + from);
+            }
+            return;
+        }
+        scalar(from, node);
+        if (to == ValueType.CHAR && from != ValueType.CHAR) {
+            emit(Bytecode.I2C);
+        } else if (to == ValueType.BOOLEAN && from != ValueType.BOOLEAN) {
+            emit(Bytecode.I2B);
+        }
+    }
+
+    private ValueType scalar(ValueType type, int node) {
+        if (type == ValueType.VOID) {
+            throw ProgramException.at(ast, node, "Void function used as a value");
+        }
+        if (!type.isScalar()) {
+            throw ProgramException.at(ast, node, "Expected a scalar, got " + type);
+        }
+        return type;
+    }
+
+    private ValueType typeOf(int variable) {
+        ValueType type = Declarations.lookup(function, declarations.globals, ast.text(variable));
+        if (type == null) {
+            throw ProgramException.at(ast, variable, "Undefined variable " + ast.text(variable));
+        }
+        return type;
+    }
+
+    private boolean isLocal(String name) {
+        return function != null && function.locals.containsKey(name);
+    }
+
+    private ValueType load(int variable) {
+        ValueType type = typeOf(variable);
+        String name = ast.text(variable);
+        mark(variable);
+        if (type.isArray()) {
+            emit(isLocal(name) ? Bytecode.ALOAD : Bytecode.GALOAD, slot(name, true));
+            refDepth++;
+            track();
+        } else {
+            push(isLocal(name) ? Bytecode.ILOAD : Bytecode.GILOAD, slot(name, false));
+        }
+        return type;
+    }
+
+    private void store(int variable, ValueType type) {
+        String name = ast.text(variable);
+        mark(variable);
+        if (type.isArray()) {
+            emit(isLocal(name) ? Bytecode.ASTORE : Bytecode.GASTORE, slot(name, true));
+            refDepth--;
+        } else {
+            emit(isLocal(name) ? Bytecode.ISTORE : Bytecode.GISTORE, slot(name, false));
+            intDepth--;
+        }
+    }
+
+    private int slot(String name, boolean array) {
+        if (isLocal(name)) {
+            return (array ? refSlots : intSlots).get(name);
+        }
+        return (array ? refGlobals : intGlobals).get(name);
+    }
+
+    /** Loads the array of an indexed variable and compiles its index, returns the element type. */
+    private ValueType arrayElement(int variable) {
+        ValueType type = typeOf(variable);
+        if (!type.isArray()) {
+            throw ProgramException.at(ast, variable, ast.text(variable) + " is not an array");
+        }
+        load(variable);
+        int index = ast.firstChild(variable);
+        scalar(expression(index), index);
+        return type.element();
+    }
+
+    private void pop(ValueType type) {
+        if (type.isArray()) {
+            emit(Bytecode.APOP);
+            refDepth--;
+        } else if (type != ValueType.VOID) {
+            emit(Bytecode.POP);
+            intDepth--;
+        }
+    }
+
+    private int string(String text) {
+        Integer index = stringIndexes.get(text);
+        if (index == null) {
+            int[] chars = new int[text.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = text.charAt(i);
+            }
+            index = strings.size();
+            strings.add(chars);
+            stringIndexes.put(text, index);
+        }
+        return index;
+    }
+
+    private void mark(int node) {
+        int token = ast.token(node);
+        if (token != FlatAst.NONE) {
+            line = ast.tokens().line(token);
+            position = ast.tokens().position(token);
+        }
+    }
+
+    private void push(int opcode, int operand) {
+        emit(opcode, operand);
+        intDepth++;
+        track();
+    }
+
+    /** Records the current stack depths, called after every push. */
+    private void track() {
+        maxIntDepth = Math.max(maxIntDepth, intDepth);
+        maxRefDepth = Math.max(maxRefDepth, refDepth);
+    }
+
+    private int jump(int opcode) {
+        emit(opcode, -1);
+        if (opcode != Bytecode.JUMP) {
+            intDepth--;
+        }
+        return size - 1;
+    }
+
+    private void patch(int operand) {
+        code[operand] = size;
+    }
+
+    private void emit(int opcode) {
+        ensure(1);
+        lines[size] = line;
+        positions[size] = position;
+        code[size++] = opcode;
+    }
+
+    private void emit(int opcode, int operand) {
+        emit(opcode);
+        ensure(1);
+        code[size++] = operand;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > code.length) {
+            int capacity = Math.max(size + extra, code.length * 2);
+            code = Arrays.copyOf(code, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+    }
+}
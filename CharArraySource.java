@@ -0,0 +1,125 @@
+package source;
+
+import bg.tu_varna.kst_sit.ci_ep.source.Source;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source over a single decoded char[]. Lines are terminated by '\n' inside the buffer and are
+ * reported as a blank by getCurrentChar(), so the lexers see the same stream of characters as with
+ * a line based source. Lexers may read {@link #buffer()} directly and move with {@link #skip(int)}
+ * as long as they stay on the current line.
+ */
+public class CharArraySource implements Source {
+
+    private final char[] buffer;
+    private final int length;
+    private int offset;
+    private int line = 1;
+    private int lineStart;
+
+    /** Takes ownership of chars, line terminators are normalized to '\n' in place. */
+    public CharArraySource(char[] chars, int length) {
+        length = normalize(chars, length);
+        if (length == 0 || chars[length - 1] != '\n') {
+            char[] terminated = new char[length + 1];
+            System.arraycopy(chars, 0, terminated, 0, length);
+            terminated[length] = '\n';
+            chars = terminated;
+            length++;
+        }
+        this.buffer = chars;
+        this.length = length;
+    }
+
+    public CharArraySource(String text) {
+        this(text.toCharArray(), text.length());
+    }
+
+    public static CharArraySource fromFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder().decode(bytes);
+            return new CharArraySource(chars.array(), chars.limit());
+        }
+    }
+
+    private static int normalize(char[] chars, int length) {
+        int out = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = chars[i];
+            if (ch == '\r') {
+                if (i + 1 < length && chars[i + 1] == '\n') {
+                    continue;
+                }
+                ch = '\n';
+            }
+            chars[out++] = ch;
+        }
+        return out;
+    }
+
+    @Override
+    public char getCurrentChar() {
+        if (offset >= length) {
+            return EOF;
+        }
+        char ch = buffer[offset];
+        return ch == '\n' ? ' ' : ch;
+    }
+
+    @Override
+    public char next() {
+        if (offset < length) {
+            if (buffer[offset] == '\n') {
+                line++;
+                lineStart = offset + 1;
+            }
+            offset++;
+        }
+        return getCurrentChar();
+    }
+
+    @Override
+    public int getLineNumber() {
+        return line;
+    }
+
+    @Override
+    public int getPosition() {
+        return offset - lineStart;
+    }
+
+    public char[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    /** Moves forward by count chars, which must not cross a line terminator. */
+    public void skip(int count) {
+        offset += count;
+    }
+
+    /**
+     * Moves to offset, which a lexer scanning the buffer itself has reached on line, the line
+     * starting at lineStart.
+     */
+    public void moveTo(int offset, int line, int lineStart) {
+        this.offset = offset;
+        this.line = line;
+        this.lineStart = lineStart;
+    }
+}
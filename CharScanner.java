@@ -0,0 +1,83 @@
+package lexer;
+
+/**
+ * Bulk scanning of blank, identifier and comment runs over a char buffer. The inner loops test
+ * four chars per step against a class table and only fall back to single chars at the end of a
+ * run. Scans never cross a '\n', so callers update line and column once per run. The buffer must
+ * hold a '\n' at or before limit - 1.
+ */
+public final class CharScanner {
+
+    private static final byte BLANK = 1;
+    private static final byte IDENTIFIER = 2;
+    private static final byte[] FLAGS = new byte[128];
+
+    static {
+        FLAGS[' '] = BLANK;
+        FLAGS['\t'] = BLANK;
+        for (char ch = 'a'; ch <= 'z'; ch++) {
+            FLAGS[ch] = IDENTIFIER;
+            FLAGS[Character.toUpperCase(ch)] = IDENTIFIER;
+        }
+        for (char ch = '0'; ch <= '9'; ch++) {
+            FLAGS[ch] = IDENTIFIER;
+        }
+    }
+
+    private CharScanner() {
+    }
+
+    /** Index of the first char at or after from that is not a ' ' or '\t'. */
+    public static int skipBlanks(char[] buffer, int from, int limit) {
+        return skip(buffer, from, limit, BLANK);
+    }
+
+    /** Index of the first char at or after from that is not a letter or digit. */
+    public static int skipIdentifier(char[] buffer, int from, int limit) {
+        return skip(buffer, from, limit, IDENTIFIER);
+    }
+
+    /** Index of the next '\n' at or after from. */
+    public static int lineEnd(char[] buffer, int from, int limit) {
+        int i = from;
+        while (i + 4 <= limit) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+            if (buffer[i + 1] == '\n') {
+                return i + 1;
+            }
+            if (buffer[i + 2] == '\n') {
+                return i + 2;
+            }
+            if (buffer[i + 3] == '\n') {
+                return i + 3;
+            }
+            i += 4;
+        }
+        while (buffer[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skip(char[] buffer, int from, int limit, byte flag) {
+        int i = from;
+        while (i + 4 <= limit) {
+            char c0 = buffer[i];
+            char c1 = buffer[i + 1];
+            char c2 = buffer[i + 2];
+            char c3 = buffer[i + 3];
+            if ((c0 | c1 | c2 | c3) >= 128
+                    || (FLAGS[c0] & FLAGS[c1] & FLAGS[c2] & FLAGS[c3] & flag) == 0) {
+                break;
+            }
+            i += 4;
+        }
+        char ch;
+        while ((ch = buffer[i]) < 128 && (FLAGS[ch] & flag) != 0) {
+            i++;
+        }
+        return i;
+    }
+}
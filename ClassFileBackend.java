@@ -0,0 +1,595 @@
+package interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates {@link Bytecode} to JVM bytecode, one static method per function on a hidden class,
+ * so hot programs are compiled by the JVM's own JIT instead of going through the dispatch loop of
+ * the VirtualMachine. Scalars are JVM int locals and operands, arrays are int[], globals are
+ * static fields and print and read go through the ProgramIO of the run.
+ *
+ * Errors keep the messages and positions of the VirtualMachine: every instruction that can fail
+ * is covered by its own exception handler, which turns the JVM exception into a ProgramException
+ * at the line and position the instruction was compiled from. The class file is written in the
+ * version 49 format, which the JVM verifies without stack map frames.
+ */
+public final class ClassFileBackend {
+
+    private static final String CLASS_NAME = "interpreter/CompiledProgram";
+    private static final String BACKEND = "interpreter/ClassFileBackend";
+    private static final String IO = "interpreter/ProgramIO";
+    private static final String IO_DESCRIPTOR = "L" + IO + ";";
+    private static final String ENTRY = "program";
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // JVM opcodes used by the translation
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ALOAD = 0x19;
+    private static final int IALOAD = 0x2e;
+    private static final int ISTORE = 0x36;
+    private static final int ASTORE = 0x3a;
+    private static final int IASTORE = 0x4f;
+    private static final int POP = 0x57;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IDIV = 0x6c;
+    private static final int IREM = 0x70;
+    private static final int INEG = 0x74;
+    private static final int I2C = 0x92;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int IF_ICMPGT = 0xa3;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int IF_ACMPEQ = 0xa5;
+    private static final int IF_ACMPNE = 0xa6;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int PUTSTATIC = 0xb3;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEWARRAY = 0xbc;
+    private static final int ARRAYLENGTH = 0xbe;
+    private static final int ATHROW = 0xbf;
+    private static final int WIDE = 0xc4;
+    private static final int T_INT = 10;
+
+    private final MethodHandle entry;
+    private final MethodHandle io;
+    private final int classFileSize;
+
+    private ClassFileBackend(MethodHandle entry, MethodHandle io, int classFileSize) {
+        this.entry = entry;
+        this.io = io;
+        this.classFileSize = classFileSize;
+    }
+
+    /** Translates program and defines it as a hidden class in this package. */
+    public static ClassFileBackend compile(Bytecode program) {
+        byte[] classFile = toClassFile(program);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            Class<?> compiled = lookup.lookupClass();
+            return new ClassFileBackend(lookup.findStatic(compiled, ENTRY, MethodType.methodType(void.class)),
+                    lookup.findStaticSetter(compiled, "io", ProgramIO.class), classFile.length);
+        } catch (IllegalAccessException | NoSuchMethodException | NoSuchFieldException e) {
+            throw new IllegalStateException("Cannot define compiled program", e);
+        }
+    }
+
+    /**
+     * Runs the program once. Globals and the ProgramIO live in static fields of the compiled class,
+     * so runs of the same compiled program are serialized.
+     */
+    public synchronized void run(ProgramIO programIO) {
+        try {
+            io.invokeExact(programIO);
+            entry.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            try {
+                io.invokeExact((ProgramIO) null);
+            } catch (Throwable ignored) {
+                // a static setter does not throw
+            }
+        }
+    }
+
+    public int classFileSize() {
+        return classFileSize;
+    }
+
+    static byte[] toClassFile(Bytecode program) {
+        try {
+            return new ClassWriter(program).write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // called from the compiled code
+
+    static int[] chars(String text) {
+        int[] chars = new int[text.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = text.charAt(i);
+        }
+        return chars;
+    }
+
+    static void print(int value, ProgramIO io, int type) {
+        io.print(ProgramIO.format(value, ValueType.of(type)));
+    }
+
+    static void print(int[] array, ProgramIO io, int type) {
+        io.print(ProgramIO.format(array, ValueType.of(type)));
+    }
+
+    static void println(ProgramIO io) {
+        io.println();
+    }
+
+    static int read(ProgramIO io, int type, int line, int position) {
+        return io.read(ValueType.of(type), line, position);
+    }
+
+    /** The ProgramException the VirtualMachine throws for the same failure. */
+    static ProgramException error(Throwable e, int line, int position) {
+        if (e instanceof ArithmeticException) {
+            return new ProgramException("Division by zero", line, position);
+        }
+        if (e instanceof ArrayIndexOutOfBoundsException) {
+            return new ProgramException(e.getMessage(), line, position);
+        }
+        if (e instanceof NegativeArraySizeException) {
+            return new ProgramException("Negative array length " + e.getMessage(), line, position);
+        }
+        if (e instanceof NullPointerException) {
+            return new ProgramException("Array is not initialized", line, position);
+        }
+        if (e instanceof StackOverflowError) {
+            return new ProgramException("Stack overflow", line, position);
+        }
+        return new ProgramException(String.valueOf(e), line, position);
+    }
+
+    /** Writes the class file: constant pool, the io and global fields, then one method per function. */
+    private static final class ClassWriter {
+
+        private final Bytecode program;
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> constants = new HashMap<>();
+        private int constantCount = 1;
+
+        // the method being written
+        private byte[] code = new byte[1024];
+        private int size;
+        private int[] offsets;
+        private final List<int[]> branches = new ArrayList<>();
+        private final List<int[]> handlers = new ArrayList<>();
+
+        ClassWriter(Bytecode program) {
+            this.program = program;
+        }
+
+        byte[] write() throws IOException {
+            ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+            DataOutputStream fields = new DataOutputStream(fieldBytes);
+            fields.writeShort(1 + program.intGlobals + program.refGlobals);
+            field(fields, "io", IO_DESCRIPTOR);
+            for (int g = 0; g < program.intGlobals; g++) {
+                field(fields, "i" + g, "I");
+            }
+            for (int g = 0; g < program.refGlobals; g++) {
+                field(fields, "a" + g, "[I");
+            }
+
+            ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+            DataOutputStream methods = new DataOutputStream(methodBytes);
+            methods.writeShort(program.functions.length);
+            for (int f = 0; f < program.functions.length; f++) {
+                method(methods, f);
+            }
+
+            int thisClass = classConstant(CLASS_NAME);
+            int superClass = classConstant("java/lang/Object");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(constantCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            fieldBytes.writeTo(out);
+            methodBytes.writeTo(out);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        }
+
+        private void field(DataOutputStream fields, String name, String descriptor) throws IOException {
+            fields.writeShort(ACC_PRIVATE | ACC_STATIC);
+            fields.writeShort(utf8(name));
+            fields.writeShort(utf8(descriptor));
+            fields.writeShort(0);
+        }
+
+        private void method(DataOutputStream methods, int index) throws IOException {
+            Bytecode.Function function = program.functions[index];
+            boolean isEntry = index == program.entry;
+
+            // JVM parameters follow the declaration order, the other locals come after them
+            int[] intLocals = new int[function.intLocals];
+            int[] refLocals = new int[function.refLocals];
+            int locals = 0;
+            int ints = 0;
+            int refs = 0;
+            for (ValueType parameter : function.parameters) {
+                if (parameter.isArray()) {
+                    refLocals[refs++] = locals++;
+                } else {
+                    intLocals[ints++] = locals++;
+                }
+            }
+
+            size = 0;
+            branches.clear();
+            handlers.clear();
+            // the VirtualMachine starts locals out zero, the JVM verifier wants them assigned
+            for (; ints < intLocals.length; ints++) {
+                intLocals[ints] = locals++;
+                emit(ICONST_0);
+                local(ISTORE, intLocals[ints]);
+            }
+            for (; refs < refLocals.length; refs++) {
+                refLocals[refs] = locals++;
+                emit(ACONST_NULL);
+                local(ASTORE, refLocals[refs]);
+            }
+            if (isEntry) {
+                // a run starts from fresh globals, like a new VirtualMachine
+                for (int g = 0; g < program.intGlobals; g++) {
+                    emit(ICONST_0);
+                    emit(PUTSTATIC, fieldConstant("i" + g, "I"));
+                }
+                for (int g = 0; g < program.refGlobals; g++) {
+                    emit(ACONST_NULL);
+                    emit(PUTSTATIC, fieldConstant("a" + g, "[I"));
+                }
+            }
+
+            int[] vm = function.code;
+            offsets = new int[vm.length + 1];
+            for (int pc = 0; pc < vm.length; pc += 1 + Bytecode.operands(vm[pc])) {
+                offsets[pc] = size;
+                instruction(function, pc, intLocals, refLocals);
+            }
+            for (int[] branch : branches) {
+                int offset = offsets[branch[1]] - branch[0];
+                if (offset != (short) offset) {
+                    throw new IllegalStateException("Function " + function.name + " is too large for a JVM method");
+                }
+                code[branch[0] + 1] = (byte) (offset >> 8);
+                code[branch[0] + 2] = (byte) offset;
+            }
+            // handlers go after the code: exception on the stack, make it a ProgramException and throw that
+            int handlerCount = handlers.size();
+            for (int i = 0; i < handlerCount; i++) {
+                int[] handler = handlers.get(i);
+                handler[2] = size;
+                pushInt(function.lines[handler[3]]);
+                pushInt(function.positions[handler[3]]);
+                emit(INVOKESTATIC, methodConstant(BACKEND, "error",
+                        "(Ljava/lang/Throwable;II)Linterpreter/ProgramException;"));
+                emit(ATHROW);
+            }
+            if (size > 0xFFFF) {
+                throw new IllegalStateException("Function " + function.name + " is too large for a JVM method");
+            }
+
+            methods.writeShort(isEntry ? ACC_STATIC : ACC_PRIVATE | ACC_STATIC);
+            methods.writeShort(utf8(isEntry ? ENTRY : function.name));
+            methods.writeShort(utf8(isEntry ? "()V" : descriptor(function)));
+            methods.writeShort(1);
+            methods.writeShort(utf8("Code"));
+            methods.writeInt(12 + size + 8 * handlerCount);
+            // the maxima already count call arguments and the slots an instruction pushes,
+            // the 4 are the io, type, line and position operands of print and read, which
+            // also cover the throwable, line and position a handler passes to error()
+            methods.writeShort(function.maxIntStack + function.maxRefStack + 4);
+            methods.writeShort(locals);
+            methods.writeInt(size);
+            methods.write(code, 0, size);
+            methods.writeShort(handlerCount);
+            for (int[] handler : handlers) {
+                methods.writeShort(handler[0]);
+                methods.writeShort(handler[1]);
+                methods.writeShort(handler[2]);
+                methods.writeShort(handler[4]);
+            }
+            methods.writeShort(0);
+        }
+
+        private void instruction(Bytecode.Function function, int pc, int[] intLocals, int[] refLocals) throws IOException {
+            int[] vm = function.code;
+            int operand = Bytecode.operands(vm[pc]) > 0 ? vm[pc + 1] : 0;
+            switch (vm[pc]) {
+                case Bytecode.ICONST:       pushInt(operand); break;
+                case Bytecode.ACONST_NULL:  emit(ACONST_NULL); break;
+                case Bytecode.SCONST:
+                    ldc(stringConstant(text(program.strings[operand])));
+                    emit(INVOKESTATIC, methodConstant(BACKEND, "chars", "(Ljava/lang/String;)[I"));
+                    break;
+                case Bytecode.ILOAD:        local(ILOAD, intLocals[operand]); break;
+                case Bytecode.ISTORE:       local(ISTORE, intLocals[operand]); break;
+                case Bytecode.ALOAD:        local(ALOAD, refLocals[operand]); break;
+                case Bytecode.ASTORE:       local(ASTORE, refLocals[operand]); break;
+                case Bytecode.GILOAD:       emit(GETSTATIC, fieldConstant("i" + operand, "I")); break;
+                case Bytecode.GISTORE:      emit(PUTSTATIC, fieldConstant("i" + operand, "I")); break;
+                case Bytecode.GALOAD:       emit(GETSTATIC, fieldConstant("a" + operand, "[I")); break;
+                case Bytecode.GASTORE:      emit(PUTSTATIC, fieldConstant("a" + operand, "[I")); break;
+                case Bytecode.IALOAD:       guarded(pc, IALOAD); break;
+                case Bytecode.IASTORE:      guarded(pc, IASTORE); break;
+                case Bytecode.NEWARRAY: {
+                    int start = size;
+                    emit(NEWARRAY);
+                    code(T_INT);
+                    handle(start, pc, "java/lang/RuntimeException");
+                    break;
+                }
+                case Bytecode.ARRAYLENGTH:  guarded(pc, ARRAYLENGTH); break;
+                case Bytecode.IADD:         emit(IADD); break;
+                case Bytecode.ISUB:         emit(ISUB); break;
+                case Bytecode.IMUL:         emit(IMUL); break;
+                case Bytecode.IDIV:         guarded(pc, IDIV); break;
+                case Bytecode.IMOD:         guarded(pc, IREM); break;
+                case Bytecode.INEG:         emit(INEG); break;
+                case Bytecode.NOT:          materialize(IFEQ); break;
+                case Bytecode.I2C:          emit(I2C); break;
+                case Bytecode.I2B:          materialize(IFNE); break;
+                case Bytecode.IEQ:          materialize(IF_ICMPEQ); break;
+                case Bytecode.INE:          materialize(IF_ICMPNE); break;
+                case Bytecode.IGT:          materialize(IF_ICMPGT); break;
+                case Bytecode.IGE:          materialize(IF_ICMPGE); break;
+                case Bytecode.ILT:          materialize(IF_ICMPLT); break;
+                case Bytecode.ILE:          materialize(IF_ICMPLE); break;
+                case Bytecode.AEQ:          materialize(IF_ACMPEQ); break;
+                case Bytecode.ANE:          materialize(IF_ACMPNE); break;
+                case Bytecode.JUMP:         branch(GOTO, operand); break;
+                case Bytecode.IFFALSE:      branch(IFEQ, operand); break;
+                case Bytecode.IFTRUE:       branch(IFNE, operand); break;
+                case Bytecode.CALL: {
+                    Bytecode.Function callee = program.functions[operand];
+                    int start = size;
+                    emit(INVOKESTATIC, methodConstant(CLASS_NAME, callee.name, descriptor(callee)));
+                    handle(start, pc, "java/lang/StackOverflowError");
+                    break;
+                }
+                case Bytecode.IRETURN:      emit(IRETURN); break;
+                case Bytecode.ARETURN:      emit(ARETURN); break;
+                case Bytecode.RETURN:       emit(RETURN); break;
+                case Bytecode.POP:
+                case Bytecode.APOP:         emit(POP); break;
+                case Bytecode.PRINT:
+                    emit(GETSTATIC, fieldConstant("io", IO_DESCRIPTOR));
+                    pushInt(operand);
+                    emit(INVOKESTATIC, methodConstant(BACKEND, "print",
+                            ValueType.of(operand).isArray() ? "([I" + IO_DESCRIPTOR + "I)V" : "(I" + IO_DESCRIPTOR + "I)V"));
+                    break;
+                case Bytecode.PRINTLN:
+                    emit(GETSTATIC, fieldConstant("io", IO_DESCRIPTOR));
+                    emit(INVOKESTATIC, methodConstant(BACKEND, "println", "(" + IO_DESCRIPTOR + ")V"));
+                    break;
+                case Bytecode.READ:
+                    emit(GETSTATIC, fieldConstant("io", IO_DESCRIPTOR));
+                    pushInt(operand);
+                    pushInt(function.lines[pc]);
+                    pushInt(function.positions[pc]);
+                    emit(INVOKESTATIC, methodConstant(BACKEND, "read", "(" + IO_DESCRIPTOR + "III)I"));
+                    break;
+                default:
+                    throw new IllegalStateException("Bad opcode " + vm[pc] + " at " + pc + " in " + function.name);
+            }
+        }
+
+        private static String descriptor(Bytecode.Function function) {
+            StringBuilder sb = new StringBuilder("(");
+            for (ValueType parameter : function.parameters) {
+                sb.append(parameter.isArray() ? "[I" : "I");
+            }
+            sb.append(')');
+            if (function.returnType == ValueType.VOID) {
+                return sb.append('V').toString();
+            }
+            return sb.append(function.returnType.isArray() ? "[I" : "I").toString();
+        }
+
+        private static String text(int[] chars) {
+            StringBuilder sb = new StringBuilder(chars.length);
+            for (int c : chars) {
+                sb.append((char) c);
+            }
+            return sb.toString();
+        }
+
+        /** One instruction that can throw, with a handler covering just it. */
+        private void guarded(int pc, int opcode) {
+            int start = size;
+            emit(opcode);
+            handle(start, pc, "java/lang/RuntimeException");
+        }
+
+        private void handle(int start, int pc, String exception) {
+            handlers.add(new int[] {start, size, -1, pc, classConstant(exception)});
+        }
+
+        /** Turns a conditional jump into a 1 or 0 on the stack: if L1; iconst_0; goto L2; L1: iconst_1; L2: */
+        private void materialize(int opcode) {
+            emit(opcode);
+            code(0);
+            code(7);
+            emit(ICONST_0);
+            emit(GOTO);
+            code(0);
+            code(4);
+            emit(ICONST_1);
+        }
+
+        private void branch(int opcode, int target) {
+            branches.add(new int[] {size, target});
+            emit(opcode);
+            code(0);
+            code(0);
+        }
+
+        private void local(int opcode, int local) {
+            if (local > 0xFF) {
+                emit(WIDE);
+                emit(opcode, local);
+            } else {
+                emit(opcode);
+                code(local);
+            }
+        }
+
+        private void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                emit(ICONST_0 + value);
+            } else if (value == (byte) value) {
+                emit(BIPUSH);
+                code(value);
+            } else if (value == (short) value) {
+                emit(SIPUSH, value);
+            } else {
+                ldc(integerConstant(value));
+            }
+        }
+
+        private void ldc(int constant) {
+            if (constant > 0xFF) {
+                emit(LDC_W, constant);
+            } else {
+                emit(LDC);
+                code(constant);
+            }
+        }
+
+        private void emit(int opcode) {
+            code(opcode);
+        }
+
+        private void emit(int opcode, int u2) {
+            code(opcode);
+            code(u2 >> 8);
+            code(u2);
+        }
+
+        private void code(int b) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, size * 2);
+            }
+            code[size++] = (byte) b;
+        }
+
+        // constant pool, each entry written once
+
+        private int utf8(String text) {
+            return constant("U" + text, 1, out -> out.writeUTF(text));
+        }
+
+        private int integerConstant(int value) {
+            return constant("I" + value, 3, out -> out.writeInt(value));
+        }
+
+        private int classConstant(String name) {
+            int utf8 = utf8(name);
+            return constant("C" + name, 7, out -> out.writeShort(utf8));
+        }
+
+        private int stringConstant(String text) {
+            int utf8 = utf8(text);
+            return constant("S" + text, 8, out -> out.writeShort(utf8));
+        }
+
+        private int fieldConstant(String name, String descriptor) {
+            return member(9, CLASS_NAME, name, descriptor);
+        }
+
+        private int methodConstant(String owner, String name, String descriptor) {
+            return member(10, owner, name, descriptor);
+        }
+
+        private int member(int tag, String owner, String name, String descriptor) {
+            int ownerClass = classConstant(owner);
+            int nameUtf8 = utf8(name);
+            int descriptorUtf8 = utf8(descriptor);
+            int nameAndType = constant("N" + name + ":" + descriptor, 12, out -> {
+                out.writeShort(nameUtf8);
+                out.writeShort(descriptorUtf8);
+            });
+            return constant(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+                out.writeShort(ownerClass);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private interface Entry {
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        private int constant(String key, int tag, Entry entry) {
+            Integer index = constants.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                pool.writeByte(tag);
+                entry.write(pool);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (constantCount == 0xFFFF) {
+                throw new IllegalStateException("Too many constants for one class file");
+            }
+            constants.put(key, constantCount);
+            return constantCount++;
+        }
+    }
+}
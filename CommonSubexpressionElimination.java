@@ -0,0 +1,300 @@
+package optimizer;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes an expression that is repeated among the statements of a block once, into a new local
+ * defined before the statement of its first use, and loads that local at every use. Only pure
+ * expressions over scalar variables and literals are reused: no calls, array accesses or divisions
+ * that could fail. A use is the same value as long as none of its variables was assigned or read
+ * into in between; a call ends every reuse, since it may assign any global.
+ *
+ * Uses are looked for in the expressions of the simple statements of a block and in the conditions
+ * of its if statements, each block on its own. An expression is only reused when that leaves fewer
+ * nodes than it adds with the definition of the new local.
+ */
+public final class CommonSubexpressionElimination extends RewritePass {
+
+    /** Names of the new locals; identifiers of the language cannot start with a $. */
+    static final String PREFIX = "$cse";
+
+    private static final class Temp {
+        final int token;
+        final int first;
+        final boolean bool;
+
+        Temp(int token, int first, boolean bool) {
+            this.token = token;
+            this.first = first;
+            this.bool = bool;
+        }
+    }
+
+    private static final class Window {
+        final int statement;
+        final Set<String> variables;
+        final List<Integer> uses = new ArrayList<>();
+
+        Window(int statement, Set<String> variables) {
+            this.statement = statement;
+            this.variables = variables;
+        }
+    }
+
+    /** Value number of every pure expression of in, equal for equal expressions, -1 for others. */
+    private int[] numbers;
+    /** Whether a numbered node is an operator over at least one variable, worth reusing. */
+    private boolean[] reusable;
+    /** Index in temps of the local that replaces each node of in, -1 for none. */
+    private int[] replacements;
+    private boolean[] covered;
+    private final List<Temp> temps = new ArrayList<>();
+    /** Indexes in temps of the locals to define before each statement. */
+    private final Map<Integer, List<Integer>> definitions = new HashMap<>();
+    private int nextName;
+
+    @Override
+    public String name() {
+        return "common subexpressions";
+    }
+
+    @Override
+    void prepare() {
+        int size = in.size();
+        numbers = new int[size];
+        reusable = new boolean[size];
+        replacements = new int[size];
+        covered = new boolean[size];
+        Arrays.fill(replacements, -1);
+        temps.clear();
+        definitions.clear();
+        nextName = 0;
+        Map<String, Integer> values = new HashMap<>();
+        for (int node = 0; node < size; node++) {
+            String key = key(node);
+            if (key == null) {
+                numbers[node] = -1;
+                continue;
+            }
+            Integer number = values.get(key);
+            if (number == null) {
+                number = values.size();
+                values.put(key, number);
+            }
+            numbers[node] = number;
+        }
+        for (int node = 0; node < size; node++) {
+            if (in.kind(node) == NodeKind.BLOCK) {
+                block(node);
+            }
+        }
+    }
+
+    /** Key of a node from its kind and the value numbers of its children, null if not pure. */
+    private String key(int node) {
+        NodeKind kind = in.kind(node);
+        int first = in.firstChild(node);
+        switch (kind) {
+            case VARIABLE:
+                String name = in.text(node);
+                if (name.startsWith(PREFIX)) {
+                    nextName = Math.max(nextName, Integer.parseInt(name.substring(PREFIX.length())) + 1);
+                }
+                return first == FlatAst.NONE ? "v" + name : null;
+            case INTEGER:
+                return "i" + in.text(node);
+            case CHARACTER_LITERAL:
+                return "i" + (int) in.text(node).charAt(0);
+            case BOOLEAN:
+                return "b" + in.tokens().type(in.token(node));
+            default:
+                break;
+        }
+        if (!kind.isBinaryOperator() && !kind.isUnaryOperator()) {
+            return null;
+        }
+        if (kind == NodeKind.DIVISION || kind == NodeKind.MOD) {
+            // only a literal divisor other than 0 cannot fail
+            Long divisor = intConstant(in, in.nextSibling(first));
+            if (divisor == null || divisor == 0) {
+                return null;
+            }
+        }
+        StringBuilder sb = new StringBuilder().append(kind.ordinal());
+        boolean variable = false;
+        for (int child = first; child != FlatAst.NONE; child = in.nextSibling(child)) {
+            if (numbers[child] < 0) {
+                return null;
+            }
+            sb.append(':').append(numbers[child]);
+            variable |= in.kind(child) == NodeKind.VARIABLE || reusable[child];
+        }
+        reusable[node] = variable;
+        return sb.toString();
+    }
+
+    private void block(int block) {
+        Map<Integer, Window> open = new HashMap<>();
+        List<Window> closed = new ArrayList<>();
+        for (int statement = in.firstChild(block); statement != FlatAst.NONE; statement = in.nextSibling(statement)) {
+            int site = site(statement);
+            boolean called = false;
+            if (site != FlatAst.NONE) {
+                // index order is evaluation order; & and | may skip their right operand, harmless for pure ones
+                for (int node = in.subtreeStart(site); node <= site; node++) {
+                    if (in.kind(node) == NodeKind.FUNCTION_CALL) {
+                        closed.addAll(open.values());
+                        open.clear();
+                        called = true;
+                    } else if (reusable[node]) {
+                        Window window = open.get(numbers[node]);
+                        if (window == null && !called) {
+                            window = new Window(statement, variables(node));
+                            open.put(numbers[node], window);
+                        }
+                        if (window != null) {
+                            window.uses.add(node);
+                        }
+                    }
+                }
+            }
+            if (contains(statement, NodeKind.FUNCTION_CALL)) {
+                closed.addAll(open.values());
+                open.clear();
+            } else {
+                Set<String> assigned = assigned(statement);
+                for (Integer number : new ArrayList<>(open.keySet())) {
+                    if (!disjoint(open.get(number).variables, assigned)) {
+                        closed.add(open.remove(number));
+                    }
+                }
+            }
+        }
+        closed.addAll(open.values());
+        reuse(closed);
+    }
+
+    /** The part of a statement of a block that is evaluated once, before it takes effect. */
+    private int site(int statement) {
+        switch (in.kind(statement)) {
+            case VARIABLE_DEFINITION:
+            case ASSIGNMENT:
+            case PRINT_STATEMENT:
+            case RETURN_STATEMENT:
+            case FUNCTION_CALL:
+                return statement;
+            case IF_STATEMENT:
+                return in.firstChild(statement);
+            default:
+                return FlatAst.NONE;
+        }
+    }
+
+    /** Picks the windows worth a local, largest expressions first so nested ones are not reused twice. */
+    private void reuse(List<Window> windows) {
+        windows.sort((a, b) -> Integer.compare(size(b.uses.get(0)), size(a.uses.get(0))));
+        for (Window window : windows) {
+            List<Integer> uses = new ArrayList<>();
+            for (int use : window.uses) {
+                if (!covered[use]) {
+                    uses.add(use);
+                }
+            }
+            int nodes = size(window.uses.get(0));
+            // each use shrinks to one VARIABLE, the definition adds the expression and four nodes
+            if (uses.size() < 2 || uses.size() * (nodes - 1) <= nodes + 4) {
+                continue;
+            }
+            int first = uses.get(0);
+            int token = token(TokenType.IDENTIFIER, PREFIX + nextName++, first);
+            temps.add(new Temp(token, first, isBoolean(in, first)));
+            for (int use : uses) {
+                replacements[use] = temps.size() - 1;
+                Arrays.fill(covered, in.subtreeStart(use), use + 1, true);
+            }
+            definitions.computeIfAbsent(window.statement, statement -> new ArrayList<>()).add(temps.size() - 1);
+        }
+    }
+
+    private int size(int node) {
+        return node - in.subtreeStart(node) + 1;
+    }
+
+    private Set<String> variables(int node) {
+        Set<String> names = new HashSet<>();
+        for (int inner = in.subtreeStart(node); inner <= node; inner++) {
+            if (in.kind(inner) == NodeKind.VARIABLE) {
+                names.add(in.text(inner));
+            }
+        }
+        return names;
+    }
+
+    /** Scalar variables a statement assigns or reads into, in nested blocks too. */
+    private Set<String> assigned(int statement) {
+        Set<String> names = new HashSet<>();
+        for (int inner = in.subtreeStart(statement); inner <= statement; inner++) {
+            NodeKind kind = in.kind(inner);
+            if (kind == NodeKind.ASSIGNMENT) {
+                names.add(in.text(in.firstChild(inner)));
+            } else if (kind == NodeKind.READ_STATEMENT) {
+                for (int variable = in.firstChild(inner); variable != FlatAst.NONE; variable = in.nextSibling(variable)) {
+                    names.add(in.text(variable));
+                }
+            }
+        }
+        return names;
+    }
+
+    private static boolean disjoint(Set<String> a, Set<String> b) {
+        for (String name : a) {
+            if (b.contains(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    int rewrite(int node) {
+        if (replacements[node] >= 0) {
+            return node(NodeKind.VARIABLE, temps.get(replacements[node]).token);
+        }
+        if (in.kind(node) != NodeKind.BLOCK) {
+            return copy(node);
+        }
+        int[] statements = new int[16];
+        int count = 0;
+        for (int statement = in.firstChild(node); statement != FlatAst.NONE; statement = in.nextSibling(statement)) {
+            List<Integer> defined = definitions.get(statement);
+            if (defined != null) {
+                for (int temp : defined) {
+                    statements = add(statements, count++, definition(temps.get(temp)));
+                }
+            }
+            if (map[statement] != FlatAst.NONE) {
+                statements = add(statements, count++, map[statement]);
+            }
+        }
+        return node(NodeKind.BLOCK, in.token(node), Arrays.copyOf(statements, count));
+    }
+
+    /** type $cseN = expression, the expression rebuilt from the first use. */
+    private int definition(Temp temp) {
+        int type = node(NodeKind.PRIMITIVE_TYPE, token(temp.bool ? TokenType.BOOLEAN : TokenType.INT, null, temp.first));
+        int variable = node(NodeKind.VARIABLE, temp.token);
+        int value = copy(temp.first);
+        int assignment = node(NodeKind.ASSIGNMENT, token(TokenType.BECOMES, null, temp.first), variable, value);
+        return node(NodeKind.VARIABLE_DEFINITION, FlatAst.NONE, type, assignment);
+    }
+}
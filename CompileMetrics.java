@@ -0,0 +1,150 @@
+package metrics;
+
+import token.TokenType;
+
+import java.util.Locale;
+
+/**
+ * Counters of one compile, or of many merged with add(): tokens per TokenType, bytes and lines
+ * lexed, time per phase, calls and self time per grammar rule, and the deepest bracket nesting.
+ * Nothing records into it unless a compile is run with MeteredLexer and MeteredParser, so the
+ * plain LexerImpl and ParserImpl hot paths carry no metrics code at all.
+ */
+public final class CompileMetrics {
+
+    public enum Phase {
+        READ,
+        LEX,
+        PARSE
+    }
+
+    /** Instrumented rules of ParserImpl, time in other rules counts towards their caller. */
+    public enum Rule {
+        GLOBAL_DEFINITION,
+        FUNCTION_DEFINITION,
+        MAIN_FUNCTION,
+        BLOCK,
+        STATEMENT,
+        ASSIGNMENT,
+        EXPRESSION,
+        SIMPLE_EXPRESSION,
+        TERM,
+        FACTOR,
+        VARIABLE,
+        FUNCTION_CALL
+    }
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Rule[] RULES = Rule.values();
+
+    private final long[] tokens = new long[TOKEN_TYPES.length];
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] ruleCalls = new long[RULES.length];
+    private final long[] ruleNanos = new long[RULES.length];
+    private long bytes;
+    private long lines;
+    private int maxDepth;
+    private int compiles;
+
+    public void token(TokenType type) {
+        tokens[type.ordinal()]++;
+    }
+
+    public void lexed(long bytes, long lines) {
+        this.bytes += bytes;
+        this.lines += lines;
+        compiles++;
+    }
+
+    public void phase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    public void rule(Rule rule, long selfNanos) {
+        ruleCalls[rule.ordinal()]++;
+        ruleNanos[rule.ordinal()] += selfNanos;
+    }
+
+    public void depth(int depth) {
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    /** Adds the counters of other to these, keeping the larger nesting depth. */
+    public synchronized void add(CompileMetrics other) {
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] += other.tokens[i];
+        }
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] += other.phaseNanos[i];
+        }
+        for (int i = 0; i < ruleCalls.length; i++) {
+            ruleCalls[i] += other.ruleCalls[i];
+            ruleNanos[i] += other.ruleNanos[i];
+        }
+        bytes += other.bytes;
+        lines += other.lines;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+        compiles += other.compiles;
+    }
+
+    public long tokens(TokenType type) {
+        return tokens[type.ordinal()];
+    }
+
+    public long tokens() {
+        long total = 0;
+        for (long count : tokens) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    public long nanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long calls(Rule rule) {
+        return ruleCalls[rule.ordinal()];
+    }
+
+    /** Time spent in rule itself, without the instrumented rules it called and without lexing. */
+    public long selfNanos(Rule rule) {
+        return ruleNanos[rule.ordinal()];
+    }
+
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    public int compiles() {
+        return compiles;
+    }
+
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%d compiles, %d bytes, %d lines, %d tokens, max nesting %d%n",
+                compiles, bytes, lines, tokens(), maxDepth));
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format(Locale.ROOT, "  %-20s %10.2f ms%n", phase, nanos(phase) / 1e6));
+        }
+        for (Rule rule : RULES) {
+            if (calls(rule) > 0) {
+                sb.append(String.format(Locale.ROOT, "  %-20s %10.2f ms %10d calls%n", rule, selfNanos(rule) / 1e6, calls(rule)));
+            }
+        }
+        for (TokenType type : TOKEN_TYPES) {
+            if (tokens(type) > 0) {
+                sb.append(String.format(Locale.ROOT, "  %-20s %10d tokens%n", type, tokens(type)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package driver;
+
+import ast.AstSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thin client of a {@link CompilerDaemon}: sends the files to parse over one connection and prints
+ * their diagnostics, optionally writing each AstSnapshot to a directory. Exits with 1 when any file
+ * has diagnostics, like BatchCompiler.
+ *
+ * Usage: CompilerClient [--port N] [--out DIR] [--stats] [--shutdown] file-or-directory...
+ */
+public class CompilerClient implements Closeable {
+
+    public static class Response {
+        public final boolean cached;
+        public final long serverNanos;
+        public final List<String> diagnostics;
+        private final byte[] snapshot;
+
+        Response(boolean cached, long serverNanos, List<String> diagnostics, byte[] snapshot) {
+            this.cached = cached;
+            this.serverNanos = serverNanos;
+            this.diagnostics = diagnostics;
+            this.snapshot = snapshot;
+        }
+
+        public boolean failed() {
+            return !diagnostics.isEmpty();
+        }
+
+        /** Serialized AstSnapshot of the (partial) tree, null if the file could not be read. */
+        public byte[] snapshotBytes() {
+            return snapshot;
+        }
+
+        public AstSnapshot snapshot() throws IOException {
+            return snapshot != null ? AstSnapshot.of(snapshot) : null;
+        }
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public CompilerClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    public Response parse(Path file) throws IOException {
+        out.writeUTF(CompilerDaemon.PARSE);
+        out.writeUTF(file.toAbsolutePath().toString());
+        out.flush();
+        boolean cached = in.readBoolean();
+        long serverNanos = in.readLong();
+        int count = in.readInt();
+        List<String> diagnostics = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            diagnostics.add(in.readUTF());
+        }
+        int length = in.readInt();
+        byte[] snapshot = null;
+        if (length >= 0) {
+            snapshot = new byte[length];
+            in.readFully(snapshot);
+        }
+        return new Response(cached, serverNanos, diagnostics, snapshot);
+    }
+
+    public String stats() throws IOException {
+        out.writeUTF(CompilerDaemon.STATS);
+        out.flush();
+        return in.readUTF();
+    }
+
+    /** Stops the daemon, this client is closed afterwards. */
+    public void shutdownDaemon() throws IOException {
+        out.writeUTF(CompilerDaemon.SHUTDOWN);
+        out.flush();
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = CompilerDaemon.DEFAULT_PORT;
+        Path outDir = null;
+        boolean stats = false;
+        boolean shutdown = false;
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        while (!arguments.isEmpty() && arguments.get(0).startsWith("--")) {
+            String option = arguments.remove(0);
+            switch (option) {
+                case "--port":      port = Integer.parseInt(arguments.remove(0)); break;
+                case "--out":       outDir = Files.createDirectories(Paths.get(arguments.remove(0))); break;
+                case "--stats":     stats = true; break;
+                case "--shutdown":  shutdown = true; break;
+                default:            throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        int failed = 0;
+        try (CompilerClient client = new CompilerClient(port)) {
+            for (Path file : BatchCompiler.collect(arguments)) {
+                Response response = client.parse(file);
+                if (response.failed()) {
+                    failed++;
+                    for (String diagnostic : response.diagnostics) {
+                        System.out.println(file + ": " + diagnostic);
+                    }
+                }
+                if (outDir != null && response.snapshotBytes() != null) {
+                    Files.write(outDir.resolve(file.getFileName() + ".ast"), response.snapshotBytes());
+                }
+            }
+            if (stats) {
+                System.out.println(client.stats());
+            }
+            if (shutdown) {
+                client.shutdownDaemon();
+            }
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
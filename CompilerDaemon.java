@@ -0,0 +1,242 @@
+package driver;
+
+import ast.AstSnapshot;
+import ast.FlatAst;
+import ast.NodeKind;
+import lexer.TokenCache;
+import parser.RecoveringParser;
+import source.CharArraySource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running parse server on a loopback port, so builds pay for JVM startup and JIT warm-up once
+ * instead of per invocation. A request names a file, the daemon parses it with RecoveringParser
+ * and answers with every diagnostic and the AstSnapshot of the (partial) tree. Results are kept in
+ * an LRU cache keyed by the SHA-256 of the file content and bounded by the snapshot bytes held.
+ * <p>
+ * The protocol is DataOutput over one connection per client, any number of requests each:
+ * PARSE path is answered with the cached flag, the server time in nanos, the diagnostic count and
+ * messages, then the snapshot length and bytes, -1 without a snapshot. STATS is answered with one
+ * line of counters, SHUTDOWN stops the daemon. {@link CompilerClient} speaks it.
+ *
+ * Usage: CompilerDaemon [--port N] [--threads N] [--cache-bytes N]
+ */
+public class CompilerDaemon {
+
+    public static final int DEFAULT_PORT = 7171;
+
+    static final String PARSE = "PARSE";
+    static final String STATS = "STATS";
+    static final String SHUTDOWN = "SHUTDOWN";
+
+    private static final class Result {
+        final List<String> diagnostics;
+        final byte[] snapshot;
+
+        Result(List<String> diagnostics, byte[] snapshot) {
+            this.diagnostics = diagnostics;
+            this.snapshot = snapshot;
+        }
+
+        long bytes() {
+            return snapshot != null ? snapshot.length : 0;
+        }
+    }
+
+    private final ServerSocket server;
+    private final ExecutorService connections;
+    private final long maxCacheBytes;
+    private final LinkedHashMap<String, Result> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes;
+    private long requests;
+    private long hits;
+    private volatile boolean running = true;
+
+    /** Binds to port on the loopback address, 0 picks a free port, see port(). */
+    public CompilerDaemon(int port, int threads, long maxCacheBytes) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "compiler-daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /** Accepts connections until SHUTDOWN or shutdown(). */
+    public void serve() throws IOException {
+        try {
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (!running) {
+                        return;
+                    }
+                    throw e;
+                }
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    public void shutdown() throws IOException {
+        running = false;
+        server.close();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()))) {
+            while (true) {
+                String command;
+                try {
+                    command = in.readUTF();
+                } catch (EOFException e) {
+                    return;
+                }
+                switch (command) {
+                    case PARSE:
+                        parse(in.readUTF(), out);
+                        break;
+                    case STATS:
+                        out.writeUTF(stats());
+                        break;
+                    case SHUTDOWN:
+                        out.flush();
+                        shutdown();
+                        return;
+                    default:
+                        throw new IOException("Unknown command " + command);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void parse(String path, DataOutputStream out) throws IOException {
+        long start = System.nanoTime();
+        Result result;
+        boolean cached = false;
+        try {
+            byte[] content = Files.readAllBytes(Paths.get(path));
+            String key = TokenCache.key(content);
+            synchronized (this) {
+                requests++;
+                result = cache.get(key);
+                if (result != null) {
+                    hits++;
+                    cached = true;
+                }
+            }
+            if (result == null) {
+                result = compile(content);
+                store(key, result);
+            }
+        } catch (IOException e) {
+            result = new Result(Collections.singletonList("Cannot read " + path + ": " + e), null);
+        } catch (RuntimeException | StackOverflowError e) {
+            // keep the connection and the daemon alive, the failure is not cached
+            result = new Result(Collections.singletonList("Cannot parse " + path + ": " + e), null);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        out.writeBoolean(cached);
+        out.writeLong(elapsed);
+        out.writeInt(result.diagnostics.size());
+        for (String diagnostic : result.diagnostics) {
+            out.writeUTF(diagnostic);
+        }
+        if (result.snapshot == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(result.snapshot.length);
+            out.write(result.snapshot);
+        }
+    }
+
+    private static Result compile(byte[] content) {
+        RecoveringParser parser = RecoveringParser.of(new CharArraySource(new String(content, StandardCharsets.UTF_8)));
+        FlatAst ast = parser.parse();
+        List<String> diagnostics = new ArrayList<>(parser.diagnostics().size());
+        for (RuntimeException diagnostic : parser.diagnostics()) {
+            // an exception without a message would reach writeUTF as null
+            diagnostics.add(diagnostic.getMessage() != null ? diagnostic.getMessage() : String.valueOf(diagnostic));
+        }
+        boolean program = ast.root() != FlatAst.NONE && ast.kind(ast.root()) == NodeKind.PROGRAM_BODY;
+        // a partial tree keeps the nodes of failed statements as orphans, the snapshot needs contiguous subtrees
+        return new Result(diagnostics, program ? AstSnapshot.toBytes(ast.copy(ast.tokens())) : null);
+    }
+
+    private synchronized void store(String key, Result result) {
+        if (result.bytes() > maxCacheBytes) {
+            return;
+        }
+        Result previous = cache.put(key, result);
+        cacheBytes += result.bytes() - (previous != null ? previous.bytes() : 0);
+        Iterator<Map.Entry<String, Result>> eldest = cache.entrySet().iterator();
+        while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+            cacheBytes -= eldest.next().getValue().bytes();
+            eldest.remove();
+        }
+    }
+
+    synchronized String stats() {
+        return String.format(Locale.ROOT, "%d requests, %d cache hits, %d cached files, %d cached bytes",
+                requests, hits, cache.size(), cacheBytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long cacheBytes = 256L << 20;
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        while (!arguments.isEmpty()) {
+            String option = arguments.remove(0);
+            switch (option) {
+                case "--port":          port = Integer.parseInt(arguments.remove(0)); break;
+                case "--threads":       threads = Integer.parseInt(arguments.remove(0)); break;
+                case "--cache-bytes":   cacheBytes = Long.parseLong(arguments.remove(0)); break;
+                default:                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        CompilerDaemon daemon = new CompilerDaemon(port, threads, cacheBytes);
+        System.out.println("Compiler daemon listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + daemon.port());
+        daemon.serve();
+    }
+}
@@ -0,0 +1,60 @@
+package optimizer;
+
+import ast.FlatAst;
+import ast.NodeKind;
+
+/**
+ * Folds arithmetic and comparisons whose operands are int or char literals, so 2 * 3 + x becomes
+ * 6 + x and 1 < 2 becomes true. The arithmetic is done exactly and a result that a NUMBER token
+ * cannot hold is left to overflow at run time, as is a division by zero left to fail there.
+ */
+public final class ConstantFolding extends RewritePass {
+
+    @Override
+    public String name() {
+        return "constant folding";
+    }
+
+    @Override
+    int rewrite(int node) {
+        NodeKind kind = in.kind(node);
+        if (kind.isBinaryOperator() && kind != NodeKind.AND && kind != NodeKind.OR) {
+            int left = in.firstChild(node);
+            Long a = intConstant(out, map[left]);
+            Long b = intConstant(out, map[in.nextSibling(left)]);
+            if (a != null && b != null) {
+                int folded = fold(kind, a, b, node);
+                if (folded != FlatAst.NONE) {
+                    return folded;
+                }
+            }
+        } else if (kind == NodeKind.MINUS) {
+            int operand = map[in.firstChild(node)];
+            Long value = intConstant(out, operand);
+            if (value != null && out.kind(operand) != NodeKind.INTEGER) {
+                int folded = integer(-value, node);
+                if (folded != FlatAst.NONE) {
+                    return folded;
+                }
+            }
+        }
+        return copy(node);
+    }
+
+    private int fold(NodeKind kind, long a, long b, int node) {
+        switch (kind) {
+            case ADDITION:          return integer(a + b, node);
+            case SUBTRACTION:       return integer(a - b, node);
+            case MULTIPLICATION:    return integer(a * b, node);
+            case DIVISION:          return b == 0 ? FlatAst.NONE : integer(a / b, node);
+            case MOD:               return b == 0 ? FlatAst.NONE : integer(a % b, node);
+            case EQUALS:            return bool(a == b, node);
+            case NOT_EQUAL:         return bool(a != b, node);
+            case GREATER:           return bool(a > b, node);
+            case GREATER_OR_EQUAL:  return bool(a >= b, node);
+            case LESS:              return bool(a < b, node);
+            case LESS_OR_EQUAL:     return bool(a <= b, node);
+            default:                return FlatAst.NONE;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package benchmark;
+
+import driver.CompilerClient;
+import driver.CompilerDaemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one parse request in four situations: a fresh JVM running BatchCompiler on the file,
+ * the first request to a just started daemon, a warm daemon seeing new content, and a warm daemon
+ * answering from its cache. Each file is a generated program of the given number of functions.
+ */
+public class DaemonLatencyBenchmark {
+
+    private static final int COLD_RUNS = 5;
+    private static final int WARMUP_REQUESTS = 300;
+    private static final int MEASURED_REQUESTS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path directory = Files.createTempDirectory("daemon-bench");
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < COLD_RUNS + 1 + WARMUP_REQUESTS + MEASURED_REQUESTS; i++) {
+                Path file = directory.resolve("program" + i + ".txt");
+                Files.write(file, new ProgramGenerator(i).manyFunctions(functions).getBytes(StandardCharsets.UTF_8));
+                files.add(file);
+            }
+
+            long[] cold = new long[COLD_RUNS];
+            for (int i = 0; i < COLD_RUNS; i++) {
+                cold[i] = freshJvm(files.get(i));
+            }
+
+            CompilerDaemon daemon = new CompilerDaemon(0, 2, 64L << 20);
+            Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.start();
+            try (CompilerClient client = new CompilerClient(daemon.port())) {
+                int next = COLD_RUNS;
+                long first = timed(client, files.get(next++));
+                for (int i = 0; i < WARMUP_REQUESTS; i++) {
+                    timed(client, files.get(next++));
+                }
+                long[] warmMiss = new long[MEASURED_REQUESTS];
+                long[] warmHit = new long[MEASURED_REQUESTS];
+                for (int i = 0; i < MEASURED_REQUESTS; i++) {
+                    Path file = files.get(next++);
+                    warmMiss[i] = timed(client, file);
+                    warmHit[i] = timed(client, file);
+                }
+
+                System.out.printf("%d functions per file, %d bytes%n", functions, Files.size(files.get(0)));
+                report("fresh JVM", cold);
+                report("daemon first", new long[] { first });
+                report("warm daemon, miss", warmMiss);
+                report("warm daemon, hit", warmHit);
+                System.out.println(client.stats());
+                client.shutdownDaemon();
+            }
+            server.join();
+        } finally {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static long freshJvm(Path file) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = Arrays.asList(java, "-cp", System.getProperty("java.class.path"),
+                "driver.BatchCompiler", "--threads", "1", file.toString());
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectOutput(new File(nullDevice())).redirectErrorStream(true).start();
+        if (!process.waitFor(60, TimeUnit.SECONDS) || process.exitValue() != 0) {
+            process.destroyForcibly();
+            throw new IllegalStateException("BatchCompiler failed on " + file);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String nullDevice() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+
+    private static long timed(CompilerClient client, Path file) throws IOException {
+        long start = System.nanoTime();
+        CompilerClient.Response response = client.parse(file);
+        long elapsed = System.nanoTime() - start;
+        if (response.failed()) {
+            throw new IllegalStateException(file + ": " + response.diagnostics.get(0));
+        }
+        return elapsed;
+    }
+
+    private static void report(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-20s median %9.3f ms   min %9.3f ms   max %9.3f ms%n",
+                label, sorted[sorted.length / 2] / 1e6, sorted[0] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,85 @@
+package optimizer;
+
+import ast.FlatAst;
+import ast.FlatAstVisitor;
+import ast.NodeKind;
+
+import java.util.Arrays;
+
+/**
+ * Removes code that cannot run: the branch of an if whose condition is a literal that is never
+ * taken, a while whose condition is a false literal, and the statements of a block that follow a
+ * return. The branch that is taken replaces the if and its statements join the enclosing block.
+ * Code that defines a variable stays, since a definition anywhere in a function makes the name a
+ * local of the whole function.
+ */
+public final class DeadBranchElimination extends RewritePass {
+
+    @Override
+    public String name() {
+        return "dead branch elimination";
+    }
+
+    @Override
+    int rewrite(int node) {
+        switch (in.kind(node)) {
+            case IF_STATEMENT: {
+                int condition = in.firstChild(node);
+                Boolean value = truth(out, map[condition]);
+                if (value == null) {
+                    break;
+                }
+                int then = in.nextSibling(condition);
+                int otherwise = in.nextSibling(then);
+                int taken = value ? then : otherwise;
+                int dropped = value ? otherwise : then;
+                if (dropped != FlatAst.NONE && contains(dropped, NodeKind.VARIABLE_DEFINITION)) {
+                    break;
+                }
+                return taken == FlatAst.NONE ? FlatAst.NONE : map[taken];
+            }
+            case WHILE_STATEMENT: {
+                int condition = in.firstChild(node);
+                if (Boolean.FALSE.equals(truth(out, map[condition])) && !contains(node, NodeKind.VARIABLE_DEFINITION)) {
+                    return FlatAst.NONE;
+                }
+                break;
+            }
+            case BLOCK:
+                return block(node);
+            default:
+                break;
+        }
+        return copy(node);
+    }
+
+    private int block(int node) {
+        int[] statements = children(node);
+        int count = 0;
+        boolean returned = false;
+        for (int statement : statements) {
+            if (!returned || defines(statement)) {
+                statements[count++] = statement;
+            }
+            returned |= out.kind(statement) == NodeKind.RETURN_STATEMENT;
+        }
+        return node(NodeKind.BLOCK, in.token(node), Arrays.copyOf(statements, count));
+    }
+
+    /** Whether a statement of out defines a variable, looking into nested blocks. */
+    private boolean defines(int statement) {
+        final boolean[] found = new boolean[1];
+        out.walk(statement, new FlatAstVisitor() {
+            @Override
+            public boolean enter(FlatAst ast, int node) {
+                found[0] |= ast.kind(node) == NodeKind.VARIABLE_DEFINITION;
+                return !found[0];
+            }
+
+            @Override
+            public void leave(FlatAst ast, int node) {
+            }
+        });
+        return found[0];
+    }
+}
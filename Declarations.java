@@ -0,0 +1,122 @@
+package interpreter;
+
+import ast.FlatAst;
+import ast.NodeKind;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Functions and variables of a program, shared by AstInterpreter and BytecodeCompiler so both
+ * resolve names the same way. A name is a local of a function if it is one of its parameters or
+ * is defined anywhere in its body, otherwise it must be a global. Locals live as long as their
+ * function call, a definition in a nested block does not start a new scope.
+ */
+final class Declarations {
+
+    static final class Function {
+        final String name;
+        final int node;
+        final int index;
+        final ValueType returnType;
+        final int body;
+        final List<String> parameters = new ArrayList<>();
+        /** Parameters first, in order, then the other locals in order of definition. */
+        final Map<String, ValueType> locals = new LinkedHashMap<>();
+
+        Function(String name, int node, int index, ValueType returnType, int body) {
+            this.name = name;
+            this.node = node;
+            this.index = index;
+            this.returnType = returnType;
+            this.body = body;
+        }
+    }
+
+    final FlatAst ast;
+    final Map<String, Function> functions = new LinkedHashMap<>();
+    final Map<String, ValueType> globals = new LinkedHashMap<>();
+    /** VARIABLE_DEFINITION nodes of the globals, in program order. */
+    final List<Integer> globalDefinitions = new ArrayList<>();
+    final Function main;
+
+    private Declarations(FlatAst ast) {
+        this.ast = ast;
+        int root = ast.root();
+        if (root == FlatAst.NONE || ast.kind(root) != NodeKind.PROGRAM_BODY) {
+            throw new IllegalArgumentException("Not a program");
+        }
+        Function last = null;
+        for (int node = ast.firstChild(root); node != FlatAst.NONE; node = ast.nextSibling(node)) {
+            switch (ast.kind(node)) {
+                case FUNCTION_DEFINITION:
+                    last = function(node);
+                    break;
+                case VARIABLE_DEFINITION:
+                    declare(globals, node);
+                    globalDefinitions.add(node);
+                    break;
+                default:
+                    throw ProgramException.at(ast, node, "Unexpected " + ast.kind(node) + " in program body");
+            }
+        }
+        // the parser always ends the program body with the main function
+        main = last;
+    }
+
+    static Declarations of(FlatAst ast) {
+        return new Declarations(ast);
+    }
+
+    private Function function(int node) {
+        String name = ast.text(node);
+        int child = ast.firstChild(node);
+        int parameters = FlatAst.NONE;
+        if (ast.kind(child) == NodeKind.FORMAL_PARAMETERS) {
+            parameters = child;
+            child = ast.nextSibling(child);
+        }
+        int body = ast.nextSibling(child);
+        Function function = new Function(name, node, functions.size(), ValueType.of(ast, child), body);
+        if (functions.put(name, function) != null) {
+            throw ProgramException.at(ast, node, "Function " + name + " is already defined");
+        }
+        if (parameters != FlatAst.NONE) {
+            for (int typed = ast.firstChild(parameters); typed != FlatAst.NONE; typed = ast.nextSibling(typed)) {
+                int type = ast.firstChild(typed);
+                int variable = ast.nextSibling(type);
+                String parameter = ast.text(variable);
+                if (function.locals.put(parameter, ValueType.of(ast, type)) != null) {
+                    throw ProgramException.at(ast, variable, "Duplicate parameter " + parameter);
+                }
+                function.parameters.add(parameter);
+            }
+        }
+        // the body is the contiguous node range ending at the BLOCK, in program order
+        for (int inner = ast.subtreeStart(body); inner < body; inner++) {
+            if (ast.kind(inner) == NodeKind.VARIABLE_DEFINITION) {
+                declare(function.locals, inner);
+            }
+        }
+        return function;
+    }
+
+    private void declare(Map<String, ValueType> scope, int definition) {
+        int type = ast.firstChild(definition);
+        int variable = ast.firstChild(ast.nextSibling(type));
+        String name = ast.text(variable);
+        ValueType valueType = ValueType.of(ast, type);
+        ValueType previous = scope.put(name, valueType);
+        if (previous != null && previous != valueType) {
+            throw ProgramException.at(ast, variable, "Variable " + name + " redefined as " + valueType + ", was " + previous);
+        }
+    }
+
+    /** Type of a local or global, null if name is neither. */
+    static ValueType lookup(Function function, Map<String, ValueType> globals, String name) {
+        ValueType type = function != null ? function.locals.get(name) : null;
+        return type != null ? type : globals.get(name);
+    }
+}
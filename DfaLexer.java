@@ -0,0 +1,338 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import source.CharArraySource;
+import token.IdentifierToken;
+import token.TokenImpl;
+import token.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * Lexer driven by precomputed transition tables (state x char class -> action, next state, token).
+ * It produces the same tokens as LexerImpl. The buffer of the CharArraySource is read directly,
+ * each nextToken() starts where the source is and leaves the source after the token, so its line
+ * and position follow the lexer as with LexerImpl.
+ */
+public class DfaLexer extends Lexer<TokenType> {
+
+    private static final int C_LETTER = 0;
+    private static final int C_ESCAPE_LETTER = 1;
+    private static final int C_DIGIT = 2;
+    private static final int C_BLANK = 3;
+    private static final int C_NEWLINE = 4;
+    private static final int C_MINUS = 5;
+    private static final int C_EQ = 6;
+    private static final int C_GT = 7;
+    private static final int C_LT = 8;
+    private static final int C_BANG = 9;
+    private static final int C_AMP = 10;
+    private static final int C_PIPE = 11;
+    private static final int C_SLASH = 12;
+    private static final int C_QUOTE = 13;
+    private static final int C_DQUOTE = 14;
+    private static final int C_BACKSLASH = 15;
+    private static final int C_SINGLE = 16;
+    private static final int C_OTHER = 17;
+    private static final int C_EOF = 18;
+    private static final int CLASS_COUNT = 19;
+
+    private static final int S_START = 0;
+    private static final int S_IDENT = 1;
+    private static final int S_NUMBER = 2;
+    private static final int S_MINUS = 3;
+    private static final int S_EQ = 4;
+    private static final int S_GT = 5;
+    private static final int S_LT = 6;
+    private static final int S_BANG = 7;
+    private static final int S_AMP = 8;
+    private static final int S_PIPE = 9;
+    private static final int S_SLASH = 10;
+    private static final int S_COMMENT = 11;
+    private static final int S_CHAR_OPEN = 12;
+    private static final int S_CHAR_ESCAPE = 13;
+    private static final int S_CHAR_BODY = 14;
+    private static final int S_STRING = 15;
+    private static final int S_STRING_ESCAPE = 16;
+    private static final int STATE_COUNT = 17;
+
+    /** Consume the char and move to the next state. */
+    private static final int A_ADVANCE = 0;
+    /** Consume the char and go back to the start state without a token. */
+    private static final int A_SKIP = 1;
+    /** Emit the token scanned so far, the char starts the next token. */
+    private static final int A_EMIT = 2;
+    /** Consume the char and emit the token it completes. */
+    private static final int A_EMIT_CONSUME = 3;
+    private static final int A_ESCAPE_ERROR = 4;
+    private static final int A_UNCLOSED_ERROR = 5;
+    private static final int A_END = 6;
+
+    private static final int STATE_MASK = 0xFF;
+    private static final int ACTION_SHIFT = 8;
+    private static final int TYPE_SHIFT = 12;
+    private static final int HAS_TEXT = 1 << 30;
+    /** Type slot value meaning "look the type up by char" for single char operators. */
+    private static final int BY_CHAR = 0xFFFF;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenType[] SINGLE_TYPES = new TokenType[128];
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int[] TABLE = new int[STATE_COUNT * CLASS_COUNT];
+
+    static {
+        Arrays.fill(CLASSES, (byte) C_OTHER);
+        for (char ch = 'a'; ch <= 'z'; ch++) {
+            CLASSES[ch] = C_LETTER;
+            CLASSES[Character.toUpperCase(ch)] = C_LETTER;
+        }
+        for (char ch : "ntbrf".toCharArray()) {
+            CLASSES[ch] = C_ESCAPE_LETTER;
+        }
+        for (char ch = '0'; ch <= '9'; ch++) {
+            CLASSES[ch] = C_DIGIT;
+        }
+        CLASSES[' '] = C_BLANK;
+        CLASSES['\t'] = C_BLANK;
+        CLASSES['\n'] = C_NEWLINE;
+        CLASSES['-'] = C_MINUS;
+        CLASSES['='] = C_EQ;
+        CLASSES['>'] = C_GT;
+        CLASSES['<'] = C_LT;
+        CLASSES['!'] = C_BANG;
+        CLASSES['&'] = C_AMP;
+        CLASSES['|'] = C_PIPE;
+        CLASSES['/'] = C_SLASH;
+        CLASSES['\''] = C_QUOTE;
+        CLASSES['"'] = C_DQUOTE;
+        CLASSES['\\'] = C_BACKSLASH;
+        single('+', TokenType.PLUS);
+        single('[', TokenType.LSQUARE);
+        single(']', TokenType.RSQUARE);
+        single('{', TokenType.LBRACKET);
+        single('}', TokenType.RBRACKET);
+        single('(', TokenType.LPAREN);
+        single(')', TokenType.RPAREN);
+        single(';', TokenType.SEMICOLON);
+        single('*', TokenType.MUL);
+        single('%', TokenType.MOD);
+        single(',', TokenType.COMMA);
+        single('@', TokenType.AT);
+
+        for (int cls = 0; cls < CLASS_COUNT; cls++) {
+            set(S_START, cls, A_EMIT_CONSUME, S_START, TokenType.OTHER, true);
+        }
+        set(S_START, C_LETTER, A_ADVANCE, S_IDENT);
+        set(S_START, C_ESCAPE_LETTER, A_ADVANCE, S_IDENT);
+        set(S_START, C_DIGIT, A_ADVANCE, S_NUMBER);
+        set(S_START, C_BLANK, A_SKIP, S_START);
+        set(S_START, C_NEWLINE, A_SKIP, S_START);
+        set(S_START, C_MINUS, A_ADVANCE, S_MINUS);
+        set(S_START, C_EQ, A_ADVANCE, S_EQ);
+        set(S_START, C_GT, A_ADVANCE, S_GT);
+        set(S_START, C_LT, A_ADVANCE, S_LT);
+        set(S_START, C_BANG, A_ADVANCE, S_BANG);
+        set(S_START, C_AMP, A_ADVANCE, S_AMP);
+        set(S_START, C_PIPE, A_ADVANCE, S_PIPE);
+        set(S_START, C_SLASH, A_ADVANCE, S_SLASH);
+        set(S_START, C_QUOTE, A_ADVANCE, S_CHAR_OPEN);
+        set(S_START, C_DQUOTE, A_ADVANCE, S_STRING);
+        set(S_START, C_SINGLE, A_EMIT_CONSUME, S_START, null, false);
+        set(S_START, C_EOF, A_END, S_START);
+
+        for (int cls = 0; cls < CLASS_COUNT; cls++) {
+            set(S_IDENT, cls, A_EMIT, S_START, TokenType.IDENTIFIER, true);
+            set(S_NUMBER, cls, A_EMIT, S_START, TokenType.NUMBER, true);
+            set(S_MINUS, cls, A_EMIT, S_START, TokenType.MINUS, false);
+            set(S_EQ, cls, A_EMIT, S_START, TokenType.BECOMES, false);
+            set(S_GT, cls, A_EMIT, S_START, TokenType.GREATER, false);
+            set(S_LT, cls, A_EMIT, S_START, TokenType.LESS, false);
+            set(S_BANG, cls, A_EMIT, S_START, TokenType.NOT, false);
+            set(S_AMP, cls, A_EMIT, S_START, TokenType.AND, false);
+            set(S_PIPE, cls, A_EMIT, S_START, TokenType.OR, false);
+            set(S_SLASH, cls, A_EMIT, S_START, TokenType.DIV, false);
+            set(S_COMMENT, cls, A_ADVANCE, S_COMMENT);
+            set(S_CHAR_OPEN, cls, A_ADVANCE, S_CHAR_BODY);
+            set(S_CHAR_ESCAPE, cls, A_ESCAPE_ERROR, S_START);
+            set(S_CHAR_BODY, cls, A_EMIT_CONSUME, S_START, TokenType.OTHER, false);
+            set(S_STRING, cls, A_ADVANCE, S_STRING);
+            set(S_STRING_ESCAPE, cls, A_ESCAPE_ERROR, S_START);
+        }
+        for (int cls : new int[] { C_LETTER, C_ESCAPE_LETTER, C_DIGIT }) {
+            set(S_IDENT, cls, A_ADVANCE, S_IDENT);
+        }
+        set(S_NUMBER, C_DIGIT, A_ADVANCE, S_NUMBER);
+        set(S_MINUS, C_GT, A_EMIT_CONSUME, S_START, TokenType.ARROW, false);
+        set(S_EQ, C_EQ, A_EMIT_CONSUME, S_START, TokenType.EQUALS, false);
+        set(S_GT, C_EQ, A_EMIT_CONSUME, S_START, TokenType.GREATER_EQ, false);
+        set(S_LT, C_EQ, A_EMIT_CONSUME, S_START, TokenType.LESS_EQ, false);
+        set(S_BANG, C_EQ, A_EMIT_CONSUME, S_START, TokenType.NOTEQUALS, false);
+        set(S_AMP, C_AMP, A_EMIT_CONSUME, S_START, TokenType.OTHER, false);
+        set(S_PIPE, C_PIPE, A_EMIT_CONSUME, S_START, TokenType.OTHER, false);
+        set(S_SLASH, C_SLASH, A_ADVANCE, S_COMMENT);
+        set(S_COMMENT, C_NEWLINE, A_SKIP, S_START);
+        set(S_CHAR_OPEN, C_QUOTE, A_EMIT_CONSUME, S_START, TokenType.OTHER, false);
+        set(S_CHAR_OPEN, C_BACKSLASH, A_ADVANCE, S_CHAR_ESCAPE);
+        set(S_CHAR_BODY, C_QUOTE, A_EMIT_CONSUME, S_START, TokenType.CHAR_LITERAL, true);
+        set(S_CHAR_BODY, C_EOF, A_EMIT, S_START, TokenType.OTHER, false);
+        set(S_STRING, C_DQUOTE, A_EMIT_CONSUME, S_START, TokenType.STRING_LITERAL, true);
+        set(S_STRING, C_BACKSLASH, A_ADVANCE, S_STRING_ESCAPE);
+        set(S_STRING, C_EOF, A_UNCLOSED_ERROR, S_START);
+        for (int cls : new int[] { C_ESCAPE_LETTER, C_QUOTE, C_DQUOTE, C_BACKSLASH }) {
+            set(S_CHAR_ESCAPE, cls, A_ADVANCE, S_CHAR_BODY);
+            set(S_STRING_ESCAPE, cls, A_ADVANCE, S_STRING);
+        }
+    }
+
+    private static void single(char ch, TokenType type) {
+        CLASSES[ch] = C_SINGLE;
+        SINGLE_TYPES[ch] = type;
+    }
+
+    private static void set(int state, int cls, int action, int nextState) {
+        set(state, cls, action, nextState, null, false);
+    }
+
+    private static void set(int state, int cls, int action, int nextState, TokenType type, boolean hasText) {
+        int typeSlot = type == null ? BY_CHAR : type.ordinal();
+        TABLE[state * CLASS_COUNT + cls] = nextState | action << ACTION_SHIFT | typeSlot << TYPE_SHIFT
+                | (hasText ? HAS_TEXT : 0);
+    }
+
+    private final CharArraySource arraySource;
+    private final char[] buffer;
+    private final int length;
+    private final SymbolTable symbols;
+    private int offset;
+    private int line;
+    private int lineStart;
+
+    public DfaLexer(CharArraySource source) {
+        this(source, null);
+    }
+
+    public DfaLexer(CharArraySource source, SymbolTable symbols) {
+        super(source);
+        this.arraySource = source;
+        this.buffer = source.buffer();
+        this.length = source.length();
+        this.symbols = symbols;
+    }
+
+    @Override
+    public Token<TokenType> nextToken() {
+        offset = arraySource.offset();
+        line = arraySource.getLineNumber();
+        lineStart = offset - arraySource.getPosition();
+        try {
+            return scan();
+        } finally {
+            arraySource.moveTo(offset, line, lineStart);
+        }
+    }
+
+    private Token<TokenType> scan() {
+        int state = S_START;
+        int start = offset;
+        int tokenLine = line;
+        int position = 0;
+        while (true) {
+            int cls = C_EOF;
+            if (offset < length) {
+                char ch = buffer[offset];
+                cls = ch < 128 ? CLASSES[ch] : C_OTHER;
+            }
+            int entry = TABLE[state * CLASS_COUNT + cls];
+            switch (entry >>> ACTION_SHIFT & 0xF) {
+                case A_ADVANCE:
+                    if (state == S_START) {
+                        start = offset;
+                        tokenLine = line;
+                        position = offset - lineStart + 1;
+                    }
+                    consume();
+                    state = entry & STATE_MASK;
+                    continue;
+                case A_SKIP:
+                    consume();
+                    state = S_START;
+                    continue;
+                case A_EMIT:
+                    return emit(entry, start, tokenLine, position);
+                case A_EMIT_CONSUME:
+                    if (state == S_START) {
+                        start = offset;
+                        tokenLine = line;
+                        position = offset - lineStart + 1;
+                    }
+                    consume();
+                    return emit(entry, start, tokenLine, position);
+                case A_ESCAPE_ERROR:
+                    throw new LexicalException("Incorrect char escape: " + (state == S_CHAR_ESCAPE ? '\'' : '\\'),
+                            tokenLine, position);
+                case A_UNCLOSED_ERROR:
+                    throw new LexicalException("String quote not closed!", tokenLine, position);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private void consume() {
+        if (buffer[offset] == '\n') {
+            line++;
+            lineStart = offset + 1;
+        }
+        offset++;
+    }
+
+    private Token<TokenType> emit(int entry, int start, int tokenLine, int position) {
+        int typeSlot = entry >>> TYPE_SHIFT & 0xFFFF;
+        TokenType type = typeSlot == BY_CHAR ? SINGLE_TYPES[buffer[start]] : TYPES[typeSlot];
+        if ((entry & HAS_TEXT) == 0) {
+            return new TokenImpl(type, position, tokenLine);
+        }
+        int length = offset - start;
+        switch (type) {
+            case IDENTIFIER:
+                TokenType keyword = KeywordTable.lookup(buffer, start, length);
+                if (keyword != null) {
+                    return new TokenImpl(keyword, position, tokenLine);
+                }
+                if (symbols != null) {
+                    int symbol = symbols.intern(buffer, start, length);
+                    return new IdentifierToken(symbols.name(symbol), symbol, position, tokenLine);
+                }
+                return new TokenImpl(type, new String(buffer, start, length), position, tokenLine);
+            case NUMBER:
+                String digit = new String(buffer, start, length);
+                try {
+                    Integer.parseInt(digit);
+                } catch (NumberFormatException e) {
+                    throw new LexicalException("Not a valid integer " + digit + ".", tokenLine, position, e);
+                }
+                return new TokenImpl(type, digit, position, tokenLine);
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                return new TokenImpl(type, unescape(start + 1, offset - 1), position, tokenLine);
+            default:
+                return new TokenImpl(type, String.valueOf(buffer[start]), position, tokenLine);
+        }
+    }
+
+    private String unescape(int from, int to) {
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char ch = buffer[i];
+            if (ch == '\\') {
+                ch = TokenBuffer.escapedChar(buffer[++i]);
+            } else if (ch == '\n') {
+                ch = ' ';
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.parser.Parser;
+import lexer.LexerImpl;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import parser.ParserImpl;
+import parser.PrecedenceParser;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.util.Random;
+
+/**
+ * Checks PrecedenceParser against ParserImpl on generated expression-heavy programs and on
+ * randomly damaged copies of them, then compares their parse time on one large program.
+ */
+public class ExpressionParserBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+    private static final int CHECKED_PROGRAMS = 500;
+    private static final String[] DAMAGE = { "", "-", "!", "+", "*", "<", "(", ")", "&", "|", "1", "a" };
+
+    interface ParserFactory {
+        Parser<TokenType, AST> create(Lexer<TokenType> lexer);
+    }
+
+    public static void main(String[] args) {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        differentialCheck();
+
+        String program = new ProgramGenerator(42).expressionHeavy(functions);
+        TokenBuffer tokens = new PackedLexer(new CharArraySource(program)).withSymbols(new SymbolTable()).tokenize();
+        System.out.printf("%d functions, %d tokens%n", functions, tokens.size());
+        report("recursive descent", measure(tokens, ParserImpl::new));
+        report("precedence", measure(tokens, PrecedenceParser::new));
+    }
+
+    private static void differentialCheck() {
+        Random random = new Random(7);
+        int mismatches = 0;
+        for (int seed = 0; seed < CHECKED_PROGRAMS; seed++) {
+            String program = new ProgramGenerator(seed).expressionHeavy(3);
+            mismatches += compare(program);
+            int offset = random.nextInt(program.length());
+            int removed = Math.min(random.nextInt(3), program.length() - offset);
+            String damaged = program.substring(0, offset) + DAMAGE[random.nextInt(DAMAGE.length)]
+                    + program.substring(offset + removed);
+            mismatches += compare(damaged);
+        }
+        if (mismatches > 0) {
+            throw new IllegalStateException(mismatches + " programs parsed differently");
+        }
+        System.out.printf("%d programs parsed identically%n", CHECKED_PROGRAMS * 2);
+    }
+
+    private static int compare(String program) {
+        String expected = outcome(program, ParserImpl::new);
+        String actual = outcome(program, PrecedenceParser::new);
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        System.out.println("Mismatch for:\n" + program + "\nexpected " + expected + "\nactual   " + actual);
+        return 1;
+    }
+
+    private static String outcome(String program, ParserFactory factory) {
+        try {
+            return factory.create(new LexerImpl(new CharArraySource(program))).entryRule().toString();
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    private static long measure(TokenBuffer tokens, ParserFactory factory) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            factory.create(tokens.lexer()).entryRule();
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static void report(String label, long nanos) {
+        System.out.printf("%-18s %8.2f ms%n", label, nanos / 1e6);
+    }
+}
@@ -0,0 +1,214 @@
+package ast;
+
+import lexer.TokenBuffer;
+
+import java.util.Arrays;
+
+/**
+ * AST stored as parallel primitive arrays: per node its kind, the index of its token in a
+ * {@link TokenBuffer}, its first child and its next sibling. Nodes are appended children first,
+ * so every subtree occupies a contiguous index range ending with its root. A partial tree from
+ * RecoveringParser is the exception: the nodes a failed statement built before its error stay in
+ * the arrays as orphans inside the range of the enclosing subtree, until copy() drops them.
+ */
+public final class FlatAst {
+
+    public static final int NONE = -1;
+
+    private final TokenBuffer tokens;
+    private int size;
+    private byte[] kinds;
+    private int[] tokenIndexes;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int root = NONE;
+
+    public FlatAst(TokenBuffer tokens, int capacity) {
+        this.tokens = tokens;
+        capacity = Math.max(16, capacity);
+        kinds = new byte[capacity];
+        tokenIndexes = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+    }
+
+    /**
+     * Appends a node whose children are firstChild and its chain of siblings, NONE for a leaf.
+     * token is NONE for the nodes the object tree builds with a null token.
+     */
+    public int add(NodeKind kind, int token, int firstChild) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = (byte) kind.ordinal();
+        tokenIndexes[size] = token;
+        firstChildren[size] = firstChild;
+        nextSiblings[size] = NONE;
+        return size++;
+    }
+
+    /** Makes sibling the next sibling of node and returns node. */
+    public int link(int node, int sibling) {
+        nextSiblings[node] = sibling;
+        return node;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        tokenIndexes = Arrays.copyOf(tokenIndexes, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public NodeKind kind(int node) {
+        return NodeKind.of(kinds[node]);
+    }
+
+    /** Index of the node's token in tokens(), NONE if it has none. */
+    public int token(int node) {
+        return tokenIndexes[node];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    /** The n-th child of node, NONE if it has fewer children. */
+    public int child(int node, int n) {
+        int child = firstChildren[node];
+        while (child != NONE && n-- > 0) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    /** Text of the node's token, null if it has no token or the token carries no text. */
+    public String text(int node) {
+        int token = tokenIndexes[node];
+        return token == NONE ? null : tokens.getText(token);
+    }
+
+    /**
+     * First node index of the subtree rooted at node, the subtree spans [subtreeStart(node), node].
+     * In a partial tree from RecoveringParser that range may also hold orphans.
+     */
+    public int subtreeStart(int node) {
+        int first = node;
+        for (int child = firstChildren[node]; child != NONE; child = firstChildren[child]) {
+            first = child;
+        }
+        return first;
+    }
+
+    /** Walks the tree from root() depth first without recursion. */
+    public void walk(FlatAstVisitor visitor) {
+        if (root != NONE) {
+            walk(root, visitor);
+        }
+    }
+
+    /** Walks the subtree rooted at node depth first without recursion. */
+    public void walk(int node, FlatAstVisitor visitor) {
+        int[] parents = new int[32];
+        int depth = 0;
+        while (true) {
+            if (visitor.enter(this, node) && firstChildren[node] != NONE) {
+                if (depth == parents.length) {
+                    parents = Arrays.copyOf(parents, depth * 2);
+                }
+                parents[depth++] = node;
+                node = firstChildren[node];
+                continue;
+            }
+            visitor.leave(this, node);
+            while (depth > 0 && nextSiblings[node] == NONE) {
+                node = parents[--depth];
+                visitor.leave(this, node);
+            }
+            if (depth == 0) {
+                return;
+            }
+            node = nextSiblings[node];
+        }
+    }
+
+    /**
+     * Copies the tree reachable from root() into a new FlatAst over tokens, appended children first
+     * again, so nodes no longer in the tree are dropped and every subtree is contiguous.
+     */
+    public FlatAst copy(TokenBuffer tokens) {
+        FlatAst copy = new FlatAst(tokens, size);
+        if (root == NONE) {
+            return copy;
+        }
+        // per open node: the node, its next child to copy and the first and last copied children
+        int[] nodes = new int[32];
+        int[] cursors = new int[32];
+        int[] firsts = new int[32];
+        int[] lasts = new int[32];
+        int depth = 0;
+        nodes[0] = root;
+        cursors[0] = firstChildren[root];
+        firsts[0] = lasts[0] = NONE;
+        depth++;
+        while (depth > 0) {
+            int top = depth - 1;
+            int child = cursors[top];
+            if (child != NONE) {
+                cursors[top] = nextSiblings[child];
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    cursors = Arrays.copyOf(cursors, depth * 2);
+                    firsts = Arrays.copyOf(firsts, depth * 2);
+                    lasts = Arrays.copyOf(lasts, depth * 2);
+                }
+                nodes[depth] = child;
+                cursors[depth] = firstChildren[child];
+                firsts[depth] = lasts[depth] = NONE;
+                depth++;
+                continue;
+            }
+            int node = nodes[top];
+            int copied = copy.add(NodeKind.of(kinds[node]), tokenIndexes[node], firsts[top]);
+            depth--;
+            if (depth == 0) {
+                copy.setRoot(copied);
+            } else if (firsts[depth - 1] == NONE) {
+                firsts[depth - 1] = lasts[depth - 1] = copied;
+            } else {
+                copy.link(lasts[depth - 1], copied);
+                lasts[depth - 1] = copied;
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,147 @@
+package benchmark;
+
+import ast.FlatAst;
+import ast.FlatAstConverter;
+import ast.FlatAstVisitor;
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import parser.FlatAstParser;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the object tree of ParserImpl with the FlatAst of FlatAstParser on one large generated
+ * program: parse time, retained heap and the time of a full traversal. Both parse the same
+ * TokenBuffer. The object tree has no visitor of its own, so it is walked through its fields by
+ * reflection, with the fields cached per class.
+ */
+public class FlatAstBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        String program = new ProgramGenerator(42).manyFunctions(functions);
+        TokenBuffer tokens = new PackedLexer(new CharArraySource(program)).withSymbols(new SymbolTable()).tokenize();
+
+        AST tree = new ParserImpl(tokens.lexer()).entryRule();
+        FlatAst flat = new FlatAstParser(tokens).parse();
+        if (!tree.toString().equals(FlatAstConverter.toAst(flat).toString())) {
+            throw new IllegalStateException("FlatAst converts to a different tree");
+        }
+        System.out.printf("%d functions, %d tokens, %d nodes%n", functions, tokens.size(), flat.size());
+
+        long treeParse = best(() -> new ParserImpl(tokens.lexer()).entryRule());
+        long flatParse = best(() -> new FlatAstParser(tokens).parse());
+        System.out.printf("parse      object tree %8.2f ms   flat %8.2f ms%n", treeParse / 1e6, flatParse / 1e6);
+
+        tree = null;
+        flat = null;
+        long baseline = usedHeap();
+        AST retainedTree = new ParserImpl(tokens.lexer()).entryRule();
+        long treeBytes = usedHeap() - baseline;
+        baseline = usedHeap();
+        FlatAst retainedFlat = new FlatAstParser(tokens).parse();
+        long flatBytes = usedHeap() - baseline;
+        System.out.printf("heap       object tree %8.2f MB   flat %8.2f MB%n", treeBytes / 1e6, flatBytes / 1e6);
+
+        ObjectTreeWalker walker = new ObjectTreeWalker();
+        long[] counts = new long[2];
+        long treeWalk = best(() -> counts[0] = walker.count(retainedTree));
+        long flatWalk = best(() -> counts[1] = countNodes(retainedFlat));
+        if (counts[0] != counts[1]) {
+            throw new IllegalStateException("Traversals visited " + counts[0] + " and " + counts[1] + " nodes");
+        }
+        System.out.printf("traversal  object tree %8.2f ms   flat %8.2f ms%n", treeWalk / 1e6, flatWalk / 1e6);
+    }
+
+    private static long countNodes(FlatAst ast) {
+        long[] count = new long[1];
+        ast.walk(new FlatAstVisitor() {
+            @Override
+            public boolean enter(FlatAst ast, int node) {
+                count[0]++;
+                return true;
+            }
+
+            @Override
+            public void leave(FlatAst ast, int node) {
+            }
+        });
+        return count[0];
+    }
+
+    private static long best(Runnable run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            long elapsed = System.nanoTime() - start;
+            if (i >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Counts the AST nodes reachable through the AST and List fields of every node. */
+    private static class ObjectTreeWalker {
+        private final Map<Class<?>, Field[]> fields = new HashMap<>();
+
+        long count(Object node) {
+            long count = 1;
+            try {
+                for (Field field : fieldsOf(node.getClass())) {
+                    Object value = field.get(node);
+                    if (value instanceof AST) {
+                        count += count(value);
+                    } else if (value instanceof List) {
+                        for (Object element : (List<?>) value) {
+                            count += count(element);
+                        }
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            return count;
+        }
+
+        private Field[] fieldsOf(Class<?> type) {
+            Field[] cached = fields.get(type);
+            if (cached == null) {
+                List<Field> children = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (!Modifier.isStatic(field.getModifiers())
+                                && (AST.class.isAssignableFrom(field.getType()) || List.class.isAssignableFrom(field.getType()))) {
+                            field.setAccessible(true);
+                            children.add(field);
+                        }
+                    }
+                }
+                cached = children.toArray(new Field[0]);
+                fields.put(type, cached);
+            }
+            return cached;
+        }
+    }
+}
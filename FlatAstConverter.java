@@ -0,0 +1,221 @@
+package ast;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.ast.ActualParameterNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.BlockNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.FormalParameterNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.ProgramBodyNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.TypedVariableNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.ArrayInitNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.AssignableNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.CharacterLiteralNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.StringLiteralNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.AdditionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.SubtractionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.AndNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.OrNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.DivisionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.ModNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.MultiplicationNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.relational_operators.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.MinusNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.NotNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.FunctionDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.VariableDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.statement.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.type.PrimitiveTypeNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.type.TypeNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.type.VoidTypeNode;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Builds the bg.tu_varna.kst_sit.ci_ep.ast object tree ParserImpl would build from a FlatAst. ERROR
+ * nodes of a partial tree are dropped.
+ */
+public final class FlatAstConverter {
+
+    private final FlatAst ast;
+    private final IntFunction<Token<TokenType>> tokens;
+
+    private FlatAstConverter(FlatAst ast, IntFunction<Token<TokenType>> tokens) {
+        this.ast = ast;
+        this.tokens = tokens;
+    }
+
+    public static AST toAst(FlatAst ast) {
+        return toAst(ast, ast.root());
+    }
+
+    public static AST toAst(FlatAst ast, int node) {
+        return toAst(ast, node, index -> ast.tokens().token(index));
+    }
+
+    /** Converts the subtree at node of a FlatAst whose token indexes are resolved by tokens. */
+    static AST toAst(FlatAst ast, int node, IntFunction<Token<TokenType>> tokens) {
+        return new FlatAstConverter(ast, tokens).convert(node);
+    }
+
+    private Token<TokenType> token(int node) {
+        int index = ast.token(node);
+        return index == FlatAst.NONE ? null : tokens.apply(index);
+    }
+
+    /**
+     * Converts children before their parent with explicit stacks rather than Java recursion, so
+     * the deep nesting FlatAstParser and IterativeParser accept does not overflow the thread stack.
+     * An entry of work is a node to expand, or the complement of a node whose children are done.
+     */
+    private AST convert(int root) {
+        if (root == FlatAst.NONE) {
+            return null;
+        }
+        int[] work = new int[16];
+        int size = 0;
+        List<AST> results = new ArrayList<>();
+        work[size++] = root;
+        while (size > 0) {
+            int entry = work[--size];
+            if (entry < 0) {
+                int node = ~entry;
+                AST[] children = new AST[ast.childCount(node)];
+                // the children were pushed first to last, so their results come off last to first
+                for (int i = children.length - 1; i >= 0; i--) {
+                    children[i] = results.remove(results.size() - 1);
+                }
+                results.add(build(node, children));
+            } else if (ast.kind(entry) == NodeKind.ERROR) {
+                results.add(null);
+            } else {
+                if (size + ast.childCount(entry) + 1 > work.length) {
+                    work = Arrays.copyOf(work, Math.max(work.length * 2, size + ast.childCount(entry) + 1));
+                }
+                work[size++] = ~entry;
+                // pushed in reverse, so the first child is converted first
+                int from = size;
+                for (int child = ast.firstChild(entry); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    work[size++] = child;
+                }
+                reverse(work, from, size);
+            }
+        }
+        return results.get(0);
+    }
+
+    private static void reverse(int[] array, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int swap = array[i];
+            array[i] = array[j];
+            array[j] = swap;
+        }
+    }
+
+    /** Builds node from its converted children, null for the ERROR ones. */
+    private AST build(int node, AST[] children) {
+        Token<TokenType> token = token(node);
+        AST first = child(children, 0);
+        AST second = child(children, 1);
+        switch (ast.kind(node)) {
+            case PROGRAM_BODY:
+                return new ProgramBodyNode(null, this.<GlobalDefinitionNode>list(children));
+            case FUNCTION_DEFINITION:
+                if (ast.kind(ast.firstChild(node)) == NodeKind.FORMAL_PARAMETERS) {
+                    return new FunctionDefinitionNode(token, (FormalParameterNode) first, (TypeNode) second,
+                            (BlockNode) child(children, 2));
+                }
+                return new FunctionDefinitionNode(token, null, (TypeNode) first, (BlockNode) second);
+            case VARIABLE_DEFINITION:
+                return new VariableDefinitionNode(null, (TypeNode) first, (AssignmentNode) second);
+            case FORMAL_PARAMETERS:
+                return new FormalParameterNode(null, this.<TypedVariableNode>list(children));
+            case TYPED_VARIABLE:
+                return new TypedVariableNode(null, (TypeNode) first, (VariableNode) second);
+            case ACTUAL_PARAMETERS:
+                return new ActualParameterNode(null, this.<AssignableNode>list(children));
+            case PRIMITIVE_TYPE:
+                return new PrimitiveTypeNode(token, false);
+            case ARRAY_TYPE:
+                return new PrimitiveTypeNode(token, true);
+            case VOID_TYPE:
+                return new VoidTypeNode(token);
+            case BLOCK:
+                return new BlockNode(null, this.<Statement>list(children));
+            case ASSIGNMENT:
+                return new AssignmentNode(token, (VariableNode) first, (AssignableNode) second);
+            case IF_STATEMENT:
+                return new IfStatementNode(token, (ExpressionNode) first, (BlockNode) second, (BlockNode) child(children, 2));
+            case WHILE_STATEMENT:
+                return new WhileStatementNode(token, (ExpressionNode) first, (BlockNode) second);
+            case RETURN_STATEMENT:
+                return new ReturnStatementNode(token, (AssignableNode) first);
+            case PRINT_STATEMENT:
+                return new PrintStatementNode(token, (ActualParameterNode) first);
+            case READ_STATEMENT:
+                return new ReadStatementNode(token, this.<VariableNode>list(children));
+            case ARRAY_INIT:
+                return new ArrayInitNode(token, (ExpressionNode) first);
+            case CHARACTER_LITERAL:
+                return new CharacterLiteralNode(token);
+            case STRING_LITERAL:
+                return new StringLiteralNode(token);
+            case VARIABLE:
+                return new VariableNode(token, (ExpressionNode) first);
+            case FUNCTION_CALL:
+                return new FunctionCall(token, (ActualParameterNode) first);
+            case INTEGER:
+                return new IntegerNode(token);
+            case BOOLEAN:
+                return new BooleanNode(token);
+            case ARRAY_LENGTH:
+                return new ArrayLengthNode(token, (VariableNode) first);
+            case NOT:
+                return new NotNode(token, (ExpressionNode) first);
+            case MINUS:
+                return new MinusNode(token, (ExpressionNode) first);
+            default:
+                return binaryOperator(node, token, (ExpressionNode) first, (ExpressionNode) second);
+        }
+    }
+
+    private static AST child(AST[] children, int index) {
+        return index < children.length ? children[index] : null;
+    }
+
+    private ExpressionNode binaryOperator(int node, Token<TokenType> token, ExpressionNode left, ExpressionNode right) {
+        switch (ast.kind(node)) {
+            case ADDITION:          return new AdditionNode(token, left, right);
+            case SUBTRACTION:       return new SubtractionNode(token, left, right);
+            case OR:                return new OrNode(token, left, right);
+            case MULTIPLICATION:    return new MultiplicationNode(token, left, right);
+            case DIVISION:          return new DivisionNode(token, left, right);
+            case MOD:               return new ModNode(token, left, right);
+            case AND:               return new AndNode(token, left, right);
+            case EQUALS:            return new EqualsNode(token, left, right);
+            case NOT_EQUAL:         return new NotEqualNode(token, left, right);
+            case GREATER:           return new GreaterNode(token, left, right);
+            case GREATER_OR_EQUAL:  return new GreaterOrEqualNode(token, left, right);
+            case LESS:              return new LessNode(token, left, right);
+            case LESS_OR_EQUAL:     return new LessOrEqualNode(token, left, right);
+            default: throw new IllegalStateException("Unexpected node kind " + ast.kind(node));
+        }
+    }
+
+    /** The children of a list node, without the ERROR ones. */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> list(AST[] children) {
+        List<T> list = new ArrayList<>(children.length);
+        for (AST child : children) {
+            if (child != null) {
+                list.add((T) child);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,430 @@
+package parser;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import lexer.TokenBuffer;
+import token.TokenType;
+
+/**
+ * Recursive descent over a TokenBuffer that follows the grammar of ParserImpl rule for rule, but
+ * writes the nodes into a {@link FlatAst} instead of allocating node objects. The tree converts back
+ * to the one ParserImpl builds with ast.FlatAstConverter, and syntax errors carry the same messages.
+ * Running out of tokens is reported as a SyntaxException at the last token.
+ */
+public class FlatAstParser {
+
+    static final int NONE = FlatAst.NONE;
+
+    final TokenBuffer tokens;
+    final FlatAst ast;
+    int current;
+
+    public FlatAstParser(TokenBuffer tokens) {
+        this.tokens = tokens;
+        ast = new FlatAst(tokens, tokens.size());
+    }
+
+    public FlatAst parse() {
+        accept(TokenType.PROGRAM);
+        accept(TokenType.LBRACKET);
+        int body = programBody();
+        accept(TokenType.RBRACKET);
+        ast.setRoot(body);
+        return ast;
+    }
+
+    TokenType type() {
+        if (current >= tokens.size()) {
+            throw new SyntaxException("Unexpected end of input", tokens.size() > 0 ? tokens.token(tokens.size() - 1) : null);
+        }
+        return tokens.type(current);
+    }
+
+    void accept(TokenType tokenType) {
+        if (type() != tokenType) {
+            throw new SyntaxException("Token doesn't match! Expected " +
+                    tokenType.value + ", Got " + type().value, tokens.token(current));
+        }
+        current++;
+    }
+
+    /** Appends node to the sibling chain ending at last and returns node. */
+    int append(int last, int node) {
+        if (last != NONE) {
+            ast.link(last, node);
+        }
+        return node;
+    }
+
+    int programBody() {
+        int first = NONE;
+        int last = NONE;
+        while (atGlobalDefinition()) {
+            last = append(last, globalDefinition());
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        last = append(last, mainFunction());
+        if (first == NONE) {
+            first = last;
+        }
+        return ast.add(NodeKind.PROGRAM_BODY, NONE, first);
+    }
+
+    boolean atGlobalDefinition() {
+        return TokenType.isPrimitiveType(type()) ||
+                (type() == TokenType.IDENTIFIER && !TopLevelRegions.isMain(tokens, current));
+    }
+
+    int globalDefinition() {
+        if (type() == TokenType.IDENTIFIER) {
+            return functionDefinition();
+        }
+        int definition = variableDefinition();
+        accept(TokenType.SEMICOLON);
+        return definition;
+    }
+
+    int functionDefinition() {
+        int token = current;
+        accept(TokenType.IDENTIFIER);
+        accept(TokenType.LPAREN);
+        int formalParameters = NONE;
+        if (TokenType.isPrimitiveType(type())) {
+            formalParameters = formalParameters();
+        }
+        accept(TokenType.RPAREN);
+        accept(TokenType.ARROW);
+        int typeNode;
+        if (type() == TokenType.VOID) {
+            typeNode = ast.add(NodeKind.VOID_TYPE, current, NONE);
+            accept(TokenType.VOID);
+        } else {
+            typeNode = typeNode();
+        }
+        ast.link(typeNode, block());
+        if (formalParameters == NONE) {
+            return ast.add(NodeKind.FUNCTION_DEFINITION, token, typeNode);
+        }
+        ast.link(formalParameters, typeNode);
+        return ast.add(NodeKind.FUNCTION_DEFINITION, token, formalParameters);
+    }
+
+    int functionCall() {
+        accept(TokenType.AT);
+        int token = current;
+        accept(TokenType.IDENTIFIER);
+        accept(TokenType.LPAREN);
+        int actualParameters = NONE;
+        if (TokenType.isLiteralTerminal(type())) {
+            actualParameters = actualParameters();
+        }
+        accept(TokenType.RPAREN);
+        return ast.add(NodeKind.FUNCTION_CALL, token, actualParameters);
+    }
+
+    int typeNode() {
+        int token = current;
+        boolean isArray = false;
+        if (TokenType.isPrimitiveType(type())) {
+            accept(type());
+            if (type() == TokenType.LSQUARE) {
+                isArray = true;
+                accept(TokenType.LSQUARE);
+                accept(TokenType.RSQUARE);
+            }
+        } else {
+            throw new SyntaxException("Expected return type. Got " + type().value, tokens.token(current));
+        }
+        return ast.add(isArray ? NodeKind.ARRAY_TYPE : NodeKind.PRIMITIVE_TYPE, token, NONE);
+    }
+
+    int formalParameters() {
+        int first = typedVariable();
+        int last = first;
+        while (type() == TokenType.COMMA) {
+            accept(TokenType.COMMA);
+            last = append(last, typedVariable());
+        }
+        return ast.add(NodeKind.FORMAL_PARAMETERS, NONE, first);
+    }
+
+    private int typedVariable() {
+        int typeNode = typeNode();
+        ast.link(typeNode, ast.add(NodeKind.VARIABLE, current, NONE));
+        accept(TokenType.IDENTIFIER);
+        return ast.add(NodeKind.TYPED_VARIABLE, NONE, typeNode);
+    }
+
+    int actualParameters() {
+        int first = assignable();
+        int last = first;
+        while (type() == TokenType.COMMA) {
+            accept(TokenType.COMMA);
+            last = append(last, assignable());
+        }
+        return ast.add(NodeKind.ACTUAL_PARAMETERS, NONE, first);
+    }
+
+    int variableDefinition() {
+        int typeNode = typeNode();
+        ast.link(typeNode, assignment());
+        return ast.add(NodeKind.VARIABLE_DEFINITION, NONE, typeNode);
+    }
+
+    int assignment() {
+        int variable = variable();
+        int token = current;
+        accept(TokenType.BECOMES);
+        int assignable;
+        if (TokenType.isPrimitiveType(type())) {
+            assignable = arrayInitialization();
+        } else if (TokenType.CHAR_LITERAL == type()) {
+            assignable = characterLiteral();
+        } else if (TokenType.STRING_LITERAL == type()) {
+            assignable = stringLiteral();
+        } else {
+            assignable = expression();
+        }
+        ast.link(variable, assignable);
+        return ast.add(NodeKind.ASSIGNMENT, token, variable);
+    }
+
+    int arrayInitialization() {
+        int token = current;
+        accept(type());
+        accept(TokenType.LSQUARE);
+        int expression = expression();
+        accept(TokenType.RSQUARE);
+        return ast.add(NodeKind.ARRAY_INIT, token, expression);
+    }
+
+    int block() {
+        int first = NONE;
+        int last = NONE;
+        accept(TokenType.LBRACKET);
+        while (TokenType.isStatementTerminal(type())) {
+            last = append(last, statement());
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        accept(TokenType.RBRACKET);
+        return ast.add(NodeKind.BLOCK, NONE, first);
+    }
+
+    int expression() {
+        int left = simpleExpression();
+        if (TokenType.isRelationalOperator(type())) {
+            int token = current;
+            accept(type());
+            ast.link(left, simpleExpression());
+            return ast.add(NodeKind.binaryOperator(tokens.type(token)), token, left);
+        }
+        return left;
+    }
+
+    int simpleExpression() {
+        int left = signedTerm();
+        while (TokenType.isOperatorGroupOne(type())) {
+            int token = current;
+            accept(type());
+            ast.link(left, signedTerm());
+            left = ast.add(NodeKind.binaryOperator(tokens.type(token)), token, left);
+        }
+        return left;
+    }
+
+    int signedTerm() {
+        int token = NONE;
+        if (TokenType.isUnaryOperator(type())) {
+            token = current;
+            accept(type());
+        }
+        int operand = term();
+        if (token != NONE) {
+            NodeKind kind = NodeKind.unaryOperator(tokens.type(token));
+            if (kind != null) {
+                operand = ast.add(kind, token, operand);
+            }
+        }
+        return operand;
+    }
+
+    int term() {
+        int left = factor();
+        while (TokenType.isOperatorGroupTwo(type())) {
+            int token = current;
+            accept(type());
+            ast.link(left, factor());
+            left = ast.add(NodeKind.binaryOperator(tokens.type(token)), token, left);
+        }
+        return left;
+    }
+
+    int factor() {
+        int node;
+        switch (type()) {
+            case IDENTIFIER:    return variable();
+            case NUMBER:        node = ast.add(NodeKind.INTEGER, current, NONE);
+                                accept(TokenType.NUMBER);
+                                return node;
+            case TRUE:
+            case FALSE:         node = ast.add(NodeKind.BOOLEAN, current, NONE);
+                                accept(type());
+                                return node;
+            case LENGTH:        return arrayLength();
+            case LPAREN:        accept(TokenType.LPAREN);
+                                node = expression();
+                                accept(TokenType.RPAREN);
+                                return node;
+            case AT:            return functionCall();
+            default:   throw new SyntaxException("Expected factor. Got " + type().value, tokens.token(current));
+        }
+    }
+
+    int variable() {
+        int token = current;
+        accept(TokenType.IDENTIFIER);
+        int expression = NONE;
+        if (type() == TokenType.LSQUARE) {
+            accept(TokenType.LSQUARE);
+            expression = simpleExpression();
+            accept(TokenType.RSQUARE);
+        }
+        return ast.add(NodeKind.VARIABLE, token, expression);
+    }
+
+    int mainFunction() {
+        int token = current;
+        accept(TokenType.IDENTIFIER);
+        accept(TokenType.LPAREN);
+        accept(TokenType.RPAREN);
+        accept(TokenType.ARROW);
+        int typeNode = ast.add(NodeKind.VOID_TYPE, current, NONE);
+        accept(TokenType.VOID);
+        ast.link(typeNode, block());
+        return ast.add(NodeKind.FUNCTION_DEFINITION, token, typeNode);
+    }
+
+    int statement() {
+        if (TokenType.isCompoundStatementTerminal(type())) {
+            return compoundStatement();
+        }
+        int statement = simpleStatement();
+        accept(TokenType.SEMICOLON);
+        return statement;
+    }
+
+    int simpleStatement() {
+        switch (type()) {
+            case INT:
+            case CHAR:
+            case BOOLEAN:       return variableDefinition();
+            case IDENTIFIER:    return assignment();
+            case AT:            return functionCall();
+            case RETURN:        return returnStatement();
+            case PRINT:         return printStatement();
+            case READ:          return readStatement();
+            default: throw new SyntaxException("Expected simpleStatement. Got " + type().value, tokens.token(current));
+        }
+    }
+
+    int compoundStatement() {
+        return type() == TokenType.IF ? ifStatement() : whileStatement();
+    }
+
+    int ifStatement() {
+        int token = current;
+        accept(TokenType.IF);
+        accept(TokenType.LPAREN);
+        int condition = expression();
+        accept(TokenType.RPAREN);
+        int ifBlock = block();
+        ast.link(condition, ifBlock);
+        if (type() == TokenType.ELSE) {
+            accept(TokenType.ELSE);
+            ast.link(ifBlock, block());
+        }
+        return ast.add(NodeKind.IF_STATEMENT, token, condition);
+    }
+
+    int whileStatement() {
+        int token = current;
+        accept(TokenType.WHILE);
+        accept(TokenType.LPAREN);
+        int condition = expression();
+        accept(TokenType.RPAREN);
+        ast.link(condition, block());
+        return ast.add(NodeKind.WHILE_STATEMENT, token, condition);
+    }
+
+    int returnStatement() {
+        int token = current;
+        accept(TokenType.RETURN);
+        int assignable = NONE;
+        if (TokenType.isLiteralTerminal(type())) {
+            assignable = assignable();
+        }
+        return ast.add(NodeKind.RETURN_STATEMENT, token, assignable);
+    }
+
+    int printStatement() {
+        int token = current;
+        accept(TokenType.PRINT);
+        accept(TokenType.LPAREN);
+        int actualParameters = actualParameters();
+        accept(TokenType.RPAREN);
+        return ast.add(NodeKind.PRINT_STATEMENT, token, actualParameters);
+    }
+
+    int readStatement() {
+        int token = current;
+        int first = NONE;
+        int last = NONE;
+        accept(TokenType.READ);
+        accept(TokenType.LPAREN);
+        while (type() == TokenType.IDENTIFIER) {
+            last = append(last, variable());
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        accept(TokenType.RPAREN);
+        return ast.add(NodeKind.READ_STATEMENT, token, first);
+    }
+
+    int assignable() {
+        if (TokenType.isFactorTerminal(type())) {
+            return expression();
+        } else if (TokenType.isPrimitiveType(type())) {
+            return arrayInitialization();
+        } else if (TokenType.CHAR_LITERAL == type()) {
+            return characterLiteral();
+        }
+        return stringLiteral();
+    }
+
+    int characterLiteral() {
+        int node = ast.add(NodeKind.CHARACTER_LITERAL, current, NONE);
+        accept(TokenType.CHAR_LITERAL);
+        return node;
+    }
+
+    int stringLiteral() {
+        int node = ast.add(NodeKind.STRING_LITERAL, current, NONE);
+        accept(TokenType.STRING_LITERAL);
+        return node;
+    }
+
+    int arrayLength() {
+        int token = current;
+        accept(TokenType.LENGTH);
+        accept(TokenType.LPAREN);
+        int variable = variable();
+        accept(TokenType.RPAREN);
+        return ast.add(NodeKind.ARRAY_LENGTH, token, variable);
+    }
+}
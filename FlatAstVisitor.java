@@ -0,0 +1,11 @@
+package ast;
+
+/** Callbacks of {@link FlatAst#walk(FlatAstVisitor)}, called in source order. */
+public interface FlatAstVisitor {
+
+    /** Called before the children of node, returns false to skip them. */
+    boolean enter(FlatAst ast, int node);
+
+    /** Called after the children of node, also when they were skipped. */
+    void leave(FlatAst ast, int node);
+}
@@ -0,0 +1,315 @@
+package semantic;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import interpreter.ProgramException;
+import interpreter.ValueType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the body of one function, or the global initializers, against its own scope: a
+ * SymbolMap of the parameters and every variable defined anywhere in the body, in front of the
+ * shared GlobalScope. It only reads the tree and the GlobalScope, so checkers of different
+ * functions can run at the same time.
+ *
+ * The rules and messages are those of BytecodeCompiler, but a checker keeps going after an error.
+ * An expression whose type cannot be known after an error has a null type, which is not checked
+ * again so one mistake is reported once.
+ */
+final class FunctionChecker {
+
+    private final GlobalScope globals;
+    private final FlatAst ast;
+    /** Null for the global initializers. */
+    private final GlobalScope.Function function;
+    private final SymbolMap locals;
+    private final List<ProgramException> errors = new ArrayList<>();
+
+    FunctionChecker(GlobalScope globals, GlobalScope.Function function) {
+        this.globals = globals;
+        this.ast = globals.ast();
+        this.function = function;
+        this.locals = new SymbolMap(function == null ? 0 : function.parameterCount() + 8);
+    }
+
+    List<ProgramException> errors() {
+        return errors;
+    }
+
+    FunctionChecker check() {
+        if (function == null) {
+            for (int definition : globals.globalDefinitions()) {
+                statement(definition);
+            }
+            return this;
+        }
+        for (int i = 0; i < function.parameterCount(); i++) {
+            locals.putIfAbsent(function.parameterSymbol(i), function.parameterType(i).ordinal());
+        }
+        // a definition in a nested block does not start a new scope, see Declarations
+        for (int inner = ast.subtreeStart(function.body); inner < function.body; inner++) {
+            if (ast.kind(inner) == NodeKind.VARIABLE_DEFINITION) {
+                define(inner);
+            }
+        }
+        statement(function.body);
+        return this;
+    }
+
+    private void define(int definition) {
+        int type = ast.firstChild(definition);
+        int variable = ast.firstChild(ast.nextSibling(type));
+        ValueType valueType = ValueType.of(ast, type);
+        int previous = locals.putIfAbsent(globals.symbol(variable), valueType.ordinal());
+        if (previous >= 0 && previous != valueType.ordinal()) {
+            error(variable, "Variable " + ast.text(variable) + " redefined as " + valueType + ", was " + ValueType.of(previous));
+        }
+    }
+
+    private void statement(int node) {
+        switch (ast.kind(node)) {
+            case BLOCK:
+                for (int child = ast.firstChild(node); child != FlatAst.NONE; child = ast.nextSibling(child)) {
+                    statement(child);
+                }
+                break;
+            case VARIABLE_DEFINITION:
+                statement(ast.nextSibling(ast.firstChild(node)));
+                break;
+            case ASSIGNMENT: {
+                int variable = ast.firstChild(node);
+                int value = ast.nextSibling(variable);
+                if (ast.firstChild(variable) == FlatAst.NONE) {
+                    ValueType type = typeOf(variable);
+                    ValueType valueType = expression(value);
+                    if (type != null) {
+                        convert(valueType, type, value);
+                    }
+                } else {
+                    ValueType element = arrayElement(variable);
+                    ValueType valueType = scalar(expression(value), value);
+                    if (element != null) {
+                        convert(valueType, element, value);
+                    }
+                }
+                break;
+            }
+            case IF_STATEMENT: {
+                int condition = ast.firstChild(node);
+                int then = ast.nextSibling(condition);
+                int otherwise = ast.nextSibling(then);
+                scalar(expression(condition), condition);
+                statement(then);
+                if (otherwise != FlatAst.NONE) {
+                    statement(otherwise);
+                }
+                break;
+            }
+            case WHILE_STATEMENT: {
+                int condition = ast.firstChild(node);
+                scalar(expression(condition), condition);
+                statement(ast.nextSibling(condition));
+                break;
+            }
+            case RETURN_STATEMENT:
+                returnStatement(node);
+                break;
+            case PRINT_STATEMENT:
+                for (int argument = ast.firstChild(ast.firstChild(node)); argument != FlatAst.NONE; argument = ast.nextSibling(argument)) {
+                    if (expression(argument) == ValueType.VOID) {
+                        error(argument, "Void function used as a value");
+                    }
+                }
+                break;
+            case READ_STATEMENT:
+                for (int variable = ast.firstChild(node); variable != FlatAst.NONE; variable = ast.nextSibling(variable)) {
+                    if (ast.firstChild(variable) != FlatAst.NONE) {
+                        arrayElement(variable);
+                    } else {
+                        ValueType type = typeOf(variable);
+                        if (type != null && type.isArray()) {
+                            error(variable, "Cannot read into array " + ast.text(variable));
+                        }
+                    }
+                }
+                break;
+            case FUNCTION_CALL:
+                call(node);
+                break;
+            default:
+                error(node, "Unexpected " + ast.kind(node) + " statement");
+                break;
+        }
+    }
+
+    private void returnStatement(int node) {
+        int value = ast.firstChild(node);
+        if (function.returnType == ValueType.VOID) {
+            if (value != FlatAst.NONE) {
+                error(node, "Function " + function.name + " returns void");
+                expression(value);
+            }
+        } else if (value == FlatAst.NONE) {
+            error(node, "Missing return value in " + function.name);
+        } else {
+            convert(expression(value), function.returnType, value);
+        }
+    }
+
+    /** Static type of an expression or other assignable, null if an error hides it. */
+    private ValueType expression(int node) {
+        NodeKind kind = ast.kind(node);
+        int first = ast.firstChild(node);
+        switch (kind) {
+            case INTEGER:
+                return ValueType.INT;
+            case BOOLEAN:
+                return ValueType.BOOLEAN;
+            case CHARACTER_LITERAL:
+                return ValueType.CHAR;
+            case STRING_LITERAL:
+                return ValueType.CHAR_ARRAY;
+            case ARRAY_INIT:
+                scalar(expression(first), first);
+                return ValueType.of(ast.tokens().type(ast.token(node))).array();
+            case VARIABLE:
+                return first == FlatAst.NONE ? typeOf(node) : arrayElement(node);
+            case ARRAY_LENGTH:
+                if (ast.firstChild(first) != FlatAst.NONE) {
+                    error(node, "length() of something that is not an array");
+                } else {
+                    ValueType type = typeOf(first);
+                    if (type != null && !type.isArray()) {
+                        error(node, "length() of something that is not an array");
+                    }
+                }
+                return ValueType.INT;
+            case FUNCTION_CALL:
+                return call(node);
+            case NOT:
+                scalar(expression(first), first);
+                return ValueType.BOOLEAN;
+            case MINUS:
+                scalar(expression(first), first);
+                return ValueType.INT;
+            case AND:
+            case OR: {
+                int second = ast.nextSibling(first);
+                scalar(expression(first), first);
+                scalar(expression(second), second);
+                return ValueType.BOOLEAN;
+            }
+            default:
+                return binary(kind, node, first, ast.nextSibling(first));
+        }
+    }
+
+    private ValueType binary(NodeKind kind, int node, int left, int right) {
+        ValueType leftType = expression(left);
+        ValueType rightType = expression(right);
+        if (isArray(leftType) || isArray(rightType)) {
+            if (isArray(leftType) && isArray(rightType) && (kind == NodeKind.EQUALS || kind == NodeKind.NOT_EQUAL)) {
+                return ValueType.BOOLEAN;
+            }
+            if (leftType != null && rightType != null) {
+                error(node, kind + " applied to an array");
+            }
+            return null;
+        }
+        scalar(leftType, left);
+        scalar(rightType, right);
+        switch (kind) {
+            case ADDITION:
+            case SUBTRACTION:
+            case MULTIPLICATION:
+            case DIVISION:
+            case MOD:
+                return ValueType.INT;
+            case EQUALS:
+            case NOT_EQUAL:
+            case GREATER:
+            case GREATER_OR_EQUAL:
+            case LESS:
+            case LESS_OR_EQUAL:
+                return ValueType.BOOLEAN;
+            default:
+                error(node, "Unexpected " + kind + " expression");
+                return null;
+        }
+    }
+
+    /** Checks the arguments of a call even when the function or its arity is wrong. */
+    private ValueType call(int node) {
+        GlobalScope.Function callee = globals.function(globals.symbol(node));
+        int arguments = ast.firstChild(node);
+        int count = arguments == FlatAst.NONE ? 0 : ast.childCount(arguments);
+        if (callee == null) {
+            error(node, "Undefined function " + ast.text(node));
+        } else if (count != callee.parameterCount()) {
+            error(node, "Function " + callee.name + " takes " + callee.parameterCount() + " arguments, got " + count);
+        }
+        int i = 0;
+        for (int argument = count == 0 ? FlatAst.NONE : ast.firstChild(arguments); argument != FlatAst.NONE; argument = ast.nextSibling(argument)) {
+            ValueType type = expression(argument);
+            if (callee != null && count == callee.parameterCount()) {
+                convert(type, callee.parameterType(i++), argument);
+            }
+        }
+        return callee == null ? null : callee.returnType;
+    }
+
+    /** Checks that a value of type from can be stored as a value of type to. */
+    private void convert(ValueType from, ValueType to, int node) {
+        if (to.isArray()) {
+            if (from != null && from != to) {
+                error(node, "Expected " + to + ", got " + from);
+            }
+            return;
+        }
+        scalar(from, node);
+    }
+
+    private ValueType scalar(ValueType type, int node) {
+        if (type == ValueType.VOID) {
+            error(node, "Void function used as a value");
+            return null;
+        }
+        if (type != null && !type.isScalar()) {
+            error(node, "Expected a scalar, got " + type);
+            return null;
+        }
+        return type;
+    }
+
+    private ValueType typeOf(int variable) {
+        int symbol = globals.symbol(variable);
+        int local = locals.get(symbol);
+        ValueType type = local >= 0 ? ValueType.of(local) : globals.global(symbol);
+        if (type == null) {
+            error(variable, "Undefined variable " + ast.text(variable));
+        }
+        return type;
+    }
+
+    /** Checks an indexed variable and its index, returns the element type. */
+    private ValueType arrayElement(int variable) {
+        ValueType type = typeOf(variable);
+        if (type != null && !type.isArray()) {
+            error(variable, ast.text(variable) + " is not an array");
+            type = null;
+        }
+        int index = ast.firstChild(variable);
+        scalar(expression(index), index);
+        return type == null ? null : type.element();
+    }
+
+    private static boolean isArray(ValueType type) {
+        return type != null && type.isArray();
+    }
+
+    private void error(int node, String message) {
+        errors.add(ProgramException.at(ast, node, message));
+    }
+}
@@ -0,0 +1,212 @@
+package semantic;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import interpreter.ProgramException;
+import interpreter.ValueType;
+import lexer.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The functions and global variables of a program, indexed once by symbol id and never changed
+ * afterwards, so any number of threads may look names up in it. Names are resolved the way
+ * BytecodeCompiler resolves them: a global is visible in every function that does not have a
+ * local of the same name.
+ *
+ * The ids are those of the SymbolTable of the tokens, or of a table of its own when the tokens
+ * were lexed without one.
+ */
+public final class GlobalScope {
+
+    /** Signature of a function definition. */
+    public static final class Function {
+        public final String name;
+        public final int node;
+        public final int body;
+        public final ValueType returnType;
+        private final ValueType[] parameterTypes;
+        private final int[] parameterSymbols;
+        private final int[] parameterNodes;
+
+        Function(String name, int node, int body, ValueType returnType,
+                 ValueType[] parameterTypes, int[] parameterSymbols, int[] parameterNodes) {
+            this.name = name;
+            this.node = node;
+            this.body = body;
+            this.returnType = returnType;
+            this.parameterTypes = parameterTypes;
+            this.parameterSymbols = parameterSymbols;
+            this.parameterNodes = parameterNodes;
+        }
+
+        public int parameterCount() {
+            return parameterTypes.length;
+        }
+
+        public ValueType parameterType(int index) {
+            return parameterTypes[index];
+        }
+
+        int parameterSymbol(int index) {
+            return parameterSymbols[index];
+        }
+
+        /** VARIABLE node of a parameter. */
+        int parameterNode(int index) {
+            return parameterNodes[index];
+        }
+    }
+
+    private final FlatAst ast;
+    /** Symbol id of every name node, null when the tokens carry the ids themselves. */
+    private final int[] nodeSymbols;
+    /** Ordinal + 1 of the type of each global by symbol id, 0 for none. */
+    private final byte[] globals;
+    /** Index + 1 in functions of the function with each symbol id, 0 for none. */
+    private final int[] functionIndexes;
+    private final List<Function> functions;
+    private final List<Integer> globalDefinitions;
+    private final List<ProgramException> errors;
+
+    private GlobalScope(FlatAst ast, int[] nodeSymbols, byte[] globals, int[] functionIndexes,
+                        List<Function> functions, List<Integer> globalDefinitions, List<ProgramException> errors) {
+        this.ast = ast;
+        this.nodeSymbols = nodeSymbols;
+        this.globals = globals;
+        this.functionIndexes = functionIndexes;
+        this.functions = Collections.unmodifiableList(functions);
+        this.globalDefinitions = Collections.unmodifiableList(globalDefinitions);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Indexes the definitions of the program body of ast. Functions defined twice and globals
+     * redefined with another type are recorded in errors(), the first definition is kept.
+     */
+    public static GlobalScope of(FlatAst ast) {
+        int root = ast.root();
+        if (root == FlatAst.NONE || ast.kind(root) != NodeKind.PROGRAM_BODY) {
+            throw new IllegalArgumentException("Not a program");
+        }
+        int[] nodeSymbols = null;
+        SymbolTable symbols = ast.tokens().symbols();
+        if (symbols == null) {
+            symbols = new SymbolTable();
+            nodeSymbols = new int[ast.size()];
+            for (int node = 0; node < ast.size(); node++) {
+                nodeSymbols[node] = isName(ast.kind(node)) ? symbols.intern(ast.text(node)) : -1;
+            }
+        }
+        byte[] globals = new byte[symbols.size()];
+        int[] functionIndexes = new int[symbols.size()];
+        List<Function> functions = new ArrayList<>();
+        List<Integer> globalDefinitions = new ArrayList<>();
+        List<ProgramException> errors = new ArrayList<>();
+        for (int node = ast.firstChild(root); node != FlatAst.NONE; node = ast.nextSibling(node)) {
+            switch (ast.kind(node)) {
+                case FUNCTION_DEFINITION: {
+                    Function function = function(ast, nodeSymbols, node, errors);
+                    int symbol = symbol(ast, nodeSymbols, node);
+                    if (functionIndexes[symbol] != 0) {
+                        errors.add(ProgramException.at(ast, node, "Function " + function.name + " is already defined"));
+                    } else {
+                        functions.add(function);
+                        functionIndexes[symbol] = functions.size();
+                    }
+                    break;
+                }
+                case VARIABLE_DEFINITION: {
+                    int type = ast.firstChild(node);
+                    int variable = ast.firstChild(ast.nextSibling(type));
+                    int symbol = symbol(ast, nodeSymbols, variable);
+                    ValueType valueType = ValueType.of(ast, type);
+                    if (globals[symbol] == 0) {
+                        globals[symbol] = (byte) (valueType.ordinal() + 1);
+                    } else if (globals[symbol] != valueType.ordinal() + 1) {
+                        errors.add(ProgramException.at(ast, variable, "Variable " + ast.text(variable) + " redefined as "
+                                + valueType + ", was " + ValueType.of(globals[symbol] - 1)));
+                    }
+                    globalDefinitions.add(node);
+                    break;
+                }
+                default:
+                    errors.add(ProgramException.at(ast, node, "Unexpected " + ast.kind(node) + " in program body"));
+                    break;
+            }
+        }
+        return new GlobalScope(ast, nodeSymbols, globals, functionIndexes, functions, globalDefinitions, errors);
+    }
+
+    private static Function function(FlatAst ast, int[] nodeSymbols, int node, List<ProgramException> errors) {
+        int child = ast.firstChild(node);
+        int parameters = FlatAst.NONE;
+        if (ast.kind(child) == NodeKind.FORMAL_PARAMETERS) {
+            parameters = child;
+            child = ast.nextSibling(child);
+        }
+        int count = parameters == FlatAst.NONE ? 0 : ast.childCount(parameters);
+        ValueType[] types = new ValueType[count];
+        int[] symbols = new int[count];
+        int[] nodes = new int[count];
+        int i = 0;
+        for (int typed = count == 0 ? FlatAst.NONE : ast.firstChild(parameters); typed != FlatAst.NONE; typed = ast.nextSibling(typed)) {
+            int type = ast.firstChild(typed);
+            nodes[i] = ast.nextSibling(type);
+            types[i] = ValueType.of(ast, type);
+            symbols[i] = symbol(ast, nodeSymbols, nodes[i]);
+            for (int j = 0; j < i; j++) {
+                if (symbols[j] == symbols[i]) {
+                    errors.add(ProgramException.at(ast, nodes[i], "Duplicate parameter " + ast.text(nodes[i])));
+                }
+            }
+            i++;
+        }
+        return new Function(ast.text(node), node, ast.nextSibling(child), ValueType.of(ast, child),
+                types, symbols, nodes);
+    }
+
+    private static boolean isName(NodeKind kind) {
+        return kind == NodeKind.VARIABLE || kind == NodeKind.FUNCTION_DEFINITION || kind == NodeKind.FUNCTION_CALL;
+    }
+
+    private static int symbol(FlatAst ast, int[] nodeSymbols, int node) {
+        return nodeSymbols != null ? nodeSymbols[node] : ast.tokens().symbolId(ast.token(node));
+    }
+
+    public FlatAst ast() {
+        return ast;
+    }
+
+    /** Symbol id of a VARIABLE, FUNCTION_DEFINITION or FUNCTION_CALL node. */
+    public int symbol(int node) {
+        return symbol(ast, nodeSymbols, node);
+    }
+
+    /** Type of the global with symbol id, null if there is none. */
+    public ValueType global(int symbol) {
+        return symbol < globals.length && globals[symbol] != 0 ? ValueType.of(globals[symbol] - 1) : null;
+    }
+
+    /** Function with symbol id, null if there is none. */
+    public Function function(int symbol) {
+        return symbol < functionIndexes.length && functionIndexes[symbol] != 0 ? functions.get(functionIndexes[symbol] - 1) : null;
+    }
+
+    /** Functions in program order, the main function last. */
+    public List<Function> functions() {
+        return functions;
+    }
+
+    /** VARIABLE_DEFINITION nodes of the globals, in program order. */
+    public List<Integer> globalDefinitions() {
+        return globalDefinitions;
+    }
+
+    /** Errors found while indexing the definitions. */
+    public List<ProgramException> errors() {
+        return errors;
+    }
+}
@@ -0,0 +1,18 @@
+package token;
+
+/**
+ * IDENTIFIER token carrying the id its name got in the lexer's SymbolTable.
+ */
+public class IdentifierToken extends TokenImpl {
+
+    private final int symbolId;
+
+    public IdentifierToken(String text, int symbolId, int position, int line) {
+        super(TokenType.IDENTIFIER, text, position, line);
+        this.symbolId = symbolId;
+    }
+
+    public int getSymbolId() {
+        return symbolId;
+    }
+}
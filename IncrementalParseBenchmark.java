@@ -0,0 +1,65 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.utils.CompilerTestHelper;
+import lexer.LexerImpl;
+import parser.IncrementalParser;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+/**
+ * Types into the middle function of generated files of growing size and compares the latency of
+ * IncrementalParser.reparse() with a full lex and parse of the same text.
+ */
+public class IncrementalParseBenchmark {
+
+    private static final int WARMUP_EDITS = 2000;
+    private static final int MEASURED_EDITS = 2000;
+    private static final String TYPED = "1 + ";
+
+    public static void main(String[] args) {
+        int[] sizes = { 1000, 4000, 16000, 64000 };
+        for (int functions : sizes) {
+            run(functions);
+        }
+    }
+
+    private static void run(int functions) {
+        String text = new ProgramGenerator(42).manyFunctions(functions);
+        int header = text.indexOf("    f" + functions / 2 + "(");
+        int offset = text.indexOf("int c = ", header) + "int c = ".length();
+
+        IncrementalParser parser = new IncrementalParser();
+        AST ast = parser.parse(text);
+        ast = parser.reparse(ast, offset, 0, TYPED);
+        String edited = text.substring(0, offset) + TYPED + text.substring(offset);
+        String expected = CompilerTestHelper.getASTasString(new ParserImpl(new LexerImpl(new CharArraySource(edited))));
+        if (!expected.equals(ast.toString())) {
+            throw new IllegalStateException("Incremental parse differs from a full parse");
+        }
+        ast = parser.reparse(ast, offset, TYPED.length(), "");
+
+        for (int i = 0; i < WARMUP_EDITS; i++) {
+            ast = edit(parser, ast, offset, i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_EDITS; i++) {
+            ast = edit(parser, ast, offset, i);
+        }
+        double incremental = (System.nanoTime() - start) / 1e3 / MEASURED_EDITS;
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < 10; run++) {
+            long fullStart = System.nanoTime();
+            new ParserImpl(new LexerImpl(new CharArraySource(text))).entryRule();
+            best = Math.min(best, System.nanoTime() - fullStart);
+        }
+        System.out.printf("%6d functions %9d chars  reparse %8.1f us (%d reused)  full parse %9.1f us%n",
+                functions, text.length(), incremental, parser.reusedDefinitions(), best / 1e3);
+    }
+
+    /** Inserts TYPED on even edits and removes it again on odd ones. */
+    private static AST edit(IncrementalParser parser, AST ast, int offset, int i) {
+        return i % 2 == 0 ? parser.reparse(ast, offset, 0, TYPED) : parser.reparse(ast, offset, TYPED.length(), "");
+    }
+}
@@ -0,0 +1,244 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.ast.ProgramBodyNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import lexer.LexerImpl;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import source.CharArraySource;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the text, tokens and top-level definitions of one document between edits, all updated in
+ * place. An edit relexes from the start of the definition it touches until the new tokens line up
+ * with the old ones again, and only the definitions in between are parsed. Definitions after the edit are reused as long as the
+ * edit did not change the number of lines, otherwise their tokens are shifted and they are parsed
+ * again, because their nodes hold tokens with line numbers. Every result is the same AST, or the
+ * same exception, as a full ParserImpl parse of the new text.
+ * <p>
+ * Offsets are into the text with line terminators normalized to '\n'.
+ */
+public class IncrementalParser {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private char[] input = { '\n' };
+    private int inputLength = 1;
+    private TokenBuffer tokens;
+    private int[] bounds;
+    private GlobalDefinitionNode[] definitions;
+    private AST ast;
+    private int reused;
+    private int reparsed;
+
+    /** Replaces the document with text and parses it from scratch. */
+    public AST parse(String text) {
+        String normalized = normalize(text);
+        char[] chars = new char[normalized.length() + 1];
+        normalized.getChars(0, normalized.length(), chars, 0);
+        chars[normalized.length()] = '\n';
+        input = chars;
+        inputLength = chars.length;
+        try {
+            return parseAll();
+        } catch (LexicalException e) {
+            return parseStreaming();
+        }
+    }
+
+    /**
+     * Applies an edit that replaced removedLength chars at offset with insertedText and returns the
+     * new AST. previous must be the last result of this parser, or null if that parse failed.
+     */
+    public AST reparse(AST previous, int offset, int removedLength, String insertedText) {
+        if (previous != ast) {
+            throw new IllegalArgumentException("previous is not the last AST returned by this parser");
+        }
+        int documentLength = inputLength - 1;
+        if (offset < 0 || removedLength < 0 || offset + removedLength > documentLength) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removedLength
+                    + " outside of document of length " + documentLength);
+        }
+        String inserted = normalize(insertedText);
+        int newLength = inputLength - removedLength + inserted.length();
+        if (newLength > input.length) {
+            input = Arrays.copyOf(input, Math.max(newLength, input.length * 2));
+        }
+        System.arraycopy(input, offset + removedLength, input, offset + inserted.length(),
+                inputLength - offset - removedLength);
+        inserted.getChars(0, inserted.length(), input, offset);
+        inputLength = newLength;
+        try {
+            if (bounds == null) {
+                return parseAll();
+            }
+            return relex(offset, offset + removedLength, inserted.length() - removedLength);
+        } catch (LexicalException e) {
+            return parseStreaming();
+        }
+    }
+
+    public AST ast() {
+        return ast;
+    }
+
+    /** Definitions taken over unchanged from the previous AST by the last call. */
+    public int reusedDefinitions() {
+        return reused;
+    }
+
+    /** Definitions parsed by the last call. */
+    public int reparsedDefinitions() {
+        return reparsed;
+    }
+
+    private AST parseAll() {
+        clear();
+        return parseTokens(new PackedLexer(input, inputLength, 0, 1, 0).withSymbols(symbols).tokenize());
+    }
+
+    /**
+     * Parses with LexerImpl, which lexes only as far as the parser reads, so a syntax error before a
+     * lexical one is reported the way a full parse reports it.
+     */
+    private AST parseStreaming() {
+        clear();
+        return ast = new ParserImpl(new LexerImpl(new CharArraySource(input, inputLength))).entryRule();
+    }
+
+    private AST parseTokens(TokenBuffer all) {
+        clear();
+        int[] regions = TopLevelRegions.ofProgram(all);
+        if (regions == null) {
+            return ast = new ParserImpl(all.lexer()).entryRule();
+        }
+        GlobalDefinitionNode[] parsed = new GlobalDefinitionNode[regions.length - 1];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = ParallelParser.parseRegion(all, regions[i], regions[i + 1]);
+            if (parsed[i] == null) {
+                return ast = new ParserImpl(all.lexer()).entryRule();
+            }
+        }
+        reused = 0;
+        reparsed = parsed.length;
+        return commit(all, regions, parsed);
+    }
+
+    private AST relex(int editStart, int oldEditEnd, int delta) {
+        int[] bounds = this.bounds;
+        GlobalDefinitionNode[] definitions = this.definitions;
+        int region = regionAt(editStart);
+        if (region < 0) {
+            return parseAll();
+        }
+        TokenBuffer all = tokens;
+        int restart = bounds[region];
+        int restartOffset = all.start(restart);
+        TokenBuffer fresh = new TokenBuffer(input, symbols, 64);
+        PackedLexer lexer = new PackedLexer(input, inputLength, restartOffset, all.line(restart),
+                restartOffset - all.position(restart) + 1).withSymbols(symbols);
+
+        clear();
+        int candidate = region + 1;
+        int synced = -1;
+        while (lexer.next(fresh)) {
+            int index = fresh.size() - 1;
+            int start = fresh.start(index);
+            while (candidate < bounds.length && (all.start(bounds[candidate]) < oldEditEnd
+                    || all.start(bounds[candidate]) + delta < start)) {
+                candidate++;
+            }
+            if (candidate < bounds.length && all.start(bounds[candidate]) + delta == start
+                    && all.position(bounds[candidate]) == fresh.position(index)) {
+                synced = index;
+                break;
+            }
+        }
+
+        int lineDelta = 0;
+        int tailRegions = 0;
+        int tokenDelta = 0;
+        if (synced >= 0) {
+            int match = bounds[candidate];
+            lineDelta = fresh.line(synced) - all.line(match);
+            tailRegions = bounds.length - 1 - candidate;
+            tokenDelta = restart + synced - match;
+            all.splice(restart, match + 1, fresh, input, delta, lineDelta);
+        } else {
+            all.splice(restart, all.size(), fresh, input, 0, 0);
+        }
+        int[] middle = TopLevelRegions.split(all, restart, synced >= 0 ? restart + synced : all.size() - 1);
+        if (middle == null) {
+            return parseTokens(all);
+        }
+
+        int[] regions = new int[region + middle.length + tailRegions];
+        System.arraycopy(bounds, 0, regions, 0, region);
+        System.arraycopy(middle, 0, regions, region, middle.length);
+        for (int i = 0; i < tailRegions; i++) {
+            regions[region + middle.length + i] = bounds[candidate + 1 + i] + tokenDelta;
+        }
+        if (!TopLevelRegions.isProgram(all, regions)) {
+            return parseTokens(all);
+        }
+
+        GlobalDefinitionNode[] parsed = new GlobalDefinitionNode[regions.length - 1];
+        int reusedCount = region;
+        System.arraycopy(definitions, 0, parsed, 0, region);
+        int firstTail = region + middle.length - 1;
+        for (int i = region; i < parsed.length; i++) {
+            if (i >= firstTail && lineDelta == 0) {
+                parsed[i] = definitions[candidate + i - firstTail];
+                reusedCount++;
+                continue;
+            }
+            parsed[i] = ParallelParser.parseRegion(all, regions[i], regions[i + 1]);
+            if (parsed[i] == null) {
+                return parseTokens(all);
+            }
+        }
+        reused = reusedCount;
+        reparsed = parsed.length - reusedCount;
+        return commit(all, regions, parsed);
+    }
+
+    /** Index of the last region starting at or before offset, or -1 inside the program header. */
+    private int regionAt(int offset) {
+        int low = 0;
+        int high = bounds.length - 2;
+        if (offset < tokens.start(bounds[0])) {
+            return -1;
+        }
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (tokens.start(bounds[middle]) <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private AST commit(TokenBuffer all, int[] regions, GlobalDefinitionNode[] parsed) {
+        tokens = all;
+        bounds = regions;
+        definitions = parsed;
+        return ast = new ProgramBodyNode(null, Arrays.asList(parsed));
+    }
+
+    /** Drops the incremental state, so a failed parse leaves the next edit to start from scratch. */
+    private void clear() {
+        tokens = null;
+        bounds = null;
+        definitions = null;
+        ast = null;
+    }
+
+    private static String normalize(String text) {
+        return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+}
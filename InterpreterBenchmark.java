@@ -0,0 +1,99 @@
+package benchmark;
+
+import ast.FlatAst;
+import interpreter.AstInterpreter;
+import interpreter.Bytecode;
+import interpreter.BytecodeCompiler;
+import interpreter.ClassFileBackend;
+import interpreter.ProgramIO;
+import interpreter.VirtualMachine;
+import lexer.PackedLexer;
+import parser.FlatAstParser;
+import source.CharArraySource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recursive Fibonacci on the AstInterpreter, on the bytecode VirtualMachine and compiled to a JVM
+ * class by ClassFileBackend. All must print the same value, which is checked against a plain Java
+ * loop, then each is timed over a few runs.
+ */
+public class InterpreterBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final String FIB =
+            "program {\n"
+            + "    fib(int n) -> int {\n"
+            + "        if (n < 2) {\n"
+            + "            return n;\n"
+            + "        }\n"
+            + "        return @fib(n - 1) + @fib(n - 2);\n"
+            + "    }\n"
+            + "    main() -> void {\n"
+            + "        int n = 0;\n"
+            + "        read(n);\n"
+            + "        print(@fib(n));\n"
+            + "    }\n"
+            + "}\n";
+
+    interface Engine {
+        void run(ProgramIO io);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 27;
+        FlatAst ast = new FlatAstParser(new PackedLexer(new CharArraySource(FIB)).tokenize()).parse();
+        long start = System.nanoTime();
+        Bytecode bytecode = BytecodeCompiler.compile(ast);
+        System.out.printf("fib(%d), compiled to bytecode in %.3f ms%n", n, (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        ClassFileBackend compiled = ClassFileBackend.compile(bytecode);
+        System.out.printf("JVM class of %d bytes defined in %.3f ms%n", compiled.classFileSize(),
+                (System.nanoTime() - start) / 1e6);
+
+        String expected = String.valueOf(fib(n));
+        long walk = measure("AST interpreter", n, expected, io -> new AstInterpreter(ast, io).run());
+        long vm = measure("bytecode VM", n, expected, io -> new VirtualMachine(bytecode, io).run());
+        long jit = measure("JVM class", n, expected, compiled::run);
+        System.out.printf("speedup over the AST interpreter: bytecode VM %.1fx, JVM class %.1fx%n",
+                (double) walk / vm, (double) walk / jit);
+    }
+
+    private static long measure(String label, int n, String expected, Engine engine) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ProgramIO io = new ProgramIO(new BufferedReader(new StringReader(n + "\n")),
+                    new PrintStream(output, true));
+            long start = System.nanoTime();
+            engine.run(io);
+            long elapsed = System.nanoTime() - start;
+            String printed = new String(output.toByteArray(), StandardCharsets.UTF_8).trim();
+            if (!printed.equals(expected)) {
+                throw new IllegalStateException(label + " printed " + printed + ", expected " + expected);
+            }
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        System.out.printf("%-16s %10.2f ms%n", label, best / 1e6);
+        return best;
+    }
+
+    private static int fib(int n) {
+        int a = 0;
+        int b = 1;
+        for (int i = 0; i < n; i++) {
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,610 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.ArrayInitNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.AssignableNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.AdditionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.SubtractionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.AndNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.OrNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.DivisionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.ModNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.MultiplicationNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.relational_operators.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.MinusNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.NotNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.FunctionDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.VariableDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.statement.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.type.TypeNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.type.VoidTypeNode;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ParserImpl without recursion for nested constructs. Every rule that can nest is split into steps
+ * that run from an explicit stack of continuations, with partial nodes kept on a value stack, so the
+ * nesting depth is bounded by heap instead of -Xss. Tokens are consumed in the same order as by
+ * ParserImpl, which gives the same tree and the same syntax errors. Brackets may be nested at most
+ * maxDepth levels deep.
+ */
+public class IterativeParser extends ParserImpl {
+
+    public static final int DEFAULT_MAX_DEPTH = 1 << 20;
+
+    private static final int ADD_TO_LIST = 0;
+    private static final int DEFINITIONS = 1;
+    private static final int FUNCTION_END = 2;
+    private static final int GLOBAL_VARIABLE_END = 3;
+    private static final int BLOCK_START = 4;
+    private static final int BLOCK_LOOP = 5;
+    private static final int STATEMENT = 6;
+    private static final int SEMICOLON = 7;
+    private static final int IF_AFTER_CONDITION = 8;
+    private static final int IF_AFTER_THEN = 9;
+    private static final int IF_END = 10;
+    private static final int WHILE_AFTER_CONDITION = 11;
+    private static final int WHILE_END = 12;
+    private static final int RETURN_END = 13;
+    private static final int PRINT_END = 14;
+    private static final int READ_LOOP = 15;
+    private static final int VARIABLE_DEFINITION_END = 16;
+    private static final int ASSIGNMENT_START = 17;
+    private static final int ASSIGNMENT_AFTER_VARIABLE = 18;
+    private static final int ASSIGNMENT_END = 19;
+    private static final int VARIABLE_START = 20;
+    private static final int VARIABLE_END = 21;
+    private static final int ARRAY_INIT_START = 22;
+    private static final int ARRAY_INIT_END = 23;
+    private static final int FUNCTION_CALL_START = 24;
+    private static final int FUNCTION_CALL_END = 25;
+    private static final int ACTUAL_PARAMETERS_START = 26;
+    private static final int ACTUAL_PARAMETERS_LOOP = 27;
+    private static final int ASSIGNABLE = 28;
+    private static final int EXPRESSION = 29;
+    private static final int RELATIONAL = 30;
+    private static final int RELATIONAL_END = 31;
+    private static final int SIMPLE_EXPRESSION = 32;
+    private static final int ADDITIVE_LOOP = 33;
+    private static final int ADDITIVE_END = 34;
+    private static final int SIGNED_TERM = 35;
+    private static final int SIGNED_TERM_END = 36;
+    private static final int TERM = 37;
+    private static final int MULTIPLICATIVE_LOOP = 38;
+    private static final int MULTIPLICATIVE_END = 39;
+    private static final int FACTOR = 40;
+    private static final int PARENTHESES_END = 41;
+    private static final int ARRAY_LENGTH_END = 42;
+
+    private final int maxDepth;
+    private int depth;
+    private int[] steps = new int[64];
+    private int stepCount;
+    private Object[] values = new Object[64];
+    private int valueCount;
+
+    public IterativeParser(Lexer<TokenType> lexer) {
+        this(lexer, DEFAULT_MAX_DEPTH);
+    }
+
+    public IterativeParser(Lexer<TokenType> lexer, int maxDepth) {
+        super(lexer);
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public AST entryRule() {
+        accept(TokenType.PROGRAM);
+        accept(TokenType.LBRACKET);
+        push(new ArrayList<GlobalDefinitionNode>());
+        step(DEFINITIONS);
+        run();
+        @SuppressWarnings("unchecked")
+        List<GlobalDefinitionNode> globalDefinitions = (List<GlobalDefinitionNode>) pop();
+        currentNode = new ProgramBodyNode(null, globalDefinitions);
+        accept(TokenType.RBRACKET);
+        return currentNode;
+    }
+
+    /** Tracks bracket nesting on top of ParserImpl.accept(). */
+    @Override
+    void accept(TokenType tokenType) {
+        Token<TokenType> token = currentToken;
+        super.accept(tokenType);
+        switch (tokenType) {
+            case LPAREN:
+            case LSQUARE:
+            case LBRACKET:
+                if (++depth > maxDepth) {
+                    throw new SyntaxException("Nesting deeper than " + maxDepth + " levels", token);
+                }
+                break;
+            case RPAREN:
+            case RSQUARE:
+            case RBRACKET:
+                depth--;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void step(int step) {
+        if (stepCount == steps.length) {
+            steps = Arrays.copyOf(steps, stepCount * 2);
+        }
+        steps[stepCount++] = step;
+    }
+
+    /** Schedules first, then second. */
+    private void steps(int first, int second) {
+        step(second);
+        step(first);
+    }
+
+    /** Schedules first, then second, then third. */
+    private void steps(int first, int second, int third) {
+        step(third);
+        step(second);
+        step(first);
+    }
+
+    private void push(Object value) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = value;
+    }
+
+    private Object pop() {
+        Object value = values[--valueCount];
+        values[valueCount] = null;
+        return value;
+    }
+
+    private Object peek() {
+        return values[valueCount - 1];
+    }
+
+    private TokenType tokenType() {
+        return currentToken.getTokenType();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run() {
+        while (stepCount > 0) {
+            int step = steps[--stepCount];
+            switch (step) {
+                case ADD_TO_LIST: {
+                    Object node = pop();
+                    ((List<Object>) peek()).add(node);
+                    break;
+                }
+                case DEFINITIONS:           definitions(); break;
+                case FUNCTION_END: {
+                    BlockNode block = (BlockNode) pop();
+                    TypeNode typeNode = (TypeNode) pop();
+                    FormalParameterNode formalParameters = (FormalParameterNode) pop();
+                    push(new FunctionDefinitionNode((Token) pop(), formalParameters, typeNode, block));
+                    break;
+                }
+                case GLOBAL_VARIABLE_END:   accept(TokenType.SEMICOLON); break;
+                case BLOCK_START:
+                    accept(TokenType.LBRACKET);
+                    push(new ArrayList<Statement>());
+                    step(BLOCK_LOOP);
+                    break;
+                case BLOCK_LOOP:
+                    if (TokenType.isStatementTerminal(tokenType())) {
+                        steps(STATEMENT, ADD_TO_LIST, BLOCK_LOOP);
+                    } else {
+                        accept(TokenType.RBRACKET);
+                        push(new BlockNode(null, (List<Statement>) pop()));
+                    }
+                    break;
+                case STATEMENT:             statementStep(); break;
+                case SEMICOLON:             accept(TokenType.SEMICOLON); break;
+                case IF_AFTER_CONDITION:
+                    accept(TokenType.RPAREN);
+                    steps(BLOCK_START, IF_AFTER_THEN);
+                    break;
+                case IF_AFTER_THEN:
+                    if (tokenType() == TokenType.ELSE) {
+                        accept(TokenType.ELSE);
+                        steps(BLOCK_START, IF_END);
+                    } else {
+                        push(null);
+                        step(IF_END);
+                    }
+                    break;
+                case IF_END: {
+                    BlockNode elseStatement = (BlockNode) pop();
+                    BlockNode ifStatement = (BlockNode) pop();
+                    ExpressionNode expressionNode = (ExpressionNode) pop();
+                    push(new IfStatementNode((Token) pop(), expressionNode, ifStatement, elseStatement));
+                    break;
+                }
+                case WHILE_AFTER_CONDITION:
+                    accept(TokenType.RPAREN);
+                    steps(BLOCK_START, WHILE_END);
+                    break;
+                case WHILE_END: {
+                    BlockNode blockNode = (BlockNode) pop();
+                    ExpressionNode expressionNode = (ExpressionNode) pop();
+                    push(new WhileStatementNode((Token) pop(), expressionNode, blockNode));
+                    break;
+                }
+                case RETURN_END: {
+                    AssignableNode assignable = (AssignableNode) pop();
+                    push(new ReturnStatementNode((Token) pop(), assignable));
+                    break;
+                }
+                case PRINT_END: {
+                    ActualParameterNode actualParameters = (ActualParameterNode) pop();
+                    accept(TokenType.RPAREN);
+                    push(new PrintStatementNode((Token) pop(), actualParameters));
+                    break;
+                }
+                case READ_LOOP:
+                    if (tokenType() == TokenType.IDENTIFIER) {
+                        steps(VARIABLE_START, ADD_TO_LIST, READ_LOOP);
+                    } else {
+                        accept(TokenType.RPAREN);
+                        List<VariableNode> variables = (List<VariableNode>) pop();
+                        push(new ReadStatementNode((Token) pop(), variables));
+                    }
+                    break;
+                case VARIABLE_DEFINITION_END: {
+                    AssignmentNode assignment = (AssignmentNode) pop();
+                    push(new VariableDefinitionNode(null, (TypeNode) pop(), assignment));
+                    break;
+                }
+                case ASSIGNMENT_START:      steps(VARIABLE_START, ASSIGNMENT_AFTER_VARIABLE); break;
+                case ASSIGNMENT_AFTER_VARIABLE:
+                    push(currentToken);
+                    accept(TokenType.BECOMES);
+                    if (TokenType.isPrimitiveType(tokenType())) {
+                        steps(ARRAY_INIT_START, ASSIGNMENT_END);
+                    } else if (TokenType.CHAR_LITERAL == tokenType()) {
+                        characterLiteral();
+                        push(currentNode);
+                        step(ASSIGNMENT_END);
+                    } else if (TokenType.STRING_LITERAL == tokenType()) {
+                        stringLiteral();
+                        push(currentNode);
+                        step(ASSIGNMENT_END);
+                    } else {
+                        steps(EXPRESSION, ASSIGNMENT_END);
+                    }
+                    break;
+                case ASSIGNMENT_END: {
+                    AssignableNode assignable = (AssignableNode) pop();
+                    Token token = (Token) pop();
+                    push(new AssignmentNode(token, (VariableNode) pop(), assignable));
+                    break;
+                }
+                case VARIABLE_START: {
+                    Token token = currentToken;
+                    accept(TokenType.IDENTIFIER);
+                    if (tokenType() == TokenType.LSQUARE) {
+                        accept(TokenType.LSQUARE);
+                        push(token);
+                        steps(SIMPLE_EXPRESSION, VARIABLE_END);
+                    } else {
+                        push(new VariableNode(token, null));
+                    }
+                    break;
+                }
+                case VARIABLE_END: {
+                    ExpressionNode expression = (ExpressionNode) pop();
+                    accept(TokenType.RSQUARE);
+                    push(new VariableNode((Token) pop(), expression));
+                    break;
+                }
+                case ARRAY_INIT_START:
+                    push(currentToken);
+                    accept(tokenType());
+                    accept(TokenType.LSQUARE);
+                    steps(EXPRESSION, ARRAY_INIT_END);
+                    break;
+                case ARRAY_INIT_END: {
+                    ExpressionNode expression = (ExpressionNode) pop();
+                    accept(TokenType.RSQUARE);
+                    push(new ArrayInitNode((Token) pop(), expression));
+                    break;
+                }
+                case FUNCTION_CALL_START: {
+                    accept(TokenType.AT);
+                    Token token = currentToken;
+                    accept(TokenType.IDENTIFIER);
+                    accept(TokenType.LPAREN);
+                    push(token);
+                    if (TokenType.isLiteralTerminal(tokenType())) {
+                        steps(ACTUAL_PARAMETERS_START, FUNCTION_CALL_END);
+                    } else {
+                        push(null);
+                        step(FUNCTION_CALL_END);
+                    }
+                    break;
+                }
+                case FUNCTION_CALL_END: {
+                    ActualParameterNode actualParameters = (ActualParameterNode) pop();
+                    accept(TokenType.RPAREN);
+                    push(new FunctionCall((Token) pop(), actualParameters));
+                    break;
+                }
+                case ACTUAL_PARAMETERS_START:
+                    push(new ArrayList<AssignableNode>());
+                    steps(ASSIGNABLE, ADD_TO_LIST, ACTUAL_PARAMETERS_LOOP);
+                    break;
+                case ACTUAL_PARAMETERS_LOOP:
+                    if (tokenType() == TokenType.COMMA) {
+                        accept(TokenType.COMMA);
+                        steps(ASSIGNABLE, ADD_TO_LIST, ACTUAL_PARAMETERS_LOOP);
+                    } else {
+                        push(new ActualParameterNode(null, (List<AssignableNode>) pop()));
+                    }
+                    break;
+                case ASSIGNABLE:            assignableStep(); break;
+                case EXPRESSION:            steps(SIMPLE_EXPRESSION, RELATIONAL); break;
+                case RELATIONAL:
+                    if (TokenType.isRelationalOperator(tokenType())) {
+                        push(currentToken);
+                        accept(tokenType());
+                        steps(SIMPLE_EXPRESSION, RELATIONAL_END);
+                    }
+                    break;
+                case RELATIONAL_END: {
+                    ExpressionNode right = (ExpressionNode) pop();
+                    Token<TokenType> token = (Token<TokenType>) pop();
+                    push(relationalOperator(token, (ExpressionNode) pop(), right));
+                    break;
+                }
+                case SIMPLE_EXPRESSION:     steps(SIGNED_TERM, ADDITIVE_LOOP); break;
+                case ADDITIVE_LOOP:
+                    if (TokenType.isOperatorGroupOne(tokenType())) {
+                        push(currentToken);
+                        accept(tokenType());
+                        steps(SIGNED_TERM, ADDITIVE_END);
+                    }
+                    break;
+                case ADDITIVE_END: {
+                    ExpressionNode right = (ExpressionNode) pop();
+                    Token<TokenType> token = (Token<TokenType>) pop();
+                    push(additiveOperator(token, (ExpressionNode) pop(), right));
+                    step(ADDITIVE_LOOP);
+                    break;
+                }
+                case SIGNED_TERM:
+                    if (TokenType.isUnaryOperator(tokenType())) {
+                        push(currentToken);
+                        accept(tokenType());
+                        steps(TERM, SIGNED_TERM_END);
+                    } else {
+                        step(TERM);
+                    }
+                    break;
+                case SIGNED_TERM_END: {
+                    ExpressionNode operand = (ExpressionNode) pop();
+                    push(unaryOperator((Token<TokenType>) pop(), operand));
+                    break;
+                }
+                case TERM:                  steps(FACTOR, MULTIPLICATIVE_LOOP); break;
+                case MULTIPLICATIVE_LOOP:
+                    if (TokenType.isOperatorGroupTwo(tokenType())) {
+                        push(currentToken);
+                        accept(tokenType());
+                        steps(FACTOR, MULTIPLICATIVE_END);
+                    }
+                    break;
+                case MULTIPLICATIVE_END: {
+                    ExpressionNode right = (ExpressionNode) pop();
+                    Token<TokenType> token = (Token<TokenType>) pop();
+                    push(multiplicativeOperator(token, (ExpressionNode) pop(), right));
+                    step(MULTIPLICATIVE_LOOP);
+                    break;
+                }
+                case FACTOR:                factorStep(); break;
+                case PARENTHESES_END:       accept(TokenType.RPAREN); break;
+                case ARRAY_LENGTH_END: {
+                    VariableNode variable = (VariableNode) pop();
+                    accept(TokenType.RPAREN);
+                    push(new ArrayLengthNode((Token) pop(), variable));
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown parser step " + step);
+            }
+        }
+    }
+
+    /** programBody() loop, one global definition per step, then main. */
+    private void definitions() {
+        if (!atGlobalDefinition()) {
+            push(currentToken);
+            accept(TokenType.IDENTIFIER);
+            accept(TokenType.LPAREN);
+            accept(TokenType.RPAREN);
+            accept(TokenType.ARROW);
+            push(null);
+            push(new VoidTypeNode(currentToken));
+            accept(TokenType.VOID);
+            steps(BLOCK_START, FUNCTION_END, ADD_TO_LIST);
+            return;
+        }
+        step(DEFINITIONS);
+        if (tokenType() == TokenType.IDENTIFIER) {
+            functionHeader();
+            steps(BLOCK_START, FUNCTION_END, ADD_TO_LIST);
+        } else {
+            type();
+            push(currentNode);
+            step(ADD_TO_LIST);
+            steps(ASSIGNMENT_START, VARIABLE_DEFINITION_END, GLOBAL_VARIABLE_END);
+        }
+    }
+
+    /** functionDefinition() up to its block, leaves name token, parameters and type on the stack. */
+    private void functionHeader() {
+        push(currentToken);
+        accept(TokenType.IDENTIFIER);
+        accept(TokenType.LPAREN);
+        FormalParameterNode formalParameters = null;
+        if (TokenType.isPrimitiveType(tokenType())) {
+            formalParameters();
+            formalParameters = (FormalParameterNode) currentNode;
+        }
+        push(formalParameters);
+        accept(TokenType.RPAREN);
+        accept(TokenType.ARROW);
+        if (tokenType() == TokenType.VOID) {
+            push(new VoidTypeNode(currentToken));
+            accept(TokenType.VOID);
+        } else {
+            type();
+            push(currentNode);
+        }
+    }
+
+    private void statementStep() {
+        if (TokenType.isCompoundStatementTerminal(tokenType())) {
+            push(currentToken);
+            if (tokenType() == TokenType.IF) {
+                accept(TokenType.IF);
+                accept(TokenType.LPAREN);
+                steps(EXPRESSION, IF_AFTER_CONDITION);
+            } else {
+                accept(TokenType.WHILE);
+                accept(TokenType.LPAREN);
+                steps(EXPRESSION, WHILE_AFTER_CONDITION);
+            }
+            return;
+        }
+        step(SEMICOLON);
+        switch (tokenType()) {
+            case INT:
+            case CHAR:
+            case BOOLEAN:
+                type();
+                push(currentNode);
+                steps(ASSIGNMENT_START, VARIABLE_DEFINITION_END);
+                break;
+            case IDENTIFIER:
+                step(ASSIGNMENT_START);
+                break;
+            case AT:
+                step(FUNCTION_CALL_START);
+                break;
+            case RETURN:
+                push(currentToken);
+                accept(TokenType.RETURN);
+                if (TokenType.isLiteralTerminal(tokenType())) {
+                    steps(ASSIGNABLE, RETURN_END);
+                } else {
+                    push(null);
+                    step(RETURN_END);
+                }
+                break;
+            case PRINT:
+                push(currentToken);
+                accept(TokenType.PRINT);
+                accept(TokenType.LPAREN);
+                steps(ACTUAL_PARAMETERS_START, PRINT_END);
+                break;
+            case READ:
+                push(currentToken);
+                accept(TokenType.READ);
+                accept(TokenType.LPAREN);
+                push(new ArrayList<VariableNode>());
+                step(READ_LOOP);
+                break;
+            default: throw new SyntaxException("Expected simpleStatement. Got " + tokenType().value, currentToken);
+        }
+    }
+
+    private void assignableStep() {
+        if (TokenType.isFactorTerminal(tokenType())) {
+            step(EXPRESSION);
+        } else if (TokenType.isPrimitiveType(tokenType())) {
+            step(ARRAY_INIT_START);
+        } else if (TokenType.CHAR_LITERAL == tokenType()) {
+            characterLiteral();
+            push(currentNode);
+        } else {
+            stringLiteral();
+            push(currentNode);
+        }
+    }
+
+    private void factorStep() {
+        switch (tokenType()) {
+            case IDENTIFIER:    step(VARIABLE_START);
+                                break;
+            case NUMBER:        push(new IntegerNode(currentToken));
+                                accept(TokenType.NUMBER);
+                                break;
+            case TRUE:
+            case FALSE:         push(new BooleanNode(currentToken));
+                                accept(tokenType());
+                                break;
+            case LENGTH:        push(currentToken);
+                                accept(TokenType.LENGTH);
+                                accept(TokenType.LPAREN);
+                                steps(VARIABLE_START, ARRAY_LENGTH_END);
+                                break;
+            case LPAREN:        accept(TokenType.LPAREN);
+                                steps(EXPRESSION, PARENTHESES_END);
+                                break;
+            case AT:            step(FUNCTION_CALL_START);
+                                break;
+            default:   throw new SyntaxException("Expected factor. Got " + tokenType().value, currentToken);
+        }
+    }
+
+    private static ExpressionNode relationalOperator(Token<TokenType> token, ExpressionNode left, ExpressionNode right) {
+        switch (token.getTokenType()) {
+            case EQUALS:        return new EqualsNode(token, left, right);
+            case NOTEQUALS:     return new NotEqualNode(token, left, right);
+            case GREATER:       return new GreaterNode(token, left, right);
+            case GREATER_EQ:    return new GreaterOrEqualNode(token, left, right);
+            case LESS:          return new LessNode(token, left, right);
+            case LESS_EQ:       return new LessOrEqualNode(token, left, right);
+            default:            return null;
+        }
+    }
+
+    private static ExpressionNode additiveOperator(Token<TokenType> token, ExpressionNode left, ExpressionNode right) {
+        switch (token.getTokenType()) {
+            case PLUS:  return new AdditionNode(token, left, right);
+            case MINUS: return new SubtractionNode(token, left, right);
+            case OR:    return new OrNode(token, left, right);
+            default:    return null;
+        }
+    }
+
+    private static ExpressionNode multiplicativeOperator(Token<TokenType> token, ExpressionNode left, ExpressionNode right) {
+        switch (token.getTokenType()) {
+            case MUL: return new MultiplicationNode(token, left, right);
+            case DIV: return new DivisionNode(token, left, right);
+            case MOD: return new ModNode(token, left, right);
+            case AND: return new AndNode(token, left, right);
+            default:  return null;
+        }
+    }
+
+    private static ExpressionNode unaryOperator(Token<TokenType> token, ExpressionNode operand) {
+        switch (token.getTokenType()) {
+            case NOT:   return new NotNode(token, operand);
+            case MINUS: return new MinusNode(token, operand);
+            default:    return operand;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits a Compile event and one ParseRule event per instrumented rule for every compile, so the
+ * metrics show up in a flight recording started with -XX:StartFlightRecording. Events that are
+ * not enabled in the recording settings are not built.
+ */
+public class JfrMetricsListener implements MetricsListener {
+
+    @Name("lexerparser.Compile")
+    @Label("Compile")
+    @Category("Lexer Parser")
+    @StackTrace(false)
+    static class CompileEvent extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Lines")
+        long lines;
+
+        @Label("Tokens")
+        long tokens;
+
+        @Label("Read Time")
+        @Timespan
+        long readNanos;
+
+        @Label("Lex Time")
+        @Timespan
+        long lexNanos;
+
+        @Label("Parse Time")
+        @Timespan
+        long parseNanos;
+
+        @Label("Max Nesting Depth")
+        int maxDepth;
+    }
+
+    @Name("lexerparser.ParseRule")
+    @Label("Parse Rule")
+    @Category("Lexer Parser")
+    @StackTrace(false)
+    static class RuleEvent extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Rule")
+        String rule;
+
+        @Label("Calls")
+        long calls;
+
+        @Label("Self Time")
+        @Timespan
+        long selfNanos;
+    }
+
+    @Override
+    public void compiled(String source, CompileMetrics metrics) {
+        CompileEvent compile = new CompileEvent();
+        if (compile.isEnabled()) {
+            compile.source = source;
+            compile.bytes = metrics.bytes();
+            compile.lines = metrics.lines();
+            compile.tokens = metrics.tokens();
+            compile.readNanos = metrics.nanos(CompileMetrics.Phase.READ);
+            compile.lexNanos = metrics.nanos(CompileMetrics.Phase.LEX);
+            compile.parseNanos = metrics.nanos(CompileMetrics.Phase.PARSE);
+            compile.maxDepth = metrics.maxDepth();
+            compile.commit();
+        }
+        for (CompileMetrics.Rule rule : CompileMetrics.Rule.values()) {
+            if (metrics.calls(rule) == 0) {
+                continue;
+            }
+            RuleEvent event = new RuleEvent();
+            if (!event.isEnabled()) {
+                return;
+            }
+            event.source = source;
+            event.rule = rule.name();
+            event.calls = metrics.calls(rule);
+            event.selfNanos = metrics.selfNanos(rule);
+            event.commit();
+        }
+    }
+}
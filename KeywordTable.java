@@ -0,0 +1,104 @@
+package lexer;
+
+import token.TokenType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyword recognizer bucketed by word length. Matches straight from the scanned chars and maps
+ * to the TokenType constant without allocating a String.
+ */
+public final class KeywordTable {
+
+    private static final char[][][] WORDS;
+    private static final TokenType[][] TYPES;
+
+    static {
+        List<TokenType> keywords = new ArrayList<>();
+        int maxLength = 0;
+        for (TokenType type : TokenType.values()) {
+            String word = type.name().toLowerCase();
+            if (TokenType.isKeyword(word)) {
+                keywords.add(type);
+                maxLength = Math.max(maxLength, word.length());
+            }
+        }
+        WORDS = new char[maxLength + 1][][];
+        TYPES = new TokenType[maxLength + 1][];
+        for (int length = 0; length <= maxLength; length++) {
+            List<TokenType> bucket = new ArrayList<>();
+            for (TokenType type : keywords) {
+                if (type.name().length() == length) {
+                    bucket.add(type);
+                }
+            }
+            WORDS[length] = new char[bucket.size()][];
+            TYPES[length] = bucket.toArray(new TokenType[0]);
+            for (int i = 0; i < bucket.size(); i++) {
+                WORDS[length][i] = bucket.get(i).name().toLowerCase().toCharArray();
+            }
+        }
+    }
+
+    private KeywordTable() {
+    }
+
+    /** Keyword spelled by buffer[start, start + length), or null for an identifier. */
+    public static TokenType lookup(char[] buffer, int start, int length) {
+        if (length >= WORDS.length) {
+            return null;
+        }
+        char[][] words = WORDS[length];
+        for (int i = 0; i < words.length; i++) {
+            char[] word = words[i];
+            int j = 0;
+            while (j < length && word[j] == buffer[start + j]) {
+                j++;
+            }
+            if (j == length) {
+                return TYPES[length][i];
+            }
+        }
+        return null;
+    }
+
+    /** Keyword spelled by the ASCII bytes[start, start + length), or null for an identifier. */
+    public static TokenType lookup(ByteBuffer bytes, int start, int length) {
+        if (length >= WORDS.length) {
+            return null;
+        }
+        char[][] words = WORDS[length];
+        for (int i = 0; i < words.length; i++) {
+            char[] word = words[i];
+            int j = 0;
+            while (j < length && word[j] == bytes.get(start + j)) {
+                j++;
+            }
+            if (j == length) {
+                return TYPES[length][i];
+            }
+        }
+        return null;
+    }
+
+    public static TokenType lookup(CharSequence text) {
+        int length = text.length();
+        if (length >= WORDS.length) {
+            return null;
+        }
+        char[][] words = WORDS[length];
+        for (int i = 0; i < words.length; i++) {
+            char[] word = words[i];
+            int j = 0;
+            while (j < length && word[j] == text.charAt(j)) {
+                j++;
+            }
+            if (j == length) {
+                return TYPES[length][i];
+            }
+        }
+        return null;
+    }
+}
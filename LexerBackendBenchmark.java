@@ -0,0 +1,70 @@
+package benchmark;
+
+import lexer.Lexers;
+import source.CharArraySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of every lexer backend on a replicated copy of a corpus directory, or
+ * of every ProgramGenerator shape when no directory is given. That the backends produce the same
+ * tokens is checked by LexerBackendTest.
+ *
+ * Usage: LexerBackendBenchmark [corpus-directory [bytes]]
+ */
+public class LexerBackendBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int targetBytes = args.length > 1 ? Integer.parseInt(args[1]) : 8 << 20;
+        List<Path> samples = new ArrayList<>();
+        List<Path> generated = new ArrayList<>();
+        if (args.length > 0) {
+            try (Stream<Path> stream = Files.walk(Paths.get(args[0]))) {
+                samples.addAll(stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+            }
+        } else {
+            for (ProgramGenerator.Shape shape : ProgramGenerator.Shape.values()) {
+                Path sample = Files.createTempFile("lexer-backend-" + shape, ".txt");
+                Files.write(sample, new ProgramGenerator(42).generate(shape, shape.defaultSize).getBytes(StandardCharsets.UTF_8));
+                generated.add(sample);
+            }
+            samples.addAll(generated);
+        }
+
+        List<Path> inputs = new ArrayList<>();
+        try {
+            for (Path sample : samples) {
+                inputs.add(LexerThroughputBenchmark.replicate(sample, targetBytes / Math.max(1, samples.size())));
+            }
+            long bytes = 0;
+            for (Path input : inputs) {
+                bytes += Files.size(input);
+            }
+            for (Lexers.Backend backend : Lexers.Backend.values()) {
+                LexerThroughputBenchmark.report(backend.name(), bytes, LexerThroughputBenchmark.measure(() -> {
+                    long tokens = 0;
+                    for (Path input : inputs) {
+                        tokens += LexerThroughputBenchmark.count(
+                                Lexers.create(backend, CharArraySource.fromFile(input.toString()), null));
+                    }
+                    return tokens;
+                }));
+            }
+        } finally {
+            for (Path input : inputs) {
+                Files.delete(input);
+            }
+            for (Path sample : generated) {
+                Files.delete(sample);
+            }
+        }
+    }
+}
@@ -6,18 +6,41 @@ import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
 import bg.tu_varna.kst_sit.ci_ep.source.Source;
 import bg.tu_varna.kst_sit.ci_ep.source.SourceImpl;
 import bg.tu_varna.kst_sit.ci_ep.utils.CompilerTestHelper;
+import source.CharArraySource;
+import token.IdentifierToken;
 import token.TokenImpl;
 import token.TokenType;
 
 import java.io.IOException;
+import java.util.List;
 
 public class LexerImpl extends Lexer<TokenType> {
 
+    private final CharArraySource arraySource;
+    private final SymbolTable symbols;
+    private List<? super LexicalException> errors;
     private int line;
     private int position;
 
     public LexerImpl(Source source) {
+        this(source, null);
+    }
+
+    /** Lexer whose identifiers are interned in symbols and returned as IdentifierToken. */
+    public LexerImpl(Source source, SymbolTable symbols) {
         super(source);
+        arraySource = source instanceof CharArraySource ? (CharArraySource) source : null;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Records lexical errors in errors instead of throwing them and keeps lexing: a bad escape stands
+     * for the char after the backslash, a number too large for an int is still a NUMBER, and a string
+     * that is not closed ends the input.
+     */
+    public LexerImpl withRecovery(List<? super LexicalException> errors) {
+        this.errors = errors;
+        return this;
     }
 
     @Override
@@ -36,7 +59,9 @@ public class LexerImpl extends Lexer<TokenType> {
                 case '!' : return handleTwoCharOp('=', TokenType.NOT, TokenType.NOTEQUALS);
                 case '&' : return handleTwoCharOp('&', TokenType.AND, TokenType.OTHER);
                 case '|' : return handleTwoCharOp('|', TokenType.OR, TokenType.OTHER);
-                case '/' : return handleSlash();
+                case '/' :
+                    if (skipComment()) { continue; }
+                    return retToken(TokenType.DIV);
                 case '\'': return handleCharLiteral();
                 case '"' : return handleStringLiteral();
 
@@ -81,6 +106,9 @@ public class LexerImpl extends Lexer<TokenType> {
     }
 
     private void handleSpaceAndTabs() {
+        if (arraySource != null) {
+            skipBlanksInBuffer();
+        }
         while (currentChar == ' ' || currentChar == '\t') {
             currentChar = source.next();
         }
@@ -88,6 +116,16 @@ public class LexerImpl extends Lexer<TokenType> {
         position = source.getPosition() + 1;
     }
 
+    private void skipBlanksInBuffer() {
+        char[] buffer = arraySource.buffer();
+        while (currentChar == ' ' || currentChar == '\t') {
+            int start = arraySource.offset();
+            int end = CharScanner.skipBlanks(buffer, start, arraySource.length());
+            arraySource.skip(end - start);
+            currentChar = end == start ? arraySource.next() : arraySource.getCurrentChar();
+        }
+    }
+
     private Token<TokenType> handleTwoCharOp(char followingChar, TokenType firstMatchedToken, TokenType secondMatchedToken) {
         if (source.next() == followingChar) {
             return retTokenAndAdvance(secondMatchedToken);
@@ -95,15 +133,27 @@ public class LexerImpl extends Lexer<TokenType> {
         return retToken(firstMatchedToken);
     }
 
-    private Token<TokenType> handleSlash() {
-        if (source.next() == '/') {
-            int currentLineNum = source.getLineNumber();
-            while (currentLineNum == source.getLineNumber()) {
-                source.next();
-            }
-            return nextToken();
+    /**
+     * Moves past the '/' and, if a second '/' follows, past the rest of the line. Returns true for a
+     * comment, with the lexer positioned on the next line, so consecutive comment lines are skipped
+     * by the loop in nextToken() instead of one recursive call each.
+     */
+    private boolean skipComment() {
+        if (source.next() != '/') {
+            return false;
+        }
+        if (arraySource != null) {
+            int start = arraySource.offset();
+            arraySource.skip(CharScanner.lineEnd(arraySource.buffer(), start, arraySource.length()) - start);
+        }
+        int currentLineNum = source.getLineNumber();
+        while (currentLineNum == source.getLineNumber()) {
+            source.next();
         }
-        return retToken(TokenType.DIV);
+        currentChar = source.getCurrentChar();
+        line = source.getLineNumber();
+        position = source.getPosition() + 1;
+        return true;
     }
 
     private Token<TokenType> handleCharLiteral() {
@@ -127,7 +177,8 @@ public class LexerImpl extends Lexer<TokenType> {
             case '\''   : return '\'';
             case '"'    : return '"';
             case '\\'   : return '\\';
-            default     : throw new LexicalException("Incorrect char escape: " + currentChar, line, position);
+            default     : lexicalError(new LexicalException("Incorrect char escape: " + currentChar, line, position));
+                          return source.getCurrentChar();
         }
     }
 
@@ -138,41 +189,94 @@ public class LexerImpl extends Lexer<TokenType> {
             sb.append(currentChar);
         }
         if (currentChar == Source.EOF) {
-            throw new LexicalException("String quote not closed!", line, position);
+            lexicalError(new LexicalException("String quote not closed!", line, position));
+            return null;
         }
         return retTokenAndAdvance(TokenType.STRING_LITERAL, sb.toString());
     }
 
+    private void lexicalError(LexicalException e) {
+        if (errors == null) {
+            throw e;
+        }
+        errors.add(e);
+    }
+
     private Token<TokenType> handleIdentifier() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(currentChar);
-        currentChar = source.next();
-        while(isLetter(currentChar) || isDigit(currentChar)) {
+        TokenType keyword;
+        int symbol = -1;
+        String res = null;
+        if (arraySource != null) {
+            char[] buffer = arraySource.buffer();
+            int start = arraySource.offset();
+            int end = CharScanner.skipIdentifier(buffer, start + 1, arraySource.length());
+            skipInBuffer(start, end);
+            keyword = KeywordTable.lookup(buffer, start, end - start);
+            if (keyword == null) {
+                if (symbols != null) {
+                    symbol = symbols.intern(buffer, start, end - start);
+                } else {
+                    res = new String(buffer, start, end - start);
+                }
+            }
+        } else {
+            StringBuilder sb = new StringBuilder();
             sb.append(currentChar);
             currentChar = source.next();
+            while(isLetter(currentChar) || isDigit(currentChar)) {
+                sb.append(currentChar);
+                currentChar = source.next();
+            }
+            keyword = KeywordTable.lookup(sb);
+            if (keyword == null) {
+                if (symbols != null) {
+                    symbol = symbols.intern(sb);
+                } else {
+                    res = sb.toString();
+                }
+            }
+        }
+        if (keyword != null) {
+            return retToken(keyword);
         }
-        String res = sb.toString();
-        if (TokenType.isKeyword(res)) {
-            return retToken(TokenType.valueOf(res.toUpperCase()));
+        if (symbol >= 0) {
+            return new IdentifierToken(symbols.name(symbol), symbol, position, line);
         }
         return retToken(TokenType.IDENTIFIER, res);
     }
 
     private Token<TokenType> handleDigit() {
-        StringBuilder sb = new StringBuilder();
-        while (isDigit(currentChar)) {
-            sb.append(currentChar);
-            currentChar = source.next();
+        String digit;
+        if (arraySource != null) {
+            char[] buffer = arraySource.buffer();
+            int start = arraySource.offset();
+            int end = start + 1;
+            while (isDigit(buffer[end])) {
+                end++;
+            }
+            skipInBuffer(start, end);
+            digit = new String(buffer, start, end - start);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            while (isDigit(currentChar)) {
+                sb.append(currentChar);
+                currentChar = source.next();
+            }
+            digit = sb.toString();
         }
-        String digit = sb.toString();
         try {
             Integer.parseInt(digit);
         } catch (NumberFormatException e) {
-            throw new LexicalException("Not a valid integer " + digit + "." , line, position, e);
+            lexicalError(new LexicalException("Not a valid integer " + digit + "." , line, position, e));
         }
         return retToken(TokenType.NUMBER, digit);
     }
 
+    private void skipInBuffer(int start, int end) {
+        arraySource.skip(end - start);
+        currentChar = arraySource.getCurrentChar();
+    }
+
     private boolean isLetter(char ch) {
         boolean bool = false;
         if (ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z')
@@ -0,0 +1,78 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.source.SourceImpl;
+import lexer.LexerImpl;
+import lexer.PackedLexer;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class LexerThroughputBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        String sample = args.length > 0 ? args[0] : "resources/Fib.txt";
+        int targetBytes = args.length > 1 ? Integer.parseInt(args[1]) : 8 << 20;
+        Path input = replicate(Paths.get(sample), targetBytes);
+        try {
+            String path = input.toString();
+            long bytes = Files.size(input);
+            report("SourceImpl", bytes, measure(() -> count(new LexerImpl(new SourceImpl(path)))));
+            report("CharArraySource", bytes, measure(() -> count(new LexerImpl(CharArraySource.fromFile(path)))));
+            report("PackedLexer", bytes, measure(() -> new PackedLexer(CharArraySource.fromFile(path)).tokenize().size()));
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    interface LexerRun {
+        long tokens() throws IOException;
+    }
+
+    static long count(Lexer<TokenType> lexer) {
+        long tokens = 0;
+        while (lexer.nextToken() != null) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    static Path replicate(Path sample, int targetBytes) throws IOException {
+        String text = new String(Files.readAllBytes(sample), StandardCharsets.UTF_8);
+        StringBuilder sb = new StringBuilder(targetBytes + text.length());
+        while (sb.length() < targetBytes) {
+            sb.append(text).append('\n');
+        }
+        Path copy = Files.createTempFile("lexer-bench", ".txt");
+        Files.write(copy, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return copy;
+    }
+
+    static long[] measure(LexerRun lexerRun) throws IOException {
+        long best = Long.MAX_VALUE;
+        long tokens = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            tokens = lexerRun.tokens();
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return new long[] { best, tokens };
+    }
+
+    static void report(String label, long bytes, long[] result) {
+        double seconds = result[0] / 1e9;
+        System.out.printf("%-16s %8.2f ms %10.2f MB/s %12.0f tokens/s%n",
+                label, result[0] / 1e6, bytes / seconds / (1 << 20), result[1] / seconds);
+    }
+}
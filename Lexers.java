@@ -0,0 +1,37 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+
+/**
+ * Picks the lexer backend. The default is LexerImpl and can be switched with
+ * -Dlexer.backend=TABLE_DRIVEN.
+ */
+public final class Lexers {
+
+    public enum Backend {
+        HAND_WRITTEN,
+        TABLE_DRIVEN
+    }
+
+    private Lexers() {
+    }
+
+    public static Backend defaultBackend() {
+        return Backend.valueOf(System.getProperty("lexer.backend", Backend.HAND_WRITTEN.name()));
+    }
+
+    public static Lexer<TokenType> create(String path) throws IOException {
+        return create(defaultBackend(), CharArraySource.fromFile(path), null);
+    }
+
+    public static Lexer<TokenType> create(Backend backend, CharArraySource source, SymbolTable symbols) {
+        switch (backend) {
+            case TABLE_DRIVEN:  return new DfaLexer(source, symbols);
+            default:            return new LexerImpl(source, symbols);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import metrics.CompileMetrics;
+import token.TokenType;
+
+/**
+ * Lexer wrapper that counts the tokens of another lexer per TokenType and remembers the line of
+ * the last one, since not every backend advances the line number of its source.
+ */
+public class MeteredLexer extends Lexer<TokenType> {
+
+    private final Lexer<TokenType> tokens;
+    private final CompileMetrics metrics;
+    private int line;
+
+    public MeteredLexer(Lexer<TokenType> tokens, CompileMetrics metrics) {
+        super(null);
+        this.tokens = tokens;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Token<TokenType> nextToken() {
+        Token<TokenType> token = tokens.nextToken();
+        if (token != null) {
+            metrics.token(token.getTokenType());
+            line = token.getLine();
+        }
+        return token;
+    }
+
+    /** Line of the last token handed out, the number of lines lexed once the end is reached. */
+    public int line() {
+        return line;
+    }
+}
@@ -0,0 +1,198 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import metrics.CompileMetrics;
+import metrics.CompileMetrics.Rule;
+import token.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * ParserImpl that records into a CompileMetrics: the time spent in the lexer, measured around each
+ * accept(), the calls and self time of the rules in {@link Rule}, and the deepest bracket nesting.
+ * Self time excludes both the instrumented rules called and the lexing done meanwhile, so the rule
+ * times add up to nearly all of the PARSE phase.
+ */
+public class MeteredParser extends ParserImpl {
+
+    private final CompileMetrics metrics;
+    private long[] childNanos = new long[64];
+    private int ruleDepth;
+    private int depth;
+    private long lexNanos;
+
+    public MeteredParser(Lexer<TokenType> lexer, CompileMetrics metrics) {
+        super(lexer);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public AST entryRule() {
+        long start = System.nanoTime();
+        try {
+            return super.entryRule();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            metrics.phase(CompileMetrics.Phase.LEX, lexNanos);
+            metrics.phase(CompileMetrics.Phase.PARSE, elapsed - lexNanos);
+        }
+    }
+
+    @Override
+    void accept(TokenType tokenType) {
+        long start = System.nanoTime();
+        super.accept(tokenType);
+        long elapsed = System.nanoTime() - start;
+        lexNanos += elapsed;
+        childNanos[ruleDepth] += elapsed;
+        switch (tokenType) {
+            case LPAREN:
+            case LSQUARE:
+            case LBRACKET:
+                metrics.depth(++depth);
+                break;
+            case RPAREN:
+            case RSQUARE:
+            case RBRACKET:
+                depth--;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private long enter() {
+        if (++ruleDepth == childNanos.length) {
+            childNanos = Arrays.copyOf(childNanos, ruleDepth * 2);
+        }
+        return System.nanoTime();
+    }
+
+    private void exit(Rule rule, long start) {
+        long elapsed = System.nanoTime() - start;
+        metrics.rule(rule, elapsed - childNanos[ruleDepth]);
+        childNanos[ruleDepth--] = 0;
+        childNanos[ruleDepth] += elapsed;
+    }
+
+    @Override
+    void globalDefinition() {
+        long start = enter();
+        try {
+            super.globalDefinition();
+        } finally {
+            exit(Rule.GLOBAL_DEFINITION, start);
+        }
+    }
+
+    @Override
+    void functionDefinition() {
+        long start = enter();
+        try {
+            super.functionDefinition();
+        } finally {
+            exit(Rule.FUNCTION_DEFINITION, start);
+        }
+    }
+
+    @Override
+    void mainFunction() {
+        long start = enter();
+        try {
+            super.mainFunction();
+        } finally {
+            exit(Rule.MAIN_FUNCTION, start);
+        }
+    }
+
+    @Override
+    void block() {
+        long start = enter();
+        try {
+            super.block();
+        } finally {
+            exit(Rule.BLOCK, start);
+        }
+    }
+
+    @Override
+    void statement() {
+        long start = enter();
+        try {
+            super.statement();
+        } finally {
+            exit(Rule.STATEMENT, start);
+        }
+    }
+
+    @Override
+    void assignment() {
+        long start = enter();
+        try {
+            super.assignment();
+        } finally {
+            exit(Rule.ASSIGNMENT, start);
+        }
+    }
+
+    @Override
+    void expression() {
+        long start = enter();
+        try {
+            super.expression();
+        } finally {
+            exit(Rule.EXPRESSION, start);
+        }
+    }
+
+    @Override
+    void simpleExpression() {
+        long start = enter();
+        try {
+            super.simpleExpression();
+        } finally {
+            exit(Rule.SIMPLE_EXPRESSION, start);
+        }
+    }
+
+    @Override
+    void term() {
+        long start = enter();
+        try {
+            super.term();
+        } finally {
+            exit(Rule.TERM, start);
+        }
+    }
+
+    @Override
+    void factor() {
+        long start = enter();
+        try {
+            super.factor();
+        } finally {
+            exit(Rule.FACTOR, start);
+        }
+    }
+
+    @Override
+    void variable() {
+        long start = enter();
+        try {
+            super.variable();
+        } finally {
+            exit(Rule.VARIABLE, start);
+        }
+    }
+
+    @Override
+    void functionCall() {
+        long start = enter();
+        try {
+            super.functionCall();
+        } finally {
+            exit(Rule.FUNCTION_CALL, start);
+        }
+    }
+}
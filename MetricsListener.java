@@ -0,0 +1,8 @@
+package metrics;
+
+/** Receives the metrics of every compile that was run with metrics enabled. */
+public interface MetricsListener {
+
+    /** Called once per compile, from the thread that ran it. */
+    void compiled(String source, CompileMetrics metrics);
+}
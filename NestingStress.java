@@ -0,0 +1,104 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import lexer.LexerImpl;
+import parser.IterativeParser;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+/**
+ * Parses programs nested 100k levels deep in each construct with IterativeParser, shows where
+ * ParserImpl runs out of stack on the same input, and checks that a depth limit is reported as a
+ * syntax error.
+ */
+public class NestingStress {
+
+    private static final int LIMITED_DEPTH = 1000;
+
+    interface Nesting {
+        String program(int levels);
+    }
+
+    public static void main(String[] args) {
+        int levels = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        stress("parentheses", levels, NestingStress::parentheses);
+        stress("array indexes", levels, NestingStress::arrayIndexes);
+        stress("if blocks", levels, NestingStress::ifBlocks);
+        stress("while blocks", levels, NestingStress::whileBlocks);
+        stress("comment lines", levels, NestingStress::commentLines);
+    }
+
+    private static void stress(String label, int levels, Nesting nesting) {
+        String program = nesting.program(levels);
+        long start = System.nanoTime();
+        new IterativeParser(new LexerImpl(new CharArraySource(program))).entryRule();
+        long elapsed = System.nanoTime() - start;
+
+        String recursive;
+        try {
+            new ParserImpl(new LexerImpl(new CharArraySource(program))).entryRule();
+            recursive = "ok";
+        } catch (StackOverflowError e) {
+            recursive = "StackOverflowError";
+        }
+
+        String limited;
+        try {
+            new IterativeParser(new LexerImpl(new CharArraySource(program)), LIMITED_DEPTH).entryRule();
+            limited = "ok";
+        } catch (SyntaxException e) {
+            limited = e.getMessage();
+        }
+        System.out.printf("%-14s %7d levels %8.2f ms, recursive: %s, limit %d: %s%n",
+                label, levels, elapsed / 1e6, recursive, LIMITED_DEPTH, limited);
+    }
+
+    private static String parentheses(int levels) {
+        StringBuilder sb = new StringBuilder(levels * 2 + 64);
+        sb.append("program {\nmain() -> void {\nint a = ");
+        repeat(sb, "(", levels);
+        sb.append('1');
+        repeat(sb, ")", levels);
+        return sb.append(";\n}\n}\n").toString();
+    }
+
+    private static String arrayIndexes(int levels) {
+        StringBuilder sb = new StringBuilder(levels * 3 + 64);
+        sb.append("program {\nmain() -> void {\nint a = ");
+        repeat(sb, "a[", levels);
+        sb.append('0');
+        repeat(sb, "]", levels);
+        return sb.append(";\n}\n}\n").toString();
+    }
+
+    private static String ifBlocks(int levels) {
+        StringBuilder sb = new StringBuilder(levels * 16 + 64);
+        sb.append("program {\nmain() -> void {\n");
+        repeat(sb, "if (a < b) {\n", levels);
+        sb.append("print(a);\n");
+        repeat(sb, "} else {\n}\n", levels);
+        return sb.append("}\n}\n").toString();
+    }
+
+    private static String whileBlocks(int levels) {
+        StringBuilder sb = new StringBuilder(levels * 16 + 64);
+        sb.append("program {\nmain() -> void {\n");
+        repeat(sb, "while (a > 0) {\n", levels);
+        sb.append("a = a - 1;\n");
+        repeat(sb, "}\n", levels);
+        return sb.append("}\n}\n").toString();
+    }
+
+    private static String commentLines(int levels) {
+        StringBuilder sb = new StringBuilder(levels * 12 + 64);
+        sb.append("program {\nmain() -> void {\n");
+        repeat(sb, "// comment\n", levels);
+        return sb.append("}\n}\n").toString();
+    }
+
+    private static void repeat(StringBuilder sb, String text, int times) {
+        for (int i = 0; i < times; i++) {
+            sb.append(text);
+        }
+    }
+}
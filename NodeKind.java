@@ -0,0 +1,101 @@
+package ast;
+
+import token.TokenType;
+
+/**
+ * Node kinds of a {@link FlatAst}, one per class of the bg.tu_varna.kst_sit.ci_ep.ast tree.
+ * PrimitiveTypeNode is split into PRIMITIVE_TYPE and ARRAY_TYPE by its isArray flag. ERROR has no
+ * counterpart and is left out when converting.
+ */
+public enum NodeKind {
+    PROGRAM_BODY,
+    FUNCTION_DEFINITION,
+    VARIABLE_DEFINITION,
+    FORMAL_PARAMETERS,
+    TYPED_VARIABLE,
+    ACTUAL_PARAMETERS,
+    PRIMITIVE_TYPE,
+    ARRAY_TYPE,
+    VOID_TYPE,
+    BLOCK,
+    ASSIGNMENT,
+    IF_STATEMENT,
+    WHILE_STATEMENT,
+    RETURN_STATEMENT,
+    PRINT_STATEMENT,
+    READ_STATEMENT,
+    ARRAY_INIT,
+    CHARACTER_LITERAL,
+    STRING_LITERAL,
+    VARIABLE,
+    FUNCTION_CALL,
+    INTEGER,
+    BOOLEAN,
+    ARRAY_LENGTH,
+    // binary operators, the additive and multiplicative ones first, then the relational ones
+    ADDITION,
+    SUBTRACTION,
+    OR,
+    MULTIPLICATION,
+    DIVISION,
+    MOD,
+    AND,
+    EQUALS,
+    NOT_EQUAL,
+    GREATER,
+    GREATER_OR_EQUAL,
+    LESS,
+    LESS_OR_EQUAL,
+    // unary operators
+    NOT,
+    MINUS,
+    // input the RecoveringParser skipped, the token is where the error was found
+    ERROR;
+
+    private static final NodeKind[] VALUES = values();
+
+    public static NodeKind of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public boolean isBinaryOperator() {
+        return ordinal() >= ADDITION.ordinal() && ordinal() <= LESS_OR_EQUAL.ordinal();
+    }
+
+    public boolean isRelationalOperator() {
+        return ordinal() >= EQUALS.ordinal() && ordinal() <= LESS_OR_EQUAL.ordinal();
+    }
+
+    public boolean isUnaryOperator() {
+        return this == NOT || this == MINUS;
+    }
+
+    /** Kind of the binary operator node built for an operator token, null for other tokens. */
+    public static NodeKind binaryOperator(TokenType type) {
+        switch (type) {
+            case PLUS       : return ADDITION;
+            case MINUS      : return SUBTRACTION;
+            case OR         : return OR;
+            case MUL        : return MULTIPLICATION;
+            case DIV        : return DIVISION;
+            case MOD        : return MOD;
+            case AND        : return AND;
+            case EQUALS     : return EQUALS;
+            case NOTEQUALS  : return NOT_EQUAL;
+            case GREATER    : return GREATER;
+            case GREATER_EQ : return GREATER_OR_EQUAL;
+            case LESS       : return LESS;
+            case LESS_EQ    : return LESS_OR_EQUAL;
+            default         : return null;
+        }
+    }
+
+    /** Kind of the unary operator node built for an operator token, null for other tokens. */
+    public static NodeKind unaryOperator(TokenType type) {
+        switch (type) {
+            case NOT    : return NOT;
+            case MINUS  : return MINUS;
+            default     : return null;
+        }
+    }
+}
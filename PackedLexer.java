@@ -0,0 +1,267 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.source.Source;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.util.List;
+
+/**
+ * Lexer mode that records tokens into a {@link TokenBuffer} instead of allocating a token object
+ * per lexeme. It follows the rules of LexerImpl, token for token.
+ */
+public class PackedLexer {
+
+    private final char[] buffer;
+    private final int length;
+    private SymbolTable symbols;
+    private List<? super LexicalException> errors;
+    private int offset;
+    private int line;
+    private int lineStart;
+
+    public PackedLexer(CharArraySource source) {
+        this(source.buffer(), source.length(), source.offset(), source.getLineNumber(),
+                source.offset() - source.getPosition());
+    }
+
+    /** Lexes buffer[offset, length), where the char at length - 1 is a '\n'. */
+    public PackedLexer(char[] buffer, int length, int offset, int line, int lineStart) {
+        this.buffer = buffer;
+        this.length = length;
+        this.offset = offset;
+        this.line = line;
+        this.lineStart = lineStart;
+    }
+
+    /** Interns identifiers in symbols, the resulting TokenBuffer stores their ids. */
+    public PackedLexer withSymbols(SymbolTable symbols) {
+        this.symbols = symbols;
+        return this;
+    }
+
+    /** Records lexical errors in errors and keeps lexing, the same way LexerImpl.withRecovery() does. */
+    public PackedLexer withRecovery(List<? super LexicalException> errors) {
+        this.errors = errors;
+        return this;
+    }
+
+    public TokenBuffer newBuffer() {
+        return new TokenBuffer(buffer, symbols, Math.max(16, (length - offset) / 8));
+    }
+
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens = newBuffer();
+        while (next(tokens)) {
+            // keep going until EOF
+        }
+        return tokens;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+    /** Appends the next token to out, returns false at EOF. */
+    public boolean next(TokenBuffer out) {
+        while (offset < length) {
+            int start = offset;
+            switch (buffer[offset]) {
+                case ' ' : case '\t' : case '\n' : skipBlanks(); continue;
+
+                case '-' : return twoCharOp(out, '>', TokenType.MINUS, TokenType.ARROW);
+                case '=' : return twoCharOp(out, '=', TokenType.BECOMES, TokenType.EQUALS);
+                case '>' : return twoCharOp(out, '=', TokenType.GREATER, TokenType.GREATER_EQ);
+                case '<' : return twoCharOp(out, '=', TokenType.LESS, TokenType.LESS_EQ);
+                case '!' : return twoCharOp(out, '=', TokenType.NOT, TokenType.NOTEQUALS);
+                case '&' : return twoCharOp(out, '&', TokenType.AND, TokenType.OTHER);
+                case '|' : return twoCharOp(out, '|', TokenType.OR, TokenType.OTHER);
+                case '/' :
+                    if (buffer[offset + 1] == '/') {
+                        skipComment();
+                        continue;
+                    }
+                    return single(out, TokenType.DIV);
+                case '\'': return charLiteral(out);
+                case '"' : return stringLiteral(out);
+
+                case '+' : return single(out, TokenType.PLUS);
+                case '[' : return single(out, TokenType.LSQUARE);
+                case ']' : return single(out, TokenType.RSQUARE);
+                case '{' : return single(out, TokenType.LBRACKET);
+                case '}' : return single(out, TokenType.RBRACKET);
+                case '(' : return single(out, TokenType.LPAREN);
+                case ')' : return single(out, TokenType.RPAREN);
+                case ';' : return single(out, TokenType.SEMICOLON);
+                case '*' : return single(out, TokenType.MUL);
+                case '%' : return single(out, TokenType.MOD);
+                case ',' : return single(out, TokenType.COMMA);
+                case '@' : return single(out, TokenType.AT);
+
+                default  :
+                    char ch = buffer[offset];
+                    if (isLetter(ch)) { return identifier(out); }
+                    if (isDigit(ch)) { return number(out); }
+                    offset++;
+                    out.add(TokenType.OTHER, true, start, 1, line, start - lineStart + 1, 0);
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void skipBlanks() {
+        while (offset < length) {
+            offset = CharScanner.skipBlanks(buffer, offset, length);
+            if (buffer[offset] != '\n') {
+                return;
+            }
+            offset = lineStart = offset + 1;
+            line++;
+        }
+    }
+
+    private void skipComment() {
+        offset = lineStart = CharScanner.lineEnd(buffer, offset + 2, length) + 1;
+        line++;
+    }
+
+    private boolean single(TokenBuffer out, TokenType type) {
+        out.add(type, false, offset, 1, line, offset - lineStart + 1, 0);
+        offset++;
+        return true;
+    }
+
+    private boolean twoCharOp(TokenBuffer out, char followingChar, TokenType first, TokenType second) {
+        if (buffer[offset + 1] == followingChar) {
+            out.add(second, false, offset, 2, line, offset - lineStart + 1, 0);
+            offset += 2;
+            return true;
+        }
+        return single(out, first);
+    }
+
+    private boolean identifier(TokenBuffer out) {
+        int start = offset;
+        int end = CharScanner.skipIdentifier(buffer, start + 1, length);
+        offset = end;
+        TokenType keyword = KeywordTable.lookup(buffer, start, end - start);
+        if (keyword != null) {
+            out.add(keyword, false, start, end - start, line, start - lineStart + 1, 0);
+        } else {
+            int symbol = symbols != null ? symbols.intern(buffer, start, end - start) : 0;
+            out.add(TokenType.IDENTIFIER, true, start, end - start, line, start - lineStart + 1, symbol);
+        }
+        return true;
+    }
+
+    private boolean number(TokenBuffer out) {
+        int start = offset;
+        int end = start;
+        long value = 0;
+        while (isDigit(buffer[end])) {
+            if (value <= Integer.MAX_VALUE) {
+                value = value * 10 + (buffer[end] - '0');
+            }
+            end++;
+        }
+        int position = start - lineStart + 1;
+        if (value > Integer.MAX_VALUE) {
+            String digit = new String(buffer, start, end - start);
+            try {
+                Integer.parseInt(digit);
+            } catch (NumberFormatException e) {
+                lexicalError(new LexicalException("Not a valid integer " + digit + ".", line, position, e));
+            }
+        }
+        offset = end;
+        out.add(TokenType.NUMBER, true, start, end - start, line, position, (int) value);
+        return true;
+    }
+
+    private boolean charLiteral(TokenBuffer out) {
+        int start = offset;
+        int tokenLine = line;
+        int position = start - lineStart + 1;
+        char ch = advance();
+        if (ch == '\'') {
+            advance();
+            out.add(TokenType.OTHER, false, start, offset - start, tokenLine, position, 0);
+            return true;
+        }
+        if (ch == '\\') {
+            escape('\'', tokenLine, position);
+        }
+        boolean closed = advance() == '\'';
+        advance();
+        out.add(closed ? TokenType.CHAR_LITERAL : TokenType.OTHER, closed, start, offset - start, tokenLine, position, 0);
+        return true;
+    }
+
+    private boolean stringLiteral(TokenBuffer out) {
+        int start = offset;
+        int tokenLine = line;
+        int position = start - lineStart + 1;
+        char ch;
+        while ((ch = advance()) != Source.EOF && ch != '"') {
+            if (ch == '\\') {
+                escape('\\', tokenLine, position);
+            }
+        }
+        if (ch == Source.EOF) {
+            lexicalError(new LexicalException("String quote not closed!", tokenLine, position));
+            return false;
+        }
+        advance();
+        out.add(TokenType.STRING_LITERAL, true, start, offset - start, tokenLine, position, 0);
+        return true;
+    }
+
+    /** Checks the char after a backslash, reporting lastChar like LexerImpl does. */
+    private void escape(char lastChar, int tokenLine, int position) {
+        char ch = advance();
+        if (TokenBuffer.escapedChar(ch) == 0) {
+            lexicalError(new LexicalException("Incorrect char escape: " + lastChar, tokenLine, position));
+        }
+    }
+
+    private void lexicalError(LexicalException e) {
+        if (errors == null) {
+            throw e;
+        }
+        errors.add(e);
+    }
+
+    /** Source.next() semantics: moves one char, reports '\n' as a blank and EOF past the end. */
+    private char advance() {
+        if (offset < length) {
+            if (buffer[offset] == '\n') {
+                line++;
+                lineStart = offset + 1;
+            }
+            offset++;
+        }
+        if (offset >= length) {
+            return Source.EOF;
+        }
+        char ch = buffer[offset];
+        return ch == '\n' ? ' ' : ch;
+    }
+
+    private boolean isLetter(char ch) {
+        return ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z';
+    }
+
+    private boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+}
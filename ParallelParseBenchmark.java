@@ -0,0 +1,64 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.utils.CompilerTestHelper;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import parser.ParallelParser;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses one generated file with thousands of functions sequentially and with ParallelParser on
+ * 1..N worker threads. Lexing is done once up front, only parsing is measured.
+ */
+public class ParallelParseBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String program = new ProgramGenerator(42).manyFunctions(functions);
+        TokenBuffer tokens = new PackedLexer(new CharArraySource(program)).withSymbols(new SymbolTable()).tokenize();
+
+        String expected = CompilerTestHelper.getASTasString(new ParserImpl(tokens.lexer()));
+        ForkJoinPool check = new ForkJoinPool(maxThreads);
+        try {
+            if (!expected.equals(CompilerTestHelper.getASTasString(new ParallelParser(tokens, check)))) {
+                throw new IllegalStateException("Parallel parse differs from the sequential AST");
+            }
+        } finally {
+            check.shutdown();
+        }
+        System.out.printf("%d functions, %d tokens%n", functions, tokens.size());
+
+        long sequential = measure(() -> new ParserImpl(tokens.lexer()).entryRule());
+        System.out.printf("%-12s %8.2f ms%n", "sequential", sequential / 1e6);
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long best = measure(() -> new ParallelParser(tokens, pool).entryRule());
+                System.out.printf("%-12s %8.2f ms %6.2fx%n", threads + " threads", best / 1e6, (double) sequential / best);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static long measure(Runnable parse) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            parse.run();
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,91 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.ast.ProgramBodyNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.parser.Parser;
+import lexer.TokenBuffer;
+import token.TokenType;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parses the top-level definitions of a program in parallel. The token stream is split at
+ * brace-balanced definition boundaries, every region gets its own ParserImpl and the results are
+ * stitched back into one ProgramBodyNode in source order. Whenever the split or a region parse
+ * fails, the whole program is reparsed sequentially, so results and exceptions are the same as
+ * ParserImpl's.
+ */
+public class ParallelParser extends Parser<TokenType, AST> {
+
+    private static final int REGIONS_PER_TASK = 8;
+
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+        super(tokens.lexer());
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    @Override
+    public AST entryRule() {
+        int[] bounds = TopLevelRegions.ofProgram(tokens);
+        if (bounds == null) {
+            return sequential();
+        }
+        GlobalDefinitionNode[] definitions = new GlobalDefinitionNode[bounds.length - 1];
+        pool.invoke(new RegionTask(bounds, definitions, 0, definitions.length));
+        for (GlobalDefinitionNode definition : definitions) {
+            if (definition == null) {
+                return sequential();
+            }
+        }
+        return new ProgramBodyNode(null, Arrays.asList(definitions));
+    }
+
+    private AST sequential() {
+        return new ParserImpl(tokens.lexer()).entryRule();
+    }
+
+    /** Parses tokens [from, to) as one top-level definition, null unless it takes exactly that range. */
+    static GlobalDefinitionNode parseRegion(TokenBuffer tokens, int from, int to) {
+        try {
+            ParserImpl parser = new ParserImpl(tokens.lexer(from, to));
+            GlobalDefinitionNode definition = parser.topLevelDefinition();
+            return parser.atEnd() ? definition : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private class RegionTask extends RecursiveAction {
+        private final int[] bounds;
+        private final GlobalDefinitionNode[] definitions;
+        private final int from;
+        private final int to;
+
+        RegionTask(int[] bounds, GlobalDefinitionNode[] definitions, int from, int to) {
+            this.bounds = bounds;
+            this.definitions = definitions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= REGIONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    definitions[i] = parseRegion(tokens, bounds[i], bounds[i + 1]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RegionTask(bounds, definitions, from, middle),
+                    new RegionTask(bounds, definitions, middle, to));
+        }
+    }
+}
@@ -30,6 +30,7 @@ import bg.tu_varna.kst_sit.ci_ep.parser.Parser;
 import bg.tu_varna.kst_sit.ci_ep.source.SourceImpl;
 import bg.tu_varna.kst_sit.ci_ep.utils.CompilerTestHelper;
 import lexer.LexerImpl;
+import lexer.SymbolTable;
 import token.TokenType;
 
 import java.io.IOException;
@@ -42,7 +43,7 @@ public class ParserImpl extends Parser<TokenType, AST> {
         super(lexer);
     }
 
-    private void accept(TokenType tokenType) {
+    void accept(TokenType tokenType) {
         if (currentToken.getTokenType() != tokenType) {
             throw new SyntaxException("Token doesn't match! Expected " +
                     tokenType.value + ", Got " + currentToken.getTokenType().value, currentToken);
@@ -61,16 +62,8 @@ public class ParserImpl extends Parser<TokenType, AST> {
 
     void programBody() {
         List<GlobalDefinitionNode> globalDefinitions = new ArrayList<>();
-        while(
-                TokenType.isPrimitiveType(currentToken.getTokenType()) ||
-                        (currentToken.getTokenType() == TokenType.IDENTIFIER && !currentToken.getText().equals("main"))
-                ) {
-            if (currentToken.getTokenType() == TokenType.IDENTIFIER) {
-                functionDefinition();
-            } else {
-                variableDefinition();
-                accept(TokenType.SEMICOLON);
-            }
+        while(atGlobalDefinition()) {
+            globalDefinition();
             globalDefinitions.add((GlobalDefinitionNode) currentNode);
         }
         mainFunction();
@@ -78,6 +71,40 @@ public class ParserImpl extends Parser<TokenType, AST> {
         currentNode = new ProgramBodyNode(null, globalDefinitions);
     }
 
+    boolean atGlobalDefinition() {
+        return TokenType.isPrimitiveType(currentToken.getTokenType()) ||
+                (currentToken.getTokenType() == TokenType.IDENTIFIER && !isMain(currentToken));
+    }
+
+    void globalDefinition() {
+        if (currentToken.getTokenType() == TokenType.IDENTIFIER) {
+            functionDefinition();
+        } else {
+            variableDefinition();
+            accept(TokenType.SEMICOLON);
+        }
+    }
+
+    /** Parses the next entry of programBody(), a global definition or the main function. */
+    GlobalDefinitionNode topLevelDefinition() {
+        if (atGlobalDefinition()) {
+            globalDefinition();
+        } else {
+            mainFunction();
+        }
+        return (GlobalDefinitionNode) currentNode;
+    }
+
+    /** True once the lexer has run out of tokens. */
+    boolean atEnd() {
+        return currentToken == null;
+    }
+
+    boolean isMain(Token<TokenType> token) {
+        int symbol = SymbolTable.symbolOf(token);
+        return symbol >= 0 ? symbol == SymbolTable.MAIN : token.getText().equals("main");
+    }
+
     void functionDefinition() {
         Token token = currentToken;
         accept(TokenType.IDENTIFIER);
@@ -0,0 +1,47 @@
+package optimizer;
+
+import ast.FlatAst;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs AstPasses in the order they were added and records in its {@link PassStatistics} how many
+ * nodes each one eliminated. Every run works on a copy of the tokens of its input, so the input
+ * tree and its TokenBuffer are left as they were. The passes keep state while they run, so a
+ * pipeline optimizes one tree at a time.
+ */
+public final class PassPipeline {
+
+    private final List<AstPass> passes = new ArrayList<>();
+    private final PassStatistics statistics = new PassStatistics();
+
+    /** Folding first, so the later passes see the literals it leaves. */
+    public static PassPipeline standard() {
+        return new PassPipeline()
+                .add(new ConstantFolding())
+                .add(new BooleanSimplification())
+                .add(new DeadBranchElimination())
+                .add(new CommonSubexpressionElimination());
+    }
+
+    public PassPipeline add(AstPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public FlatAst run(FlatAst ast) {
+        FlatAst current = ast.copy(ast.tokens().copy());
+        for (AstPass pass : passes) {
+            int before = current.size();
+            long start = System.nanoTime();
+            current = pass.apply(current);
+            statistics.record(pass.name(), before, current.size(), System.nanoTime() - start);
+        }
+        return current;
+    }
+
+    public PassStatistics statistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,52 @@
+package optimizer;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counters per pass of a {@link PassPipeline}, summed over its runs: runs, nodes going in, nodes
+ * the pass eliminated and time. A pass that grows the tree shows a negative count.
+ */
+public final class PassStatistics {
+
+    private static final class Counters {
+        long runs;
+        long nodes;
+        long eliminated;
+        long nanos;
+    }
+
+    private final Map<String, Counters> passes = new LinkedHashMap<>();
+
+    public synchronized void record(String pass, int nodesBefore, int nodesAfter, long nanos) {
+        Counters counters = passes.computeIfAbsent(pass, name -> new Counters());
+        counters.runs++;
+        counters.nodes += nodesBefore;
+        counters.eliminated += nodesBefore - nodesAfter;
+        counters.nanos += nanos;
+    }
+
+    public synchronized long eliminated(String pass) {
+        Counters counters = passes.get(pass);
+        return counters == null ? 0 : counters.eliminated;
+    }
+
+    public synchronized long eliminated() {
+        long eliminated = 0;
+        for (Counters counters : passes.values()) {
+            eliminated += counters.eliminated;
+        }
+        return eliminated;
+    }
+
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counters> pass : passes.entrySet()) {
+            Counters counters = pass.getValue();
+            sb.append(String.format(Locale.ROOT, "  %-24s %10d nodes %10d eliminated %10.2f ms%n", pass.getKey(),
+                    counters.nodes, counters.eliminated, counters.nanos / 1e6));
+        }
+        return sb.toString();
+    }
+}
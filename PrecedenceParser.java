@@ -0,0 +1,124 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.ExpressionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.IntegerNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.AdditionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.additive_operators.SubtractionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.AndNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.logical_operators.OrNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.DivisionNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.ModNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.multiplicative_operators.MultiplicationNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.binary_operators.relational_operators.*;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.MinusNode;
+import bg.tu_varna.kst_sit.ci_ep.ast.assignable.expression.operators.unary_operators.NotNode;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.TokenType;
+
+/**
+ * ParserImpl with expression() and simpleExpression() replaced by precedence climbing over a
+ * binding power table. It accepts the same language and builds the same nodes: one optional
+ * relational operator, left associative additive and multiplicative operators, and a unary ! or -
+ * that applies to a whole term and only starts a signed term.
+ */
+public class PrecedenceParser extends ParserImpl {
+
+    private static final int NONE = 0;
+    private static final int RELATIONAL = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+    private static final int FACTOR = 4;
+
+    private static final int[] POWER = new int[TokenType.values().length];
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            if (TokenType.isRelationalOperator(type)) {
+                POWER[type.ordinal()] = RELATIONAL;
+            } else if (TokenType.isOperatorGroupOne(type)) {
+                POWER[type.ordinal()] = ADDITIVE;
+            } else if (TokenType.isOperatorGroupTwo(type)) {
+                POWER[type.ordinal()] = MULTIPLICATIVE;
+            }
+        }
+    }
+
+    public PrecedenceParser(Lexer<TokenType> lexer) {
+        super(lexer);
+    }
+
+    @Override
+    void expression() {
+        currentNode = climb(RELATIONAL, true);
+    }
+
+    @Override
+    void simpleExpression() {
+        currentNode = climb(ADDITIVE, true);
+    }
+
+    /**
+     * Parses operands joined by operators binding at least as tight as minPower. signed allows a
+     * leading unary operator, whose operand is a term.
+     */
+    private ExpressionNode climb(int minPower, boolean signed) {
+        ExpressionNode left;
+        if (signed && TokenType.isUnaryOperator(currentToken.getTokenType())) {
+            Token<TokenType> token = currentToken;
+            accept(currentToken.getTokenType());
+            left = unaryOperator(token, climb(MULTIPLICATIVE, false));
+        } else if (currentToken.getTokenType() == TokenType.NUMBER) {
+            left = new IntegerNode(currentToken);
+            accept(TokenType.NUMBER);
+        } else {
+            factor();
+            left = (ExpressionNode) currentNode;
+        }
+        while (true) {
+            Token<TokenType> token = currentToken;
+            int power = POWER[token.getTokenType().ordinal()];
+            if (power == NONE || power < minPower) {
+                return left;
+            }
+            accept(token.getTokenType());
+            switch (power) {
+                case RELATIONAL:
+                    return binaryOperator(token, left, climb(ADDITIVE, true));
+                case ADDITIVE:
+                    left = binaryOperator(token, left, climb(MULTIPLICATIVE, true));
+                    break;
+                default:
+                    left = binaryOperator(token, left, climb(FACTOR, false));
+                    break;
+            }
+        }
+    }
+
+    private static ExpressionNode unaryOperator(Token<TokenType> token, ExpressionNode operand) {
+        switch (token.getTokenType()) {
+            case NOT:   return new NotNode(token, operand);
+            case MINUS: return new MinusNode(token, operand);
+            default:    return operand;
+        }
+    }
+
+    private static ExpressionNode binaryOperator(Token<TokenType> token, ExpressionNode left, ExpressionNode right) {
+        switch (token.getTokenType()) {
+            case PLUS:          return new AdditionNode(token, left, right);
+            case MINUS:         return new SubtractionNode(token, left, right);
+            case OR:            return new OrNode(token, left, right);
+            case MUL:           return new MultiplicationNode(token, left, right);
+            case DIV:           return new DivisionNode(token, left, right);
+            case MOD:           return new ModNode(token, left, right);
+            case AND:           return new AndNode(token, left, right);
+            case EQUALS:        return new EqualsNode(token, left, right);
+            case NOTEQUALS:     return new NotEqualNode(token, left, right);
+            case GREATER:       return new GreaterNode(token, left, right);
+            case GREATER_EQ:    return new GreaterOrEqualNode(token, left, right);
+            case LESS:          return new LessNode(token, left, right);
+            case LESS_EQ:       return new LessOrEqualNode(token, left, right);
+            default:            return null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package interpreter;
+
+import ast.FlatAst;
+
+/**
+ * Error found while compiling or running a program: an undefined name, a type mismatch, a
+ * division by zero, an index out of bounds and the like. The message ends with the line and
+ * position of the node it was found at.
+ */
+public class ProgramException extends RuntimeException {
+
+    private final int line;
+    private final int position;
+
+    public ProgramException(String message, int line, int position) {
+        super(message + " at " + line + ":" + position);
+        this.line = line;
+        this.position = position;
+    }
+
+    /** Error at node, or at no position when the node has no token. */
+    public static ProgramException at(FlatAst ast, int node, String message) {
+        int token = ast.token(node);
+        if (token == FlatAst.NONE) {
+            return new ProgramException(message, 0, 0);
+        }
+        return new ProgramException(message, ast.tokens().line(token), ast.tokens().position(token));
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
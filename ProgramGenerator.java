@@ -0,0 +1,250 @@
+package benchmark;
+
+import java.util.Random;
+
+/** Generates syntactically valid programs of a given shape from a seed. */
+public class ProgramGenerator {
+
+    private static final String[] RELATIONAL = { " == ", " != ", " > ", " >= ", " < ", " <= " };
+    private static final String[] ADDITIVE = { " + ", " - ", " | " };
+    private static final String[] MULTIPLICATIVE = { " * ", " / ", " % ", " & " };
+    private static final String[] ESCAPES = { "\\n", "\\t", "\\\"", "\\\\" };
+
+    /** The shapes generate() knows, sized by function count except for DEEP_NESTING. */
+    public enum Shape {
+        MANY_FUNCTIONS(2000),
+        EXPRESSION_HEAVY(500),
+        LONG_STRINGS(200),
+        /** Sized by nesting depth. */
+        DEEP_NESTING(300);
+
+        /** Size the benchmarks use unless they are given one. */
+        public final int defaultSize;
+
+        Shape(int defaultSize) {
+            this.defaultSize = defaultSize;
+        }
+    }
+
+    private final Random random;
+    private final StringBuilder sb = new StringBuilder();
+
+    public ProgramGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    public String generate(Shape shape, int size) {
+        switch (shape) {
+            case MANY_FUNCTIONS     : return manyFunctions(size);
+            case EXPRESSION_HEAVY   : return expressionHeavy(size);
+            case LONG_STRINGS       : return longStrings(size, 4096);
+            case DEEP_NESTING       : return deepNesting(size);
+            default                 : throw new IllegalArgumentException("Unknown shape " + shape);
+        }
+    }
+
+    /** A program with functionCount functions and a global variable every ten functions. */
+    public String manyFunctions(int functionCount) {
+        sb.setLength(0);
+        sb.append("program {\n");
+        for (int i = 0; i < functionCount; i++) {
+            if (i % 10 == 0) {
+                sb.append("    int g").append(i).append(" = ").append(random.nextInt(1000)).append(";\n");
+            }
+            function(i);
+        }
+        sb.append("    main() -> void {\n");
+        sb.append("        int x = 0;\n");
+        for (int i = 0; i < Math.min(functionCount, 16); i++) {
+            sb.append("        x = x + @f").append(i).append("(x, ").append(i).append(");\n");
+        }
+        sb.append("        print(x);\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /** A program whose functions are dominated by long expressions using every operator. */
+    public String expressionHeavy(int functionCount) {
+        sb.setLength(0);
+        sb.append("program {\n");
+        for (int i = 0; i < functionCount; i++) {
+            sb.append("    e").append(i).append("(int a, int b) -> int {\n");
+            sb.append("        int[] arr = int[").append(1 + random.nextInt(100)).append("];\n");
+            for (int s = 0; s < 8; s++) {
+                sb.append("        a = ");
+                simpleExpression(4);
+                sb.append(";\n");
+            }
+            sb.append("        while (");
+            relationalExpression(3);
+            sb.append(") {\n");
+            sb.append("            b = ");
+            simpleExpression(4);
+            sb.append(";\n");
+            sb.append("        }\n");
+            sb.append("        return ");
+            relationalExpression(4);
+            sb.append(";\n");
+            sb.append("    }\n");
+        }
+        sb.append("    main() -> void {\n");
+        sb.append("        print(@e0(1, 2));\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /** A program whose functionCount functions print string literals of about stringLength chars. */
+    public String longStrings(int functionCount, int stringLength) {
+        sb.setLength(0);
+        sb.append("program {\n");
+        for (int i = 0; i < functionCount; i++) {
+            sb.append("    s").append(i).append("() -> void {\n");
+            for (int s = 0; s < 4; s++) {
+                sb.append("        print(");
+                stringLiteral(stringLength);
+                sb.append(", ").append(random.nextInt(1000)).append(");\n");
+            }
+            sb.append("    }\n");
+        }
+        sb.append("    main() -> void {\n");
+        sb.append("        @s0();\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * A main function with if/else and while blocks nested depth levels deep, every level with an
+     * assignment whose expression is nested in parentheses as deep as its block, up to 32 levels.
+     */
+    public String deepNesting(int depth) {
+        sb.setLength(0);
+        sb.append("program {\n");
+        sb.append("    main() -> void {\n");
+        sb.append("        int a = 0;\n");
+        boolean[] ifs = new boolean[depth];
+        for (int level = 0; level < depth; level++) {
+            ifs[level] = random.nextBoolean();
+            if (ifs[level]) {
+                sb.append("if (a < ").append(random.nextInt(100)).append(") {\n");
+            } else {
+                sb.append("while (a > ").append(random.nextInt(100)).append(") {\n");
+            }
+            sb.append("a = ");
+            int parentheses = Math.min(level + 1, 32);
+            for (int i = 0; i < parentheses; i++) {
+                sb.append('(');
+            }
+            sb.append('a');
+            for (int i = 0; i < parentheses; i++) {
+                sb.append(ADDITIVE[random.nextInt(ADDITIVE.length)]).append(random.nextInt(10)).append(')');
+            }
+            sb.append(";\n");
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            sb.append(ifs[level] && random.nextBoolean() ? "} else {\nprint(a);\n}\n" : "}\n");
+        }
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void stringLiteral(int length) {
+        sb.append('"');
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(32);
+            if (kind == 0) {
+                sb.append(ESCAPES[random.nextInt(ESCAPES.length)]);
+            } else if (kind < 6) {
+                sb.append(' ');
+            } else {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        sb.append('"');
+    }
+
+    private void relationalExpression(int depth) {
+        simpleExpression(depth);
+        if (random.nextBoolean()) {
+            sb.append(RELATIONAL[random.nextInt(RELATIONAL.length)]);
+            simpleExpression(depth);
+        }
+    }
+
+    private void simpleExpression(int depth) {
+        signedTerm(depth);
+        for (int i = random.nextInt(3); i > 0; i--) {
+            sb.append(ADDITIVE[random.nextInt(ADDITIVE.length)]);
+            signedTerm(depth);
+        }
+    }
+
+    private void signedTerm(int depth) {
+        if (random.nextInt(4) == 0) {
+            sb.append(random.nextBoolean() ? '-' : '!');
+        }
+        term(depth);
+    }
+
+    private void term(int depth) {
+        factor(depth);
+        for (int i = random.nextInt(3); i > 0; i--) {
+            sb.append(MULTIPLICATIVE[random.nextInt(MULTIPLICATIVE.length)]);
+            factor(depth);
+        }
+    }
+
+    private void factor(int depth) {
+        switch (random.nextInt(depth == 0 ? 3 : 10)) {
+            case 0  : sb.append(random.nextInt(1000)); break;
+            case 1  : sb.append('a'); break;
+            case 2  : sb.append('b'); break;
+            case 3  : sb.append(random.nextBoolean() ? "true" : "false"); break;
+            case 4  : sb.append('(');
+                      relationalExpression(depth - 1);
+                      sb.append(')');
+                      break;
+            case 5  : sb.append("arr[");
+                      simpleExpression(depth - 1);
+                      sb.append(']');
+                      break;
+            case 6  : sb.append("length(arr)"); break;
+            case 7  : sb.append("@e0(");
+                      simpleExpression(depth - 1);
+                      sb.append(", ");
+                      simpleExpression(depth - 1);
+                      sb.append(')');
+                      break;
+            default : sb.append(random.nextBoolean() ? 'a' : 'b'); break;
+        }
+    }
+
+    private void function(int index) {
+        sb.append("    f").append(index).append("(int a, int b) -> int {\n");
+        sb.append("        int c = ").append(expression(3)).append(";\n");
+        sb.append("        while (c > ").append(random.nextInt(100)).append(") {\n");
+        sb.append("            c = c - ").append(expression(2)).append(";\n");
+        sb.append("        }\n");
+        sb.append("        if (a < b) { return c; } else { return ").append(expression(2)).append("; }\n");
+        sb.append("    }\n");
+    }
+
+    private String expression(int depth) {
+        if (depth == 0) {
+            switch (random.nextInt(3)) {
+                case 0  : return "a";
+                case 1  : return "b";
+                default : return Integer.toString(random.nextInt(100));
+            }
+        }
+        switch (random.nextInt(4)) {
+            case 0  : return expression(depth - 1) + " + " + expression(depth - 1);
+            case 1  : return expression(depth - 1) + " * " + expression(depth - 1);
+            case 2  : return "(" + expression(depth - 1) + " - " + expression(depth - 1) + ")";
+            default : return expression(depth - 1) + " % " + (1 + random.nextInt(9));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package interpreter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The print and read statements of a running program. print() writes its arguments on one line
+ * separated by blanks, read() takes one whitespace separated word per variable. Both engines
+ * format values through here, so they print the same text for the same program.
+ */
+public class ProgramIO {
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final StringBuilder line = new StringBuilder();
+    private String pending = "";
+    private int pendingOffset;
+    private boolean first = true;
+
+    public ProgramIO(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+    }
+
+    void print(String text) {
+        if (!first) {
+            line.append(' ');
+        }
+        line.append(text);
+        first = false;
+    }
+
+    void println() {
+        out.println(line);
+        line.setLength(0);
+        first = true;
+    }
+
+    static String format(int value, ValueType type) {
+        switch (type) {
+            case CHAR       : return String.valueOf((char) value);
+            case BOOLEAN    : return String.valueOf(value != 0);
+            default         : return String.valueOf(value);
+        }
+    }
+
+    /** char[] prints as its text, int[] and boolean[] as a bracketed list. */
+    static String format(int[] array, ValueType type) {
+        if (array == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(array.length * 2 + 2);
+        if (type == ValueType.CHAR_ARRAY) {
+            for (int value : array) {
+                sb.append((char) value);
+            }
+            return sb.toString();
+        }
+        sb.append('[');
+        for (int i = 0; i < array.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(format(array[i], type.element()));
+        }
+        return sb.append(']').toString();
+    }
+
+    /** Reads the next word as a value of a scalar type, line and position are those of the read. */
+    int read(ValueType type, int line, int position) {
+        String word = word(line, position);
+        switch (type) {
+            case CHAR:
+                return word.charAt(0);
+            case BOOLEAN:
+                if (word.equals("true") || word.equals("false")) {
+                    return word.equals("true") ? 1 : 0;
+                }
+                throw new ProgramException("Expected true or false, read " + word, line, position);
+            default:
+                try {
+                    return Integer.parseInt(word);
+                } catch (NumberFormatException e) {
+                    throw new ProgramException("Expected an int, read " + word, line, position);
+                }
+        }
+    }
+
+    private String word(int line, int position) {
+        try {
+            while (true) {
+                while (pendingOffset < pending.length() && Character.isWhitespace(pending.charAt(pendingOffset))) {
+                    pendingOffset++;
+                }
+                if (pendingOffset < pending.length()) {
+                    int start = pendingOffset;
+                    while (pendingOffset < pending.length() && !Character.isWhitespace(pending.charAt(pendingOffset))) {
+                        pendingOffset++;
+                    }
+                    return pending.substring(start, pendingOffset);
+                }
+                pending = in.readLine();
+                pendingOffset = 0;
+                if (pending == null) {
+                    pending = "";
+                    throw new ProgramException("Unexpected end of input", line, position);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package driver;
+
+import ast.FlatAst;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import interpreter.AstInterpreter;
+import interpreter.Bytecode;
+import interpreter.BytecodeCompiler;
+import interpreter.ClassFileBackend;
+import interpreter.ProgramException;
+import interpreter.ProgramIO;
+import interpreter.VirtualMachine;
+import lexer.PackedLexer;
+import optimizer.PassPipeline;
+import parser.FlatAstParser;
+import semantic.SemanticChecker;
+import source.CharArraySource;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs a program with standard input and output for its read and print statements. By default it
+ * is compiled to bytecode and run on the VirtualMachine, --ast runs it on the AstInterpreter, --jit
+ * compiles the bytecode to a JVM class with ClassFileBackend and --disassemble prints the bytecode
+ * instead of running it. --optimize runs the standard PassPipeline first and prints its statistics
+ * to standard error. --check runs the SemanticChecker before anything else and reports every error
+ * it finds instead of only the first. Output is buffered and flushed when the program ends.
+ *
+ * Usage: ProgramRunner [--ast | --jit] [--check] [--optimize] [--disassemble] file
+ */
+public class ProgramRunner {
+
+    public static void main(String[] args) throws IOException {
+        boolean astInterpreter = false;
+        boolean jit = false;
+        boolean check = false;
+        boolean optimize = false;
+        boolean disassemble = false;
+        String path = null;
+        for (String argument : args) {
+            switch (argument) {
+                case "--ast":           astInterpreter = true; break;
+                case "--jit":           jit = true; break;
+                case "--check":         check = true; break;
+                case "--optimize":      optimize = true; break;
+                case "--disassemble":   disassemble = true; break;
+                default:                path = argument; break;
+            }
+        }
+        if (path == null) {
+            System.err.println("Usage: ProgramRunner [--ast | --jit] [--check] [--optimize] [--disassemble] file");
+            System.exit(2);
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                false, StandardCharsets.UTF_8.name());
+        ProgramIO io = new ProgramIO(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), out);
+        try {
+            FlatAst ast = new FlatAstParser(new PackedLexer(CharArraySource.fromFile(path)).tokenize()).parse();
+            if (check) {
+                List<ProgramException> errors = new SemanticChecker(ForkJoinPool.commonPool()).check(ast);
+                for (ProgramException error : errors) {
+                    System.err.println(path + ": " + error.getMessage());
+                }
+                if (!errors.isEmpty()) {
+                    System.exit(1);
+                }
+            }
+            if (optimize) {
+                PassPipeline pipeline = PassPipeline.standard();
+                ast = pipeline.run(ast);
+                System.err.print(pipeline.statistics().summary());
+            }
+            if (astInterpreter) {
+                new AstInterpreter(ast, io).run();
+                return;
+            }
+            Bytecode bytecode = BytecodeCompiler.compile(ast);
+            if (disassemble) {
+                out.print(bytecode.disassemble());
+            } else if (jit) {
+                ClassFileBackend.compile(bytecode).run(io);
+            } else {
+                new VirtualMachine(bytecode, io).run();
+            }
+        } catch (LexicalException | SyntaxException | ProgramException e) {
+            out.flush();
+            System.err.println(path + ": " + e.getMessage());
+            System.exit(1);
+        } finally {
+            out.flush();
+        }
+    }
+}
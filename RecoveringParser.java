@@ -0,0 +1,180 @@
+package parser;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import bg.tu_varna.kst_sit.ci_ep.exceptions.SyntaxException;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * FlatAstParser that keeps going after syntax errors. A statement or top-level definition that fails
+ * to parse is recorded as a diagnostic and replaced by an ERROR node, then the parser skips ahead in
+ * panic mode: past the next ';', or to the next '}' that closes the enclosing block. Braces opened in
+ * the skipped tokens are skipped up to their closing '}'. The result is a partial FlatAst and every
+ * diagnostic of the file, each with the message ParserImpl would have thrown at that point.
+ */
+public class RecoveringParser extends FlatAstParser {
+
+    private final List<RuntimeException> diagnostics;
+    private boolean reportedEnd;
+
+    /** Parser whose syntax errors are appended to diagnostics. */
+    public RecoveringParser(TokenBuffer tokens, List<RuntimeException> diagnostics) {
+        super(tokens);
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * Lexes source with lexical error recovery, the diagnostics list starts with the lexical errors
+     * and the syntax errors follow once parse() has run.
+     */
+    public static RecoveringParser of(CharArraySource source) {
+        List<RuntimeException> diagnostics = new ArrayList<>();
+        TokenBuffer tokens = new PackedLexer(source).withSymbols(new SymbolTable()).withRecovery(diagnostics).tokenize();
+        return new RecoveringParser(tokens, diagnostics);
+    }
+
+    public List<RuntimeException> diagnostics() {
+        return diagnostics;
+    }
+
+    @Override
+    public FlatAst parse() {
+        expect(TokenType.PROGRAM);
+        expect(TokenType.LBRACKET);
+        int body = programBody();
+        expect(TokenType.RBRACKET);
+        ast.setRoot(body);
+        return ast;
+    }
+
+    @Override
+    int programBody() {
+        int first = NONE;
+        int last = NONE;
+        boolean main = false;
+        while (!atEnd() && type() != TokenType.RBRACKET && !main) {
+            int node;
+            if (atGlobalDefinition()) {
+                node = recover(super::globalDefinition);
+            } else {
+                node = recover(super::mainFunction);
+                main = true;
+            }
+            last = append(last, node);
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        if (!main) {
+            last = append(last, recover(super::mainFunction));
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        return ast.add(NodeKind.PROGRAM_BODY, NONE, first);
+    }
+
+    @Override
+    int block() {
+        int first = NONE;
+        int last = NONE;
+        accept(TokenType.LBRACKET);
+        while (!atEnd() && type() != TokenType.RBRACKET) {
+            if (TokenType.isStatementTerminal(type())) {
+                last = append(last, statement());
+            } else {
+                last = append(last, recover(this::closingBracket));
+            }
+            if (first == NONE) {
+                first = last;
+            }
+        }
+        expect(TokenType.RBRACKET);
+        return ast.add(NodeKind.BLOCK, NONE, first);
+    }
+
+    @Override
+    int statement() {
+        return recover(super::statement);
+    }
+
+    /** Fails with the error ParserImpl gives for a token that neither starts a statement nor ends the block. */
+    private int closingBracket() {
+        accept(TokenType.RBRACKET);
+        return NONE;
+    }
+
+    private int recover(IntSupplier rule) {
+        try {
+            return rule.getAsInt();
+        } catch (SyntaxException e) {
+            report(e);
+            int error = ast.add(NodeKind.ERROR, Math.min(current, tokens.size() - 1), NONE);
+            synchronize();
+            return error;
+        }
+    }
+
+    /** Accepts tokenType if it is next, otherwise reports the mismatch and leaves the token in place. */
+    private void expect(TokenType tokenType) {
+        try {
+            accept(tokenType);
+        } catch (SyntaxException e) {
+            report(e);
+        }
+    }
+
+    /** Records e, but running out of input only once. */
+    private void report(SyntaxException e) {
+        if (atEnd()) {
+            if (reportedEnd) {
+                return;
+            }
+            reportedEnd = true;
+        }
+        diagnostics.add(e);
+    }
+
+    /**
+     * Skips past the next ';' outside of braces, or to the next '}' that closes nothing skipped. A
+     * '}' that closes a brace opened here is consumed together with an else that follows it, so a
+     * broken if or while statement is skipped whole.
+     */
+    private void synchronize() {
+        int depth = 0;
+        while (!atEnd()) {
+            TokenType type = tokens.type(current);
+            if (type == TokenType.LBRACKET) {
+                depth++;
+            } else if (type == TokenType.RBRACKET) {
+                if (depth == 0) {
+                    return;
+                }
+                if (--depth == 0) {
+                    current++;
+                    if (!atEnd() && tokens.type(current) == TokenType.ELSE) {
+                        current++;
+                        continue;
+                    }
+                    return;
+                }
+            } else if (type == TokenType.SEMICOLON && depth == 0) {
+                current++;
+                return;
+            }
+            current++;
+        }
+    }
+
+    private boolean atEnd() {
+        return current >= tokens.size();
+    }
+}
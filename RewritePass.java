@@ -0,0 +1,185 @@
+package optimizer;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import lexer.TokenBuffer;
+import token.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * Base of the passes that rebuild a tree bottom up. Nodes are visited in index order, which puts
+ * every child before its parent, and rewrite() returns the node that replaces each one in a new
+ * tree, or NONE to remove it; a BLOCK a statement is replaced by has its statements spliced into
+ * the enclosing block. The new tree is compacted at the end, which drops nodes that were built but
+ * left out of it.
+ */
+abstract class RewritePass implements AstPass {
+
+    /** Largest magnitude a folded int may have: NUMBER tokens hold 0..Integer.MAX_VALUE. */
+    static final long MAX_LITERAL = Integer.MAX_VALUE;
+
+    FlatAst in;
+    FlatAst out;
+    /** Node of out that replaces each node of in, NONE once removed. */
+    int[] map;
+    private int[] children = new int[16];
+
+    @Override
+    public FlatAst apply(FlatAst ast) {
+        in = ast;
+        out = new FlatAst(ast.tokens(), ast.size());
+        map = new int[ast.size()];
+        prepare();
+        for (int node = 0; node < ast.size(); node++) {
+            map[node] = rewrite(node);
+        }
+        out.setRoot(ast.root() == FlatAst.NONE ? FlatAst.NONE : map[ast.root()]);
+        FlatAst result = out.copy(ast.tokens());
+        in = out = null;
+        map = null;
+        return result;
+    }
+
+    /** Called before the first rewrite(), for passes that look at the whole tree first. */
+    void prepare() {
+    }
+
+    /** Returns the node of out that replaces node, whose children are already rewritten. */
+    int rewrite(int node) {
+        return copy(node);
+    }
+
+    /** Copies node over the rewritten children, leaving out removed ones. */
+    int copy(int node) {
+        return node(in.kind(node), in.token(node), children(node));
+    }
+
+    /** Rewritten children of node in out, a BLOCK in place of a statement contributes its statements. */
+    int[] children(int node) {
+        boolean block = in.kind(node) == NodeKind.BLOCK;
+        int count = 0;
+        for (int child = in.firstChild(node); child != FlatAst.NONE; child = in.nextSibling(child)) {
+            int mapped = map[child];
+            if (mapped == FlatAst.NONE) {
+                continue;
+            }
+            if (block && out.kind(mapped) == NodeKind.BLOCK) {
+                for (int statement = out.firstChild(mapped); statement != FlatAst.NONE; statement = out.nextSibling(statement)) {
+                    children = add(children, count++, statement);
+                }
+            } else {
+                children = add(children, count++, mapped);
+            }
+        }
+        return Arrays.copyOf(children, count);
+    }
+
+    static int[] add(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, index * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /** Appends a node of out over the given nodes of out, which become its only children. */
+    int node(NodeKind kind, int token, int... nodes) {
+        for (int i = 0; i < nodes.length; i++) {
+            out.link(nodes[i], i + 1 < nodes.length ? nodes[i + 1] : FlatAst.NONE);
+        }
+        return out.add(kind, token, nodes.length == 0 ? FlatAst.NONE : nodes[0]);
+    }
+
+    /** A token made up at the line and position of the token of node in in, text null for none. */
+    int token(TokenType type, String text, int node) {
+        TokenBuffer tokens = in.tokens();
+        int at = in.token(node);
+        int line = at == FlatAst.NONE ? 0 : tokens.line(at);
+        int position = at == FlatAst.NONE ? 0 : tokens.position(at);
+        return tokens.addSynthetic(type, text, line, position);
+    }
+
+    /**
+     * An int literal with the value in place of node: an INTEGER, or MINUS over an INTEGER when
+     * negative. NONE when the value does not fit in a NUMBER token.
+     */
+    int integer(long value, int node) {
+        if (value > MAX_LITERAL || value < -MAX_LITERAL) {
+            return FlatAst.NONE;
+        }
+        int literal = node(NodeKind.INTEGER, token(TokenType.NUMBER, String.valueOf(Math.abs(value)), node));
+        return value < 0 ? node(NodeKind.MINUS, token(TokenType.MINUS, null, node), literal) : literal;
+    }
+
+    int bool(boolean value, int node) {
+        return node(NodeKind.BOOLEAN, token(value ? TokenType.TRUE : TokenType.FALSE, null, node));
+    }
+
+    /** Value of an int or char literal node of ast, MINUS over an INTEGER included, or null. */
+    static Long intConstant(FlatAst ast, int node) {
+        switch (ast.kind(node)) {
+            case INTEGER:
+                return Long.parseLong(ast.text(node));
+            case CHARACTER_LITERAL:
+                return (long) ast.text(node).charAt(0);
+            case MINUS: {
+                int operand = ast.firstChild(node);
+                return ast.kind(operand) == NodeKind.INTEGER ? -Long.parseLong(ast.text(operand)) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    /** Whether a literal node of ast is true as a condition, null if it is not a literal. */
+    static Boolean truth(FlatAst ast, int node) {
+        if (ast.kind(node) == NodeKind.BOOLEAN) {
+            return ast.tokens().type(ast.token(node)) == TokenType.TRUE;
+        }
+        Long value = intConstant(ast, node);
+        return value == null ? null : value != 0;
+    }
+
+    /** Whether a node of ast always has a boolean value, so using it in place of x & true keeps types. */
+    static boolean isBoolean(FlatAst ast, int node) {
+        NodeKind kind = ast.kind(node);
+        return kind.isRelationalOperator() || kind == NodeKind.AND || kind == NodeKind.OR
+                || kind == NodeKind.NOT || kind == NodeKind.BOOLEAN;
+    }
+
+    /**
+     * Whether evaluating a node of in can neither fail nor have an effect: no calls, no division,
+     * no array access. Uses the contiguous subtree ranges of in.
+     */
+    boolean isPure(int node) {
+        for (int inner = in.subtreeStart(node); inner <= node; inner++) {
+            switch (in.kind(inner)) {
+                case FUNCTION_CALL:
+                case DIVISION:
+                case MOD:
+                case ARRAY_LENGTH:
+                case ARRAY_INIT:
+                    return false;
+                case VARIABLE:
+                    if (in.firstChild(inner) != FlatAst.NONE) {
+                        return false;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /** Whether the subtree of a node of in contains a node of the kind. */
+    boolean contains(int node, NodeKind kind) {
+        for (int inner = in.subtreeStart(node); inner <= node; inner++) {
+            if (in.kind(inner) == kind) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
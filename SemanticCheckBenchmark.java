@@ -0,0 +1,75 @@
+package benchmark;
+
+import ast.FlatAst;
+import interpreter.ProgramException;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import parser.FlatAstParser;
+import semantic.SemanticChecker;
+import source.CharArraySource;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks one generated file with thousands of functions with SemanticChecker on the calling
+ * thread and on 1..N worker threads. Lexing and parsing are done once up front, only the check
+ * is measured, and every run must report the same errors.
+ */
+public class SemanticCheckBenchmark {
+
+    private static final int WARMUP_RUNS = 15;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String program = new ProgramGenerator(42).manyFunctions(functions);
+        FlatAst ast = new FlatAstParser(new PackedLexer(new CharArraySource(program))
+                .withSymbols(new SymbolTable()).tokenize()).parse();
+
+        List<ProgramException> errors = new SemanticChecker().check(ast);
+        String expected = messages(errors);
+        System.out.printf("%d functions, %d nodes, %d errors%n", functions, ast.size(), errors.size());
+
+        long sequential = measure(() -> new SemanticChecker().check(ast), expected);
+        System.out.printf("%-12s %8.2f ms%n", "sequential", sequential / 1e6);
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                long best = measure(() -> new SemanticChecker(pool).check(ast), expected);
+                System.out.printf("%-12s %8.2f ms %6.2fx%n", threads + " threads", best / 1e6, (double) sequential / best);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    interface Check {
+        List<ProgramException> run();
+    }
+
+    private static String messages(List<ProgramException> errors) {
+        StringBuilder sb = new StringBuilder();
+        for (ProgramException error : errors) {
+            sb.append(error.getMessage()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static long measure(Check check, String expected) {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            List<ProgramException> errors = check.run();
+            long elapsed = System.nanoTime() - start;
+            if (!expected.equals(messages(errors))) {
+                throw new IllegalStateException("Errors differ from the sequential check");
+            }
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+}
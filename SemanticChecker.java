@@ -0,0 +1,83 @@
+package semantic;
+
+import ast.FlatAst;
+import interpreter.ProgramException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Checks a parsed program for undefined variables and functions, calls with the wrong number of
+ * arguments, values of the wrong type in assignments, returns and arguments, and array indexes
+ * that are not scalars, and reports every error instead of stopping at the first. A program
+ * without errors is one BytecodeCompiler compiles.
+ *
+ * The definitions of the program body are indexed once into a {@link GlobalScope}. The body of
+ * every function is then checked on its own with a scope of its locals on top of it, in parallel
+ * on the pool. Errors come in program order: those of the definitions, of the global initializers
+ * and then of each function.
+ */
+public class SemanticChecker {
+
+    private static final int FUNCTIONS_PER_TASK = 16;
+
+    private final ForkJoinPool pool;
+
+    public SemanticChecker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /** Checker that runs the function checks one after another on the calling thread. */
+    public SemanticChecker() {
+        this(null);
+    }
+
+    public List<ProgramException> check(FlatAst ast) {
+        GlobalScope globals = GlobalScope.of(ast);
+        List<GlobalScope.Function> functions = globals.functions();
+        FunctionChecker[] checkers = new FunctionChecker[functions.size()];
+        for (int i = 0; i < checkers.length; i++) {
+            checkers[i] = new FunctionChecker(globals, functions.get(i));
+        }
+        if (pool != null) {
+            pool.invoke(new CheckTask(checkers, 0, checkers.length));
+        } else {
+            for (FunctionChecker checker : checkers) {
+                checker.check();
+            }
+        }
+
+        List<ProgramException> errors = new ArrayList<>(globals.errors());
+        errors.addAll(new FunctionChecker(globals, null).check().errors());
+        for (FunctionChecker checker : checkers) {
+            errors.addAll(checker.errors());
+        }
+        return errors;
+    }
+
+    private static class CheckTask extends RecursiveAction {
+        private final FunctionChecker[] checkers;
+        private final int from;
+        private final int to;
+
+        CheckTask(FunctionChecker[] checkers, int from, int to) {
+            this.checkers = checkers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FUNCTIONS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    checkers[i].check();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CheckTask(checkers, from, middle), new CheckTask(checkers, middle, to));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package parser;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.global_definition.GlobalDefinitionNode;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import token.TokenType;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Pull and push variants of programBody() that hand out every top-level definition as soon as it is
+ * parsed instead of collecting them into a ProgramBodyNode. With a streaming lexer only the
+ * definition being parsed is held in memory. main is handed out last, once the closing brace of the
+ * program has been read.
+ */
+public class StreamingParser extends ParserImpl implements Iterator<GlobalDefinitionNode> {
+
+    private boolean started;
+    private boolean finished;
+    private GlobalDefinitionNode next;
+
+    public StreamingParser(Lexer<TokenType> lexer) {
+        super(lexer);
+    }
+
+    /** Parses the whole program, calling consumer with every definition in source order. */
+    public void parse(Consumer<? super GlobalDefinitionNode> consumer) {
+        while (hasNext()) {
+            consumer.accept(next());
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            next = parseNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public GlobalDefinitionNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        GlobalDefinitionNode definition = next;
+        next = null;
+        return definition;
+    }
+
+    private GlobalDefinitionNode parseNext() {
+        if (!started) {
+            started = true;
+            accept(TokenType.PROGRAM);
+            accept(TokenType.LBRACKET);
+        }
+        boolean main = !atGlobalDefinition();
+        GlobalDefinitionNode definition = topLevelDefinition();
+        currentNode = null;
+        if (main) {
+            accept(TokenType.RBRACKET);
+            finished = true;
+        }
+        return definition;
+    }
+}
@@ -0,0 +1,84 @@
+package semantic;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from symbol ids to int values, without boxing either. Ids are never
+ * negative, so a get() of an absent id can answer -1.
+ */
+final class SymbolMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    SymbolMap(int expected) {
+        int capacity = 8;
+        while (capacity < expected * 2) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Value of symbol, -1 if it is absent. */
+    int get(int symbol) {
+        int mask = keys.length - 1;
+        for (int slot = mix(symbol) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (keys[slot] == symbol) {
+                return values[slot];
+            }
+        }
+        return -1;
+    }
+
+    /** Maps symbol to value unless it is present, returns the value it had or -1. */
+    int putIfAbsent(int symbol, int value) {
+        int mask = keys.length - 1;
+        int slot = mix(symbol) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == symbol) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = symbol;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return -1;
+    }
+
+    /** Ids are dense, the multiplication spreads neighbours over the table. */
+    private static int mix(int symbol) {
+        int h = symbol * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
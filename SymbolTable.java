@@ -0,0 +1,160 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.IdentifierToken;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interning table that gives every distinct identifier a small int id. Each name is stored once,
+ * so all tokens of the same identifier share one String and later phases can compare ids.
+ */
+public class SymbolTable {
+
+    /** Id of "main", which every table interns first. */
+    public static final int MAIN = 0;
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] slots = new int[128];
+    private int size;
+
+    public SymbolTable() {
+        intern("main");
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int intern(char[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(new String(buffer, start, length), hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], buffer, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    /** Interns the ASCII name in bytes[start, start + length), with the same ids as the char overload. */
+    public int intern(ByteBuffer bytes, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + bytes.get(i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                char[] name = new char[length];
+                for (int i = 0; i < length; i++) {
+                    name[i] = (char) bytes.get(start + i);
+                }
+                return add(new String(name), hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], bytes, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    public int intern(CharSequence name) {
+        int id = lookup(name);
+        if (id >= 0) {
+            return id;
+        }
+        String text = name.toString();
+        int hash = text.hashCode();
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return add(text, hash, slot);
+    }
+
+    /** Id of name, or -1 when it was never interned. */
+    public int lookup(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && names[id].contentEquals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /** Symbol id carried by token, or -1 for tokens that were not interned. */
+    public static int symbolOf(Token<?> token) {
+        return token instanceof IdentifierToken ? ((IdentifierToken) token).getSymbolId() : -1;
+    }
+
+    private static boolean matches(String name, char[] buffer, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(String name, ByteBuffer bytes, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != bytes.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        int id = size++;
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import token.IdentifierToken;
+import token.TokenImpl;
+import token.TokenType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Token stream stored as packed entries in parallel int arrays over the source buffer, which is
+ * either a char[] or the UTF-8 bytes read by {@link ByteBufferLexer}. Token text is only
+ * materialized when getText() is called and is kept afterwards.
+ */
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int TYPE_MASK = 0xFFFF;
+    private static final int HAS_TEXT = 1 << 16;
+
+    private char[] source;
+    private final ByteBuffer bytes;
+    private final SymbolTable symbols;
+    private int size;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] positions;
+    private int[] values;
+    private String[] texts;
+
+    public TokenBuffer(char[] source) {
+        this(source, null, 256);
+    }
+
+    /** Buffer whose IDENTIFIER entries hold an id from symbols instead of a text span. */
+    public TokenBuffer(char[] source, SymbolTable symbols, int capacity) {
+        this(source, null, symbols, capacity);
+    }
+
+    /** Buffer over UTF-8 bytes, starts and lengths of its entries count bytes instead of chars. */
+    public TokenBuffer(ByteBuffer bytes, SymbolTable symbols, int capacity) {
+        this(null, bytes, symbols, capacity);
+    }
+
+    private TokenBuffer(char[] source, ByteBuffer bytes, SymbolTable symbols, int capacity) {
+        this.source = source;
+        this.bytes = bytes;
+        this.symbols = symbols;
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        positions = new int[capacity];
+        values = new int[capacity];
+        texts = new String[capacity];
+    }
+
+    void add(TokenType type, boolean hasText, int start, int length, int line, int position, int value) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = hasText ? type.ordinal() | HAS_TEXT : type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        positions[size] = position;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Appends a token that has no lexeme in the source, such as a literal computed by an optimizer
+     * pass, and returns its index. text is null for tokens that carry none, like keywords.
+     */
+    public int addSynthetic(TokenType type, String text, int line, int position) {
+        int value = 0;
+        if (type == TokenType.NUMBER) {
+            value = Integer.parseInt(text);
+        } else if (type == TokenType.IDENTIFIER && symbols != null) {
+            value = symbols.intern(text);
+        }
+        add(type, text != null, 0, 0, line, position, value);
+        if (text != null) {
+            texts[size - 1] = text;
+        }
+        return size - 1;
+    }
+
+    /** Copy with its own token arrays that shares the source and the SymbolTable. */
+    public TokenBuffer copy() {
+        TokenBuffer copy = new TokenBuffer(source, bytes, symbols, Math.max(16, size));
+        copy.size = size;
+        System.arraycopy(types, 0, copy.types, 0, size);
+        System.arraycopy(starts, 0, copy.starts, 0, size);
+        System.arraycopy(lengths, 0, copy.lengths, 0, size);
+        System.arraycopy(lines, 0, copy.lines, 0, size);
+        System.arraycopy(positions, 0, copy.positions, 0, size);
+        System.arraycopy(values, 0, copy.values, 0, size);
+        System.arraycopy(texts, 0, copy.texts, 0, size);
+        return copy;
+    }
+
+    /**
+     * Replaces tokens [from, to) with the tokens of replacement after an edit of the source, which
+     * may have moved to a new array. The tokens after the edit moved by offsetDelta chars and
+     * lineDelta lines. Both buffers must share the same SymbolTable.
+     */
+    public void splice(int from, int to, TokenBuffer replacement, char[] source, int offsetDelta, int lineDelta) {
+        int count = replacement.size;
+        int tail = size - to;
+        int newSize = from + count + tail;
+        while (newSize > types.length) {
+            grow();
+        }
+        moveTail(types, replacement.types, from, to, count, tail);
+        moveTail(starts, replacement.starts, from, to, count, tail);
+        moveTail(lengths, replacement.lengths, from, to, count, tail);
+        moveTail(lines, replacement.lines, from, to, count, tail);
+        moveTail(positions, replacement.positions, from, to, count, tail);
+        moveTail(values, replacement.values, from, to, count, tail);
+        System.arraycopy(texts, to, texts, from + count, tail);
+        Arrays.fill(texts, from, from + count, null);
+        if (offsetDelta != 0 || lineDelta != 0) {
+            for (int i = from + count; i < newSize; i++) {
+                starts[i] += offsetDelta;
+                lines[i] += lineDelta;
+            }
+        }
+        size = newSize;
+        this.source = source;
+    }
+
+    private static void moveTail(int[] array, int[] replacement, int from, int to, int count, int tail) {
+        System.arraycopy(array, to, array, from + count, tail);
+        System.arraycopy(replacement, 0, array, from, count);
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, types.length * 2);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        values = Arrays.copyOf(values, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** The char source, null for a buffer over bytes. */
+    public char[] source() {
+        return source;
+    }
+
+    /** The byte source, null for a buffer over chars. */
+    public ByteBuffer bytes() {
+        return bytes;
+    }
+
+    public SymbolTable symbols() {
+        return symbols;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index] & TYPE_MASK];
+    }
+
+    public boolean hasText(int index) {
+        return (types[index] & HAS_TEXT) != 0;
+    }
+
+    /** Offset of the first char, or byte, of the lexeme in the source buffer. */
+    public int start(int index) {
+        return starts[index];
+    }
+
+    /** Length of the lexeme in chars, or bytes, quotes included for literals. */
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    public int position(int index) {
+        return positions[index];
+    }
+
+    /** Parsed value of a NUMBER token. */
+    public int intValue(int index) {
+        return values[index];
+    }
+
+    /** Symbol id of an IDENTIFIER token, or -1 when the buffer has no SymbolTable. */
+    public int symbolId(int index) {
+        return symbols != null && type(index) == TokenType.IDENTIFIER ? values[index] : -1;
+    }
+
+    /**
+     * Text of the token, materialized on first use. Threads may call this concurrently on a buffer
+     * that is no longer modified: texts is allocated with the other arrays, so the only shared write
+     * is the store of an immutable String that every racing thread computes equal.
+     */
+    public String getText(int index) {
+        if (!hasText(index)) {
+            return null;
+        }
+        String text = texts[index];
+        if (text == null) {
+            text = texts[index] = materialize(index);
+        }
+        return text;
+    }
+
+    private String materialize(int index) {
+        int start = starts[index];
+        int length = lengths[index];
+        TokenType type = type(index);
+        if (type == TokenType.IDENTIFIER && symbols != null) {
+            return symbols.name(values[index]);
+        }
+        if (bytes != null) {
+            return materializeBytes(type, start, length, values[index]);
+        }
+        switch (type) {
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                return unescape(source, start + 1, start + length - 1);
+            default:
+                return new String(source, start, length);
+        }
+    }
+
+    /**
+     * Decodes only the bytes of the token. An OTHER entry with a value of 1 or 2 stands for one
+     * half of the surrogate pair its four bytes decode to.
+     */
+    private String materializeBytes(TokenType type, int start, int length, int value) {
+        switch (type) {
+            case STRING_LITERAL:
+            case CHAR_LITERAL:
+                char[] chars = normalizeLines(decode(start + 1, length - 2));
+                return unescape(chars, 0, chars.length);
+            case OTHER:
+                String text = decode(start, length);
+                return value == 0 ? text : text.substring(value - 1, value);
+            default:
+                char[] ascii = new char[length];
+                for (int i = 0; i < length; i++) {
+                    ascii[i] = (char) bytes.get(start + i);
+                }
+                return new String(ascii);
+        }
+    }
+
+    private String decode(int start, int length) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.limit(start + length);
+        slice.position(start);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /** "\r\n" and "\r" become '\n', as CharArraySource does for the char lexers. */
+    private static char[] normalizeLines(String text) {
+        char[] chars = text.toCharArray();
+        if (text.indexOf('\r') < 0) {
+            return chars;
+        }
+        int out = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == '\r' && i + 1 < chars.length && chars[i + 1] == '\n') {
+                continue;
+            }
+            chars[out++] = chars[i] == '\r' ? '\n' : chars[i];
+        }
+        return Arrays.copyOf(chars, out);
+    }
+
+    private static String unescape(char[] chars, int from, int to) {
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char ch = chars[i];
+            if (ch == '\\' && escapedChar(chars[i + 1]) != 0) {
+                ch = escapedChar(chars[++i]);
+            } else if (ch == '\\') {
+                // recovered bad escape, LexerImpl keeps the char after the backslash
+                ch = chars[++i] == '\n' ? ' ' : chars[i];
+            } else if (ch == '\n') {
+                ch = ' ';
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /** Value of the escape sequence \ch, or 0 when ch does not form a valid escape. */
+    static char escapedChar(char ch) {
+        switch (ch) {
+            case 'n'    : return '\n';
+            case 't'    : return '\t';
+            case 'b'    : return '\b';
+            case 'r'    : return '\r';
+            case 'f'    : return '\f';
+            case '\''   : return '\'';
+            case '"'    : return '"';
+            case '\\'   : return '\\';
+            default     : return 0;
+        }
+    }
+
+    public Token<TokenType> token(int index) {
+        int symbol = symbolId(index);
+        if (symbol >= 0) {
+            return new IdentifierToken(symbols.name(symbol), symbol, positions[index], lines[index]);
+        }
+        if (hasText(index)) {
+            return new TokenImpl(type(index), getText(index), positions[index], lines[index]);
+        }
+        return new TokenImpl(type(index), positions[index], lines[index]);
+    }
+
+    /** Replays the whole buffer through the Lexer interface. */
+    public Lexer<TokenType> lexer() {
+        return lexer(0, size);
+    }
+
+    /** Replays the tokens in [from, to), nextToken() returns null afterwards like LexerImpl at EOF. */
+    public Lexer<TokenType> lexer(int from, int to) {
+        return new Lexer<TokenType>(null) {
+            private int next = from;
+
+            @Override
+            public Token<TokenType> nextToken() {
+                return next < to ? token(next++) : null;
+            }
+        };
+    }
+}
@@ -0,0 +1,416 @@
+package lexer;
+
+import bg.tu_varna.kst_sit.ci_ep.exceptions.LexicalException;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import source.CharArraySource;
+import token.IdentifierToken;
+import token.TokenImpl;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk cache of token streams, one file per distinct source content, named by the SHA-256 of
+ * the file bytes. A hit replays the stored tokens through the Lexer interface without decoding or
+ * lexing the source, a miss lexes it with PackedLexer and stores the result. Sources with lexical
+ * errors are not cached, they are lexed by LexerImpl so the exception is thrown at the same token.
+ * <p>
+ * An entry holds a string table with every distinct token text once, followed by the tokens as
+ * varints: type ordinal and text flag, string index when there is a text, line delta to the
+ * previous token and position. Entries are evicted least recently used first once the directory
+ * grows past maxBytes, the order is kept across runs in the file modification times.
+ * <p>
+ * An entry is checked in full when it is looked up, against its CRC32 and token by token. One
+ * that is corrupt, truncated or of another version is a miss: it is removed and the file is lexed
+ * and stored again.
+ */
+public class TokenCache {
+
+    private static final int MAGIC = 0x544F4B43;
+    private static final int VERSION = 2;
+    /** MAGIC and the CRC32 of the rest of the entry. */
+    private static final int HEADER_BYTES = 8;
+    private static final String SUFFIX = ".tok";
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    public TokenCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Map<Path, FileTime> modified = new HashMap<>();
+        for (Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort((a, b) -> modified.get(a).compareTo(modified.get(b)));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes += size;
+        }
+        evict();
+    }
+
+    /** Tokens of file, replayed from the cache when its content was lexed before. */
+    public Lexer<TokenType> lexer(Path file, SymbolTable symbols) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        String key = key(content);
+        Lexer<TokenType> cached = lookup(key, symbols);
+        if (cached != null) {
+            return cached;
+        }
+        CharArraySource source = new CharArraySource(new String(content, StandardCharsets.UTF_8));
+        TokenBuffer tokens;
+        try {
+            tokens = new PackedLexer(source).withSymbols(symbols).tokenize();
+        } catch (LexicalException e) {
+            return new LexerImpl(source, symbols);
+        }
+        store(key, tokens);
+        return tokens.lexer();
+    }
+
+    /** Replays the entry stored under key, or returns null when there is none. */
+    public Lexer<TokenType> lookup(String key, SymbolTable symbols) throws IOException {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses++;
+                return null;
+            }
+        }
+        Path file = entryFile(key);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted by another process sharing the directory
+            data = null;
+        }
+        CachedLexer lexer = data != null ? CachedLexer.open(data, symbols) : null;
+        synchronized (this) {
+            if (lexer == null) {
+                remove(key);
+                misses++;
+                return null;
+            }
+            hits++;
+            return lexer;
+        }
+    }
+
+    /** Stores all tokens of a buffer under key, replacing any previous entry. */
+    public void store(String key, TokenBuffer tokens) throws IOException {
+        byte[] data = encode(tokens);
+        if (data.length > maxBytes) {
+            return;
+        }
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, data);
+            Files.move(temp, entryFile(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        synchronized (this) {
+            Long previous = entries.put(key, (long) data.length);
+            totalBytes += data.length - (previous != null ? previous : 0);
+            evict();
+        }
+    }
+
+    /** Hex SHA-256 of content, the name of its entry. */
+    public static String key(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest(content)) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public synchronized int entries() {
+        return entries.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    private Path entryFile(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            totalBytes -= entry.getValue();
+            eldest.remove();
+            Files.deleteIfExists(entryFile(entry.getKey()));
+        }
+    }
+
+    private void remove(String key) throws IOException {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        Files.deleteIfExists(entryFile(key));
+    }
+
+    static byte[] encode(TokenBuffer tokens) {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        Output body = new Output(tokens.size() * 4);
+        int line = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            boolean hasText = tokens.hasText(i);
+            body.varint(tokens.type(i).ordinal() << 1 | (hasText ? 1 : 0));
+            if (hasText) {
+                String text = tokens.getText(i);
+                Integer index = strings.get(text);
+                if (index == null) {
+                    index = table.size();
+                    strings.put(text, index);
+                    table.add(text);
+                }
+                body.varint(index);
+            }
+            int delta = tokens.line(i) - line;
+            body.varint(delta << 1 ^ delta >> 31);
+            body.varint(tokens.position(i));
+            line = tokens.line(i);
+        }
+
+        Output out = new Output(body.size + table.size() * 8 + 32);
+        out.int32(MAGIC);
+        out.int32(0);
+        out.varint(VERSION);
+        out.varint(TYPES.length);
+        out.varint(table.size());
+        for (String text : table) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            out.varint(bytes.length);
+            out.bytes(bytes, bytes.length);
+        }
+        out.varint(tokens.size());
+        out.varint(body.size);
+        out.bytes(body.data, body.size);
+        byte[] data = Arrays.copyOf(out.data, out.size);
+        ByteBuffer.wrap(data).putInt(4, crc(data));
+        return data;
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, HEADER_BYTES, data.length - HEADER_BYTES);
+        return (int) crc.getValue();
+    }
+
+    private static final class Output {
+        byte[] data;
+        int size;
+
+        Output(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        void varint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void int32(int value) {
+            ensure(4);
+            data[size++] = (byte) (value >>> 24);
+            data[size++] = (byte) (value >>> 16);
+            data[size++] = (byte) (value >>> 8);
+            data[size++] = (byte) value;
+        }
+
+        void bytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, data, size, length);
+            size += length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+            }
+        }
+    }
+
+    /** Decodes one token per nextToken() from the bytes of an entry. */
+    static final class CachedLexer extends Lexer<TokenType> {
+
+        private final byte[] data;
+        private final String[] strings;
+        private final SymbolTable symbols;
+        private final int[] symbolIds;
+        private int remaining;
+        private int offset;
+        private int line;
+
+        private CachedLexer(byte[] data, int offset, String[] strings, int tokens, SymbolTable symbols) {
+            super(null);
+            this.data = data;
+            this.offset = offset;
+            this.strings = strings;
+            this.remaining = tokens;
+            this.symbols = symbols;
+            this.symbolIds = symbols != null ? new int[strings.length] : null;
+        }
+
+        /**
+         * Checks the header and every token of data, returns null when it is not a valid entry, so
+         * a corrupt or truncated file is a miss and nextToken() cannot fail partway through.
+         */
+        static CachedLexer open(byte[] data, SymbolTable symbols) {
+            try {
+                CachedLexer header = new CachedLexer(data, 0, new String[0], 0, null);
+                if (data.length < HEADER_BYTES || header.int32() != MAGIC || header.int32() != crc(data)
+                        || header.varint() != VERSION || header.varint() != TYPES.length) {
+                    return null;
+                }
+                int stringCount = header.varint();
+                if (stringCount < 0 || stringCount > data.length) {
+                    return null;
+                }
+                String[] strings = new String[stringCount];
+                for (int i = 0; i < strings.length; i++) {
+                    int length = header.varint();
+                    strings[i] = new String(data, header.offset, length, StandardCharsets.UTF_8);
+                    header.offset += length;
+                }
+                int tokens = header.varint();
+                int bodyLength = header.varint();
+                if (tokens < 0 || bodyLength < 0 || header.offset + bodyLength != data.length) {
+                    return null;
+                }
+                CachedLexer lexer = new CachedLexer(data, header.offset, strings, tokens, symbols);
+                return lexer.validBody() ? lexer : null;
+            } catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+        }
+
+        /** Walks the tokens without building them, the body must end with the last one. */
+        private boolean validBody() {
+            int start = offset;
+            for (int i = 0; i < remaining; i++) {
+                int typeAndFlag = varint();
+                if (typeAndFlag >>> 1 >= TYPES.length) {
+                    return false;
+                }
+                if ((typeAndFlag & 1) != 0) {
+                    int text = varint();
+                    if (text < 0 || text >= strings.length) {
+                        return false;
+                    }
+                }
+                varint();
+                varint();
+            }
+            boolean valid = offset == data.length;
+            offset = start;
+            return valid;
+        }
+
+        @Override
+        public Token<TokenType> nextToken() {
+            if (remaining == 0) {
+                return null;
+            }
+            remaining--;
+            int typeAndFlag = varint();
+            TokenType type = TYPES[typeAndFlag >>> 1];
+            int text = (typeAndFlag & 1) != 0 ? varint() : -1;
+            int delta = varint();
+            line += delta >>> 1 ^ -(delta & 1);
+            int position = varint();
+            if (text < 0) {
+                return new TokenImpl(type, position, line);
+            }
+            if (symbols != null && type == TokenType.IDENTIFIER) {
+                int id = symbolIds[text] - 1;
+                if (id < 0) {
+                    id = symbols.intern(strings[text]);
+                    symbolIds[text] = id + 1;
+                }
+                return new IdentifierToken(strings[text], id, position, line);
+            }
+            return new TokenImpl(type, strings[text], position, line);
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 28) {
+                    throw new IndexOutOfBoundsException("Varint longer than 5 bytes at " + offset);
+                }
+                byte b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int int32() {
+            int value = (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                    | (data[offset + 2] & 0xFF) << 8 | data[offset + 3] & 0xFF;
+            offset += 4;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import lexer.LexerImpl;
+import lexer.TokenCache;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Compares a fresh LexerImpl lex of a generated program with a TokenCache hit for the same file,
+ * after checking that the replayed tokens are the ones LexerImpl produces.
+ */
+public class TokenCacheBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        Path directory = Files.createTempDirectory("token-cache");
+        Path input = directory.resolve("program.txt");
+        Files.write(input, new ProgramGenerator(seed).manyFunctions(functions).getBytes(StandardCharsets.UTF_8));
+        try {
+            TokenCache cache = new TokenCache(directory.resolve("cache"), 64 << 20);
+            String path = input.toString();
+            long bytes = Files.size(input);
+
+            long start = System.nanoTime();
+            cache.lexer(input, null);
+            System.out.printf("miss and store    %8.2f ms, entry of %d bytes for %d source bytes%n",
+                    (System.nanoTime() - start) / 1e6, cache.sizeInBytes(), bytes);
+            if (!sameTokens(new LexerImpl(CharArraySource.fromFile(path)), cache.lexer(input, null))) {
+                System.out.println("MISMATCH between LexerImpl and the cached tokens");
+                System.exit(1);
+            }
+
+            LexerThroughputBenchmark.report("LexerImpl", bytes, LexerThroughputBenchmark.measure(
+                    () -> LexerThroughputBenchmark.count(new LexerImpl(CharArraySource.fromFile(path)))));
+            LexerThroughputBenchmark.report("TokenCache hit", bytes, LexerThroughputBenchmark.measure(
+                    () -> LexerThroughputBenchmark.count(cache.lexer(input, null))));
+            System.out.println(cache.hits() + " hits, " + cache.misses() + " misses");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static boolean sameTokens(Lexer<TokenType> expected, Lexer<TokenType> actual) {
+        while (true) {
+            Token<TokenType> a = expected.nextToken();
+            Token<TokenType> b = actual.nextToken();
+            if (a == null || b == null) {
+                return a == b;
+            }
+            if (a.getTokenType() != b.getTokenType() || !Objects.equals(a.getText(), b.getText())
+                    || a.getLine() != b.getLine() || a.getPosition() != b.getPosition()) {
+                return false;
+            }
+        }
+    }
+}
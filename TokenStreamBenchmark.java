@@ -0,0 +1,80 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import lexer.BufferedTokenStream;
+import lexer.LexerImpl;
+import lexer.SymbolTable;
+import parser.ParserImpl;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * End-to-end latency of reading, lexing and parsing one large generated file, with the parser
+ * pulling tokens straight from LexerImpl, through a synchronous BufferedTokenStream and through a
+ * BufferedTokenStream filled by a producer thread.
+ */
+public class TokenStreamBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+    private static final int CAPACITY = 4096;
+    private static final int BATCH_SIZE = 256;
+
+    interface StreamFactory {
+        Lexer<TokenType> wrap(Lexer<TokenType> lexer);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int functions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Path input = Files.createTempFile("token-stream-bench", ".txt");
+        try {
+            Files.write(input, new ProgramGenerator(42).manyFunctions(functions).getBytes(StandardCharsets.UTF_8));
+            String path = input.toString();
+            String expected = parse(path, lexer -> lexer).toString();
+            String buffered = parse(path, lexer -> new BufferedTokenStream(lexer, CAPACITY, BATCH_SIZE)).toString();
+            if (!expected.equals(buffered)) {
+                throw new IllegalStateException("Buffered token stream changed the AST");
+            }
+            System.out.printf("%d functions, %d bytes%n", functions, Files.size(input));
+            report("direct", measure(path, lexer -> lexer));
+            report("synchronous", measure(path, lexer -> new BufferedTokenStream(lexer, CAPACITY)));
+            report("producer", measure(path, lexer -> new BufferedTokenStream(lexer, CAPACITY, BATCH_SIZE)));
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    private static AST parse(String path, StreamFactory factory) throws IOException {
+        Lexer<TokenType> lexer = factory.wrap(new LexerImpl(CharArraySource.fromFile(path), new SymbolTable()));
+        try {
+            return new ParserImpl(lexer).entryRule();
+        } finally {
+            if (lexer instanceof BufferedTokenStream) {
+                ((BufferedTokenStream) lexer).close();
+            }
+        }
+    }
+
+    private static long measure(String path, StreamFactory factory) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            parse(path, factory);
+            long elapsed = System.nanoTime() - start;
+            if (run >= WARMUP_RUNS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static void report(String label, long nanos) {
+        System.out.printf("%-12s %8.2f ms%n", label, nanos / 1e6);
+    }
+}
@@ -0,0 +1,112 @@
+package parser;
+
+import lexer.SymbolTable;
+import lexer.TokenBuffer;
+import token.TokenType;
+
+import java.util.Arrays;
+
+/**
+ * Splits the tokens of a program body into the token ranges of its top-level definitions by
+ * brace balancing, without parsing them.
+ */
+final class TopLevelRegions {
+
+    private TopLevelRegions() {
+    }
+
+    /**
+     * Region boundaries of the whole program: region i spans tokens [bounds[i], bounds[i + 1]).
+     * Returns null when the tokens do not have the shape "program { definitions main }" with main
+     * as the last region only.
+     */
+    static int[] ofProgram(TokenBuffer tokens) {
+        int size = tokens.size();
+        if (size < 3 || tokens.type(0) != TokenType.PROGRAM || tokens.type(1) != TokenType.LBRACKET
+                || tokens.type(size - 1) != TokenType.RBRACKET) {
+            return null;
+        }
+        int[] bounds = split(tokens, 2, size - 1);
+        return isProgram(tokens, bounds) ? bounds : null;
+    }
+
+    /** True when bounds cover the whole program body and only the last region is main. */
+    static boolean isProgram(TokenBuffer tokens, int[] bounds) {
+        int size = tokens.size();
+        if (bounds == null || bounds.length < 2 || bounds[0] != 2 || bounds[bounds.length - 1] != size - 1
+                || tokens.type(0) != TokenType.PROGRAM || tokens.type(1) != TokenType.LBRACKET
+                || tokens.type(size - 1) != TokenType.RBRACKET) {
+            return false;
+        }
+        for (int i = 0; i < bounds.length - 1; i++) {
+            boolean last = i == bounds.length - 2;
+            if (isMain(tokens, bounds[i]) != last) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Region boundaries of the definitions in [from, to), or null if they are not balanced. */
+    static int[] split(TokenBuffer tokens, int from, int to) {
+        int[] bounds = new int[16];
+        int count = 0;
+        bounds[count++] = from;
+        int index = from;
+        while (index < to) {
+            TokenType type = tokens.type(index);
+            if (TokenType.isPrimitiveType(type)) {
+                index = variableEnd(tokens, index, to);
+            } else if (type == TokenType.IDENTIFIER) {
+                index = functionEnd(tokens, index, to);
+            } else {
+                return null;
+            }
+            if (index < 0) {
+                return null;
+            }
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count * 2);
+            }
+            bounds[count++] = index;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    static boolean isMain(TokenBuffer tokens, int index) {
+        int symbol = tokens.symbolId(index);
+        return symbol >= 0 ? symbol == SymbolTable.MAIN : "main".equals(tokens.getText(index));
+    }
+
+    private static int variableEnd(TokenBuffer tokens, int index, int to) {
+        for (; index < to; index++) {
+            TokenType type = tokens.type(index);
+            if (type == TokenType.SEMICOLON) {
+                return index + 1;
+            }
+            if (type == TokenType.LBRACKET || type == TokenType.RBRACKET) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int functionEnd(TokenBuffer tokens, int index, int to) {
+        while (index < to && tokens.type(index) != TokenType.LBRACKET) {
+            if (tokens.type(index) == TokenType.RBRACKET || tokens.type(index) == TokenType.SEMICOLON) {
+                return -1;
+            }
+            index++;
+        }
+        int depth = 0;
+        for (; index < to; index++) {
+            TokenType type = tokens.type(index);
+            if (type == TokenType.LBRACKET) {
+                depth++;
+            } else if (type == TokenType.RBRACKET && --depth == 0) {
+                return index + 1;
+            }
+        }
+        return -1;
+    }
+}
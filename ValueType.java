@@ -0,0 +1,77 @@
+package interpreter;
+
+import ast.FlatAst;
+import ast.NodeKind;
+import token.TokenType;
+
+/**
+ * Static type of a variable, parameter, return value or expression. Scalars all run as int
+ * values: char as its code and boolean as 0 or 1. Arrays are int[] whatever their element type.
+ */
+public enum ValueType {
+    INT,
+    CHAR,
+    BOOLEAN,
+    INT_ARRAY,
+    CHAR_ARRAY,
+    BOOLEAN_ARRAY,
+    VOID;
+
+    private static final ValueType[] VALUES = values();
+
+    public static ValueType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public boolean isArray() {
+        return this == INT_ARRAY || this == CHAR_ARRAY || this == BOOLEAN_ARRAY;
+    }
+
+    public boolean isScalar() {
+        return this == INT || this == CHAR || this == BOOLEAN;
+    }
+
+    /** Element type of an array type. */
+    public ValueType element() {
+        switch (this) {
+            case INT_ARRAY      : return INT;
+            case CHAR_ARRAY     : return CHAR;
+            case BOOLEAN_ARRAY  : return BOOLEAN;
+            default             : throw new IllegalStateException(this + " is not an array type");
+        }
+    }
+
+    /** Array type of a scalar element type. */
+    public ValueType array() {
+        switch (this) {
+            case INT        : return INT_ARRAY;
+            case CHAR       : return CHAR_ARRAY;
+            case BOOLEAN    : return BOOLEAN_ARRAY;
+            default         : throw new IllegalStateException(this + " is not a scalar type");
+        }
+    }
+
+    /** Scalar type named by an int, char or boolean token. */
+    public static ValueType of(TokenType type) {
+        switch (type) {
+            case INT        : return INT;
+            case CHAR       : return CHAR;
+            case BOOLEAN    : return BOOLEAN;
+            default         : throw new IllegalArgumentException("Not a primitive type: " + type);
+        }
+    }
+
+    /** Type of a PRIMITIVE_TYPE, ARRAY_TYPE or VOID_TYPE node. */
+    public static ValueType of(FlatAst ast, int typeNode) {
+        if (ast.kind(typeNode) == NodeKind.VOID_TYPE) {
+            return VOID;
+        }
+        ValueType scalar = of(ast.tokens().type(ast.token(typeNode)));
+        return ast.kind(typeNode) == NodeKind.ARRAY_TYPE ? scalar.array() : scalar;
+    }
+
+    @Override
+    public String toString() {
+        return isArray() ? element() + "[]" : name().toLowerCase();
+    }
+}
@@ -0,0 +1,297 @@
+package interpreter;
+
+import java.util.Arrays;
+
+/**
+ * Runs {@link Bytecode} in a single switch dispatch loop. Scalars never leave the int stack, arrays
+ * are int[] on the reference stack, and a call pushes no Java frame: the arguments already on the
+ * stacks become the first locals of the callee and four ints of call state are saved in an array.
+ * Recursion is limited by maxCallDepth and the heap, not by the Java thread stack.
+ */
+public class VirtualMachine {
+
+    public static final int DEFAULT_MAX_CALL_DEPTH = 1 << 20;
+
+    private final Bytecode program;
+    private final ProgramIO io;
+    private final int maxCallDepth;
+    private final int[] intGlobals;
+    private final int[][] refGlobals;
+
+    public VirtualMachine(Bytecode program, ProgramIO io) {
+        this(program, io, DEFAULT_MAX_CALL_DEPTH);
+    }
+
+    public VirtualMachine(Bytecode program, ProgramIO io, int maxCallDepth) {
+        this.program = program;
+        this.io = io;
+        this.maxCallDepth = maxCallDepth;
+        intGlobals = new int[program.intGlobals];
+        refGlobals = new int[program.refGlobals][];
+    }
+
+    public void run() {
+        Bytecode.Function[] functions = program.functions;
+        int[] globals = intGlobals;
+        int[][] arrayGlobals = refGlobals;
+
+        Bytecode.Function function = functions[program.entry];
+        int[] code = function.code;
+        int[] stack = new int[Math.max(1024, function.intLocals + function.maxIntStack)];
+        int[][] refs = new int[Math.max(256, function.refLocals + function.maxRefStack)][];
+        // per call: function index, return pc, int frame base, reference frame base
+        int[] calls = new int[64];
+        int depth = 0;
+        int caller = program.entry;
+        int pc = 0;
+        int base = 0;
+        int refBase = 0;
+        int sp = function.intLocals;
+        int rsp = function.refLocals;
+
+        while (true) {
+            switch (code[pc++]) {
+                case Bytecode.ICONST:
+                    stack[sp++] = code[pc++];
+                    break;
+                case Bytecode.ACONST_NULL:
+                    refs[rsp++] = null;
+                    break;
+                case Bytecode.SCONST: {
+                    int[] string = program.strings[code[pc++]];
+                    refs[rsp++] = Arrays.copyOf(string, string.length);
+                    break;
+                }
+                case Bytecode.ILOAD:
+                    stack[sp++] = stack[base + code[pc++]];
+                    break;
+                case Bytecode.ISTORE:
+                    stack[base + code[pc++]] = stack[--sp];
+                    break;
+                case Bytecode.ALOAD:
+                    refs[rsp++] = refs[refBase + code[pc++]];
+                    break;
+                case Bytecode.ASTORE:
+                    refs[refBase + code[pc++]] = refs[--rsp];
+                    break;
+                case Bytecode.GILOAD:
+                    stack[sp++] = globals[code[pc++]];
+                    break;
+                case Bytecode.GISTORE:
+                    globals[code[pc++]] = stack[--sp];
+                    break;
+                case Bytecode.GALOAD:
+                    refs[rsp++] = arrayGlobals[code[pc++]];
+                    break;
+                case Bytecode.GASTORE:
+                    arrayGlobals[code[pc++]] = refs[--rsp];
+                    break;
+                case Bytecode.IALOAD: {
+                    int[] array = checkIndex(function, pc - 1, refs[--rsp], stack[sp - 1]);
+                    stack[sp - 1] = array[stack[sp - 1]];
+                    break;
+                }
+                case Bytecode.IASTORE: {
+                    int value = stack[--sp];
+                    int index = stack[--sp];
+                    checkIndex(function, pc - 1, refs[--rsp], index)[index] = value;
+                    break;
+                }
+                case Bytecode.NEWARRAY: {
+                    int length = stack[--sp];
+                    if (length < 0) {
+                        throw error(function, pc - 1, "Negative array length " + length);
+                    }
+                    refs[rsp++] = new int[length];
+                    break;
+                }
+                case Bytecode.ARRAYLENGTH: {
+                    int[] array = refs[--rsp];
+                    if (array == null) {
+                        throw error(function, pc - 1, "Array is not initialized");
+                    }
+                    stack[sp++] = array.length;
+                    break;
+                }
+                case Bytecode.IADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case Bytecode.ISUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case Bytecode.IMUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case Bytecode.IDIV:
+                    sp--;
+                    if (stack[sp] == 0) {
+                        throw error(function, pc - 1, "Division by zero");
+                    }
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case Bytecode.IMOD:
+                    sp--;
+                    if (stack[sp] == 0) {
+                        throw error(function, pc - 1, "Division by zero");
+                    }
+                    stack[sp - 1] %= stack[sp];
+                    break;
+                case Bytecode.INEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case Bytecode.NOT:
+                    stack[sp - 1] = stack[sp - 1] == 0 ? 1 : 0;
+                    break;
+                case Bytecode.I2C:
+                    stack[sp - 1] = (char) stack[sp - 1];
+                    break;
+                case Bytecode.I2B:
+                    stack[sp - 1] = stack[sp - 1] != 0 ? 1 : 0;
+                    break;
+                case Bytecode.IEQ:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] == stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.INE:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] != stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.IGT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] > stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.IGE:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >= stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.ILT:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] < stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.ILE:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] <= stack[sp] ? 1 : 0;
+                    break;
+                case Bytecode.AEQ:
+                    rsp -= 2;
+                    stack[sp++] = refs[rsp] == refs[rsp + 1] ? 1 : 0;
+                    break;
+                case Bytecode.ANE:
+                    rsp -= 2;
+                    stack[sp++] = refs[rsp] != refs[rsp + 1] ? 1 : 0;
+                    break;
+                case Bytecode.JUMP:
+                    pc = code[pc];
+                    break;
+                case Bytecode.IFFALSE:
+                    pc = stack[--sp] == 0 ? code[pc] : pc + 1;
+                    break;
+                case Bytecode.IFTRUE:
+                    pc = stack[--sp] != 0 ? code[pc] : pc + 1;
+                    break;
+                case Bytecode.CALL: {
+                    int index = code[pc++];
+                    Bytecode.Function callee = functions[index];
+                    if (depth == maxCallDepth) {
+                        throw error(function, pc - 2, "Stack overflow after " + depth + " nested calls");
+                    }
+                    if ((depth + 1) * 4 > calls.length) {
+                        calls = Arrays.copyOf(calls, calls.length * 2);
+                    }
+                    calls[depth * 4] = caller;
+                    calls[depth * 4 + 1] = pc;
+                    calls[depth * 4 + 2] = base;
+                    calls[depth * 4 + 3] = refBase;
+                    depth++;
+                    base = sp - callee.intParameters;
+                    refBase = rsp - callee.refParameters;
+                    sp = base + callee.intLocals;
+                    rsp = refBase + callee.refLocals;
+                    if (sp + callee.maxIntStack > stack.length) {
+                        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + callee.maxIntStack));
+                    }
+                    if (rsp + callee.maxRefStack > refs.length) {
+                        refs = Arrays.copyOf(refs, Math.max(refs.length * 2, rsp + callee.maxRefStack));
+                    }
+                    // the stacks are reused, locals other than the parameters start out zero
+                    Arrays.fill(stack, base + callee.intParameters, sp, 0);
+                    Arrays.fill(refs, refBase + callee.refParameters, rsp, null);
+                    caller = index;
+                    function = callee;
+                    code = callee.code;
+                    pc = 0;
+                    break;
+                }
+                case Bytecode.IRETURN:
+                case Bytecode.ARETURN:
+                case Bytecode.RETURN: {
+                    int opcode = code[pc - 1];
+                    int value = opcode == Bytecode.IRETURN ? stack[sp - 1] : 0;
+                    int[] array = opcode == Bytecode.ARETURN ? refs[rsp - 1] : null;
+                    // drop the references of the finished frame so they can be collected
+                    Arrays.fill(refs, refBase, rsp, null);
+                    sp = base;
+                    rsp = refBase;
+                    if (depth == 0) {
+                        return;
+                    }
+                    depth--;
+                    caller = calls[depth * 4];
+                    pc = calls[depth * 4 + 1];
+                    base = calls[depth * 4 + 2];
+                    refBase = calls[depth * 4 + 3];
+                    function = functions[caller];
+                    code = function.code;
+                    if (opcode == Bytecode.IRETURN) {
+                        stack[sp++] = value;
+                    } else if (opcode == Bytecode.ARETURN) {
+                        refs[rsp++] = array;
+                    }
+                    break;
+                }
+                case Bytecode.POP:
+                    sp--;
+                    break;
+                case Bytecode.APOP:
+                    refs[--rsp] = null;
+                    break;
+                case Bytecode.PRINT: {
+                    ValueType type = ValueType.of(code[pc++]);
+                    if (type.isArray()) {
+                        io.print(ProgramIO.format(refs[--rsp], type));
+                    } else {
+                        io.print(ProgramIO.format(stack[--sp], type));
+                    }
+                    break;
+                }
+                case Bytecode.PRINTLN:
+                    io.println();
+                    break;
+                case Bytecode.READ: {
+                    ValueType type = ValueType.of(code[pc++]);
+                    stack[sp++] = io.read(type, function.lines[pc - 2], function.positions[pc - 2]);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Bad opcode " + code[pc - 1] + " at " + (pc - 1) + " in " + function.name);
+            }
+        }
+    }
+
+    private static int[] checkIndex(Bytecode.Function function, int pc, int[] array, int index) {
+        if (array == null) {
+            throw error(function, pc, "Array is not initialized");
+        }
+        if (index < 0 || index >= array.length) {
+            throw error(function, pc, "Index " + index + " out of bounds for length " + array.length);
+        }
+        return array;
+    }
+
+    private static ProgramException error(Bytecode.Function function, int pc, String message) {
+        return new ProgramException(message, function.lines[pc], function.positions[pc]);
+    }
+}
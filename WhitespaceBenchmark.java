@@ -0,0 +1,49 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.source.SourceImpl;
+import lexer.LexerImpl;
+import lexer.PackedLexer;
+import source.CharArraySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Lexing throughput on whitespace-heavy input: the sample program re-indented by 32 blanks per
+ * line, with a comment banner before every line. Compares the char at a time SourceImpl path with
+ * the bulk scanning CharArraySource paths.
+ */
+public class WhitespaceBenchmark {
+
+    private static final String INDENT = "                                ";
+    private static final String BANNER = "// ======================================================================";
+
+    public static void main(String[] args) throws IOException {
+        String sample = args.length > 0 ? args[0] : "resources/Fib.txt";
+        int targetBytes = args.length > 1 ? Integer.parseInt(args[1]) : 8 << 20;
+        String text = new String(Files.readAllBytes(Paths.get(sample)), StandardCharsets.UTF_8);
+        StringBuilder padded = new StringBuilder();
+        for (String line : text.split("\n")) {
+            padded.append(INDENT).append(BANNER).append('\n').append(INDENT).append('\t').append(line).append('\n');
+        }
+        Path paddedSample = Files.createTempFile("whitespace-sample", ".txt");
+        Files.write(paddedSample, padded.toString().getBytes(StandardCharsets.UTF_8));
+        Path input = LexerThroughputBenchmark.replicate(paddedSample, targetBytes);
+        try {
+            String path = input.toString();
+            long bytes = Files.size(input);
+            LexerThroughputBenchmark.report("SourceImpl", bytes, LexerThroughputBenchmark.measure(
+                    () -> LexerThroughputBenchmark.count(new LexerImpl(new SourceImpl(path)))));
+            LexerThroughputBenchmark.report("CharArraySource", bytes, LexerThroughputBenchmark.measure(
+                    () -> LexerThroughputBenchmark.count(new LexerImpl(CharArraySource.fromFile(path)))));
+            LexerThroughputBenchmark.report("PackedLexer", bytes, LexerThroughputBenchmark.measure(
+                    () -> new PackedLexer(CharArraySource.fromFile(path)).tokenize().size()));
+        } finally {
+            Files.delete(input);
+            Files.delete(paddedSample);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package lexer;
+
+import benchmark.ProgramGenerator;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import org.junit.jupiter.api.Test;
+import source.CharArraySource;
+import token.TokenType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every lexer backend must produce the tokens of HAND_WRITTEN, with the same lines and positions,
+ * the same lexical errors, and leave the source at the same place after each token.
+ */
+class LexerBackendTest {
+
+    /** Inputs for the states and errors the generated programs do not reach. */
+    private static final String[] EDGE_CASES = {
+            "",
+            "\n\n",
+            "a//comment\nb // comment at the end",
+            "'a' '\\n' '\\'' '\\\\' 'ab' '",
+            "\"s\\t\\\"q\\\\\" \"over\ntwo lines\"",
+            "\"not closed",
+            "'\\x'",
+            "\"bad \\x escape\"",
+            "99999999999",
+            "-> - == = >= > <= < != ! && & || | / /",
+            "a\r\nb\rc\r\n",
+            "\tint  x\t= 1;  ",
+            "é ü # $ ~ ` ?",
+            "if1 _x x_1 returnx lengthy",
+            "}{)(][;,*%+@",
+    };
+
+    @Test
+    void generatedPrograms() {
+        for (ProgramGenerator.Shape shape : ProgramGenerator.Shape.values()) {
+            for (long seed = 1; seed <= 3; seed++) {
+                assertSameTokens(shape + " seed " + seed, new ProgramGenerator(seed).generate(shape, shape.defaultSize / 10));
+            }
+        }
+    }
+
+    @Test
+    void edgeCases() {
+        for (String input : EDGE_CASES) {
+            assertSameTokens(input, input);
+        }
+    }
+
+    private static void assertSameTokens(String name, String program) {
+        String expected = tokens(Lexers.Backend.HAND_WRITTEN, program, false);
+        for (Lexers.Backend backend : Lexers.Backend.values()) {
+            assertEquals(expected, tokens(backend, program, false), backend + " on " + name);
+            assertEquals(tokens(Lexers.Backend.HAND_WRITTEN, program, true), tokens(backend, program, true),
+                    backend + " with symbols on " + name);
+        }
+    }
+
+    private static String tokens(Lexers.Backend backend, String program, boolean symbols) {
+        CharArraySource source = new CharArraySource(program);
+        Lexer<TokenType> lexer = Lexers.create(backend, source, symbols ? new SymbolTable() : null);
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (Token<TokenType> token = lexer.nextToken(); token != null; token = lexer.nextToken()) {
+                sb.append(token.getTokenType()).append(' ').append(token.getText())
+                        .append(" at ").append(token.getLine()).append(':').append(token.getPosition())
+                        .append(", source at ").append(source.getLineNumber()).append(':').append(source.getPosition())
+                        .append('\n');
+            }
+            sb.append("end, source at ").append(source.getLineNumber()).append(':').append(source.getPosition());
+        } catch (RuntimeException e) {
+            sb.append(e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package lexer;
+
+import benchmark.ProgramGenerator;
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The cache stores PackedLexer output, replayed entries must be the tokens LexerImpl produces for
+ * the same file, and a damaged entry must be a miss rather than an error.
+ */
+class TokenCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheTokensOfLexerImpl() throws IOException {
+        TokenCache cache = new TokenCache(directory.resolve("cache"), 64 << 20);
+        Path file = directory.resolve("program.txt");
+        for (ProgramGenerator.Shape shape : ProgramGenerator.Shape.values()) {
+            for (long seed = 1; seed <= 3; seed++) {
+                String program = new ProgramGenerator(seed).generate(shape, shape.defaultSize / 10);
+                Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+                String expected = tokens(new LexerImpl(new CharArraySource(program)));
+                String name = shape + " seed " + seed;
+                assertEquals(expected, tokens(cache.lexer(file, null)), "miss on " + name);
+                assertEquals(expected, tokens(cache.lexer(file, null)), "hit on " + name);
+                assertEquals(expected, tokens(cache.lexer(file, new SymbolTable())), "hit with symbols on " + name);
+            }
+        }
+        assertEquals(24, cache.hits());
+    }
+
+    @Test
+    void damagedEntriesAreMisses() throws IOException {
+        TokenCache cache = new TokenCache(directory.resolve("cache"), 64 << 20);
+        Path file = directory.resolve("program.txt");
+        String program = new ProgramGenerator(7).manyFunctions(5);
+        Files.write(file, program.getBytes(StandardCharsets.UTF_8));
+        String expected = tokens(new LexerImpl(new CharArraySource(program)));
+        cache.lexer(file, null);
+        Path entry = directory.resolve("cache").resolve(TokenCache.key(Files.readAllBytes(file)) + ".tok");
+        byte[] stored = Files.readAllBytes(entry);
+
+        long misses = cache.misses();
+        for (int i = 0; i < stored.length; i++) {
+            byte[] flipped = stored.clone();
+            flipped[i] ^= 0x5A;
+            assertMiss(cache, file, entry, flipped, expected, "byte " + i + " flipped");
+            assertEquals(++misses, cache.misses());
+            assertMiss(cache, file, entry, Arrays.copyOf(stored, i), expected, "truncated to " + i);
+            assertEquals(++misses, cache.misses());
+        }
+        assertEquals(stored.length, Files.size(entry), "the entry is stored again after a miss");
+    }
+
+    private static void assertMiss(TokenCache cache, Path file, Path entry, byte[] damaged, String expected, String name)
+            throws IOException {
+        Files.write(entry, damaged);
+        assertEquals(expected, tokens(cache.lexer(file, null)), name);
+    }
+
+    private static String tokens(Lexer<TokenType> lexer) {
+        StringBuilder sb = new StringBuilder();
+        for (Token<TokenType> token = lexer.nextToken(); token != null; token = lexer.nextToken()) {
+            sb.append(token.getTokenType()).append(' ').append(token.getText())
+                    .append(" at ").append(token.getLine()).append(':').append(token.getPosition()).append('\n');
+        }
+        return sb.toString();
+    }
+}
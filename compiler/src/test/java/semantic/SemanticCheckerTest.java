@@ -0,0 +1,77 @@
+package semantic;
+
+import ast.FlatAst;
+import benchmark.ProgramGenerator;
+import interpreter.ProgramException;
+import lexer.PackedLexer;
+import lexer.SymbolTable;
+import org.junit.jupiter.api.Test;
+import parser.FlatAstParser;
+import source.CharArraySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * The function checks run on worker threads that share one tree, the parallel checker must report
+ * exactly the errors of the sequential one, in the same order.
+ */
+class SemanticCheckerTest {
+
+    private static final Pattern MUTATION_SITES = Pattern.compile("int c = |c = c - |return c;");
+
+    @Test
+    void parallelCheckReportsTheSequentialErrors() {
+        for (long seed = 1; seed <= 3; seed++) {
+            FlatAst ast = new FlatAstParser(new PackedLexer(new CharArraySource(programWithErrors(seed, 2000)))
+                    .withSymbols(new SymbolTable()).tokenize()).parse();
+            List<String> expected = messages(new SemanticChecker().check(ast));
+            assertFalse(expected.isEmpty(), "seed " + seed + " has no errors");
+            for (int threads = 2; threads <= 4; threads++) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    assertEquals(expected, messages(new SemanticChecker(pool).check(ast)),
+                            "seed " + seed + " on " + threads + " threads");
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * A generated program with a wrong argument count or an undefined variable at every fifth
+     * mutation site, the error messages include the names so they read token texts.
+     */
+    private static String programWithErrors(long seed, int functions) {
+        Matcher matcher = MUTATION_SITES.matcher(new ProgramGenerator(seed).manyFunctions(functions));
+        StringBuffer sb = new StringBuffer();
+        for (int site = 0; matcher.find(); site++) {
+            String replacement = matcher.group();
+            if (site % 5 == 0) {
+                switch (replacement) {
+                    case "int c = " : replacement = "int c = @f" + site + "(a) + "; break;
+                    case "c = c - " : replacement = "c = d" + site + " - "; break;
+                    default         : replacement = "return missing" + site + ";"; break;
+                }
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static List<String> messages(List<ProgramException> errors) {
+        List<String> messages = new ArrayList<>();
+        for (ProgramException error : errors) {
+            messages.add(error.getMessage());
+        }
+        return messages;
+    }
+}
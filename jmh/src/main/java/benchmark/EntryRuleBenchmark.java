@@ -0,0 +1,56 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.ast.AST;
+import lexer.LexerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parser.ParserImpl;
+import source.CharArraySource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of ParserImpl.entryRule() over a fresh LexerImpl on a ProgramGenerator corpus, lexing
+ * included since the parser pulls its tokens. With the gc profiler gc.alloc.rate.norm is the
+ * bytes allocated by one parse.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EntryRuleBenchmark {
+
+    @Param
+    public ProgramGenerator.Shape shape;
+
+    /** 0 for the default size of the shape. */
+    @Param("0")
+    public int size;
+
+    @Param("42")
+    public long seed;
+
+    private char[] program;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        program = new ProgramGenerator(seed).generate(shape, size > 0 ? size : shape.defaultSize).toCharArray();
+    }
+
+    @Benchmark
+    public AST entryRule() {
+        return new ParserImpl(new LexerImpl(new CharArraySource(program, program.length))).entryRule();
+    }
+}
@@ -0,0 +1,75 @@
+package benchmark;
+
+import lexer.KeywordTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import token.TokenType;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares KeywordTable with the String based lookup LexerImpl used before, on a word stream
+ * where three out of four words are keywords. Scores are per word, every lookup result goes to
+ * the Blackhole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KeywordBenchmark {
+
+    private static final String[] WORDS = {
+            "int", "if", "while", "return", "boolean", "char", "print", "else",
+            "true", "false", "length", "void", "read", "i", "fib", "counter"
+    };
+    private static final int WORD_COUNT = 4096;
+
+    private char[] buffer;
+    private int[] starts;
+    private int[] lengths;
+
+    @Setup
+    public void words() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        starts = new int[WORD_COUNT];
+        lengths = new int[WORD_COUNT];
+        for (int i = 0; i < WORD_COUNT; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            starts[i] = sb.length();
+            lengths[i] = word.length();
+            sb.append(word).append(' ');
+        }
+        buffer = sb.toString().toCharArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORD_COUNT)
+    public void stringLookup(Blackhole blackhole) {
+        for (int i = 0; i < WORD_COUNT; i++) {
+            String res = new String(buffer, starts[i], lengths[i]);
+            blackhole.consume(TokenType.isKeyword(res) ? TokenType.valueOf(res.toUpperCase()) : null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(WORD_COUNT)
+    public void keywordTable(Blackhole blackhole) {
+        for (int i = 0; i < WORD_COUNT; i++) {
+            blackhole.consume(KeywordTable.lookup(buffer, starts[i], lengths[i]));
+        }
+    }
+}
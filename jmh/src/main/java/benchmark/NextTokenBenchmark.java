@@ -0,0 +1,63 @@
+package benchmark;
+
+import bg.tu_varna.kst_sit.ci_ep.lexer.Lexer;
+import bg.tu_varna.kst_sit.ci_ep.lexer.token.Token;
+import lexer.LexerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import source.CharArraySource;
+import token.TokenType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of LexerImpl.nextToken() on a ProgramGenerator corpus. One operation is one token,
+ * so the score is tokens per microsecond and the gc profiler's gc.alloc.rate.norm is bytes per
+ * token. The lexer starts over at the end of the program, which costs one allocation per pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NextTokenBenchmark {
+
+    @Param
+    public ProgramGenerator.Shape shape;
+
+    /** 0 for the default size of the shape. */
+    @Param("0")
+    public int size;
+
+    @Param("42")
+    public long seed;
+
+    private char[] program;
+    private Lexer<TokenType> lexer;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        program = new ProgramGenerator(seed).generate(shape, size > 0 ? size : shape.defaultSize).toCharArray();
+        lexer = new LexerImpl(new CharArraySource(program, program.length));
+    }
+
+    @Benchmark
+    public Token<TokenType> nextToken() {
+        Token<TokenType> token = lexer.nextToken();
+        if (token == null) {
+            lexer = new LexerImpl(new CharArraySource(program, program.length));
+        }
+        return token;
+    }
+}